@@ -106,6 +106,7 @@ public class Andie {
         ImageAction.setTarget(imagePanel);
         JScrollPane scrollPane = new JScrollPane(imagePanel);
         frame.add(scrollPane, BorderLayout.CENTER);
+        frame.add(new OperationStatusBar(imagePanel.getImage()), BorderLayout.SOUTH);
         
         // Add in menus for various types of action the user may perform.
         JMenuBar menuBar = new JMenuBar();
@@ -186,6 +187,8 @@ public class Andie {
                     prefs = Preferences.userNodeForPackage(Andie.class);
                     Locale.setDefault(new Locale(prefs.get("language", "en"), 
                                                  prefs.get("country", "NZ")));
+                    GaussianFilter.setDefaultRecursiveThreshold(prefs.getInt(GaussianFilter.THRESHOLD_PREFERENCE,
+                                                                             GaussianFilter.DEFAULT_RECURSIVE_THRESHOLD));
                     bundle = ResourceBundle.getBundle("TextBundle");
                     createAndShowGUI();
                 } 
@@ -0,0 +1,183 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import javax.imageio.*;
+
+/**
+ * <p>
+ * Writes files on a background thread, and replaces files atomically.
+ * </p>
+ *
+ * <p>
+ * Encoding a large image can take seconds, which would freeze the user interface if done on the
+ * event dispatch thread. Tasks given to {@link submit} are run one at a time, in order, on a
+ * single writer thread instead, so saving and exporting carry on while the user keeps editing.
+ * </p>
+ *
+ * <p>
+ * Files are never written in place. {@link writeAtomically} writes to a temporary file in the same
+ * directory, flushes it to disk, and then renames it over the target, so the target is always
+ * either the old file or the whole new one, even if writing fails or ANDIE is closed part way.
+ * When the program exits, it waits for any writes still queued to finish.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ * @version 1.0
+ */
+public class BackgroundWriter {
+
+    /** The thread files are written on, shared by the whole program. */
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ANDIE writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        // Closing the window exits straight away, so make sure that nothing the user saved is lost.
+        Runtime.getRuntime().addShutdownHook(new Thread(BackgroundWriter::awaitIdle, "ANDIE writer shutdown"));
+    }
+
+    /**
+     * <p>
+     * Something that writes the contents of a file.
+     * </p>
+     */
+    public interface Output {
+        /**
+         * <p>
+         * Write the contents of the file.
+         * </p>
+         *
+         * @param out The stream to write to, which is closed afterwards.
+         * @throws IOException If the contents cannot be written.
+         */
+        public void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * <p>
+     * Something to do on the writer thread.
+     * </p>
+     */
+    public interface Task {
+        /**
+         * <p>
+         * Do the writing.
+         * </p>
+         *
+         * @throws IOException If something cannot be written.
+         */
+        public void run() throws IOException;
+    }
+
+    /**
+     * <p>
+     * BackgroundWriter only provides static methods, so it should not be constructed.
+     * </p>
+     */
+    private BackgroundWriter() {}
+
+    /**
+     * <p>
+     * Queue a task to run on the writer thread, after every task queued before it.
+     * </p>
+     *
+     * @param task The task to run.
+     * @return Completes when the task has run, exceptionally if it failed.
+     */
+    public static CompletableFuture<Void> submit(Task task) {
+        CompletableFuture<Void> done = new CompletableFuture<Void>();
+        writer.execute(() -> {
+            try {
+                task.run();
+                done.complete(null);
+            }
+            catch (Exception | OutOfMemoryError ex) {
+                done.completeExceptionally(ex);
+            }
+        });
+        return done;
+    }
+
+    /**
+     * <p>
+     * Wait until every task queued so far has run.
+     * </p>
+     */
+    public static void awaitIdle() {
+        try {
+            writer.submit(() -> {}).get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException | RejectedExecutionException ex) {
+            // Nothing is left to wait for.
+        }
+    }
+
+    /**
+     * <p>
+     * Replace a file with new contents, so that it is never seen part written.
+     * </p>
+     *
+     * <p>
+     * This runs on the calling thread. The temporary file is deleted if writing fails.
+     * </p>
+     *
+     * @param target The file to write.
+     * @param output Writes the new contents.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void writeAtomically(Path target, Output output) throws IOException {
+        Path absolute = target.toAbsolutePath();
+        // The temporary file is in the same directory, as a rename is only atomic within one file system.
+        Path temp = absolute.resolveSibling("." + absolute.getFileName() + "." + System.nanoTime() + ".tmp");
+        try {
+            try (FileOutputStream file = new FileOutputStream(Files.createFile(temp).toFile())) {
+                BufferedOutputStream out = new BufferedOutputStream(file);
+                output.writeTo(out);
+                out.flush();
+                file.getFD().sync();
+            }
+            try {
+                Files.move(temp, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+        }
+        finally {
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Encode an image and replace a file with it, so that it is never seen part written.
+     * </p>
+     *
+     * @param image The image to encode, which must not change until this returns.
+     * @param format The informal name of the format, such as <code>png</code>.
+     * @param target The file to write.
+     * @throws IOException If the image cannot be encoded in the format or the file cannot be written.
+     */
+    public static void writeImage(RenderedImage image, String format, Path target) throws IOException {
+        writeAtomically(target, out -> {
+            if (!ImageIO.write(image, format, out)) {
+                throw new IOException("Cannot write this image as " + format);
+            }
+        });
+    }
+}
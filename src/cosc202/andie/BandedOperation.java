@@ -0,0 +1,56 @@
+package cosc202.andie;
+
+/**
+ * <p>
+ * Interface for {@link ImageOperation}s that can be computed one band of rows at a time.
+ * </p>
+ *
+ * <p>
+ * A BandedOperation works on packed ARGB pixel arrays (see {@link PackedPixels}) and can
+ * compute any range of output rows on its own, reading only the input rows within
+ * {@link getHalo} rows of that range. This lets the {@link TileScheduler} split an image
+ * into bands and compute them on several cores at once, while giving exactly the same
+ * result as computing the whole image in one go.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ * @version 1.0
+ */
+public interface BandedOperation extends ImageOperation {
+
+    /**
+     * <p>
+     * Get the number of rows above and below a band that are read to compute it.
+     * </p>
+     *
+     * <p>
+     * Per-pixel operations have a halo of 0; a filter with radius r has a halo of r.
+     * </p>
+     *
+     * @return The vertical footprint of the operation, in rows.
+     */
+    public int getHalo();
+
+    /**
+     * <p>
+     * Compute the output rows from {@code top} (inclusive) to {@code bottom} (exclusive).
+     * </p>
+     *
+     * <p>
+     * Only rows {@code top} to {@code bottom - 1} of {@code dst} may be written. If the halo is 0,
+     * {@code src} and {@code dst} may be the same array.
+     * </p>
+     *
+     * @param src The packed ARGB input pixels of the whole image.
+     * @param dst The packed ARGB array to write the output rows into.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param top The first row to compute.
+     * @param bottom One past the last row to compute.
+     */
+    public void applyRows(int[] src, int[] dst, int width, int height, int top, int bottom);
+}
@@ -0,0 +1,327 @@
+package cosc202.andie;
+
+import java.awt.Rectangle;
+import java.awt.image.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.prefs.*;
+import java.util.stream.*;
+
+/**
+ * <p>
+ * Headless entry point that applies a macro to every image matching a pattern.
+ * </p>
+ *
+ * <p>
+ * Run it with {@code gradle run -PmainClass=cosc202.andie.BatchProcessor --args="<macro> <pattern> <output dir>"}.
+ * The macro is a <code>.ops</code> file of operations, as saved by ANDIE, and the pattern is a glob
+ * such as <code>photos/*.jpg</code> or <code>photos/**&#47;*.png</code>, matched against paths under the
+ * directory before its first wildcard. Each result is written to the output directory under the same
+ * relative path and in the same format as its input. An optional {@code --threads n} argument sets
+ * how many images are worked on at once, defaulting to the number of processors.
+ * </p>
+ *
+ * <p>
+ * Each image is decoded, has the macro applied and is encoded by one worker thread, so the steps of
+ * different images overlap across the workers. If the macro starts with a crop, only the cropped
+ * region of each image is decoded, with {@link ImageDecoder}. Only a couple of images per worker are queued up at
+ * once, so memory use stays bounded however many files match. Progress and throughput are printed
+ * every second. At the end, every file that failed is listed with its error, and the program
+ * exits with status 1 if any failed, or 2 if the arguments were wrong.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ * @version 1.0
+ */
+public class BatchProcessor {
+
+    /** The number of images that may wait for each worker, beyond the one it is working on. */
+    private static final int QUEUED_PER_WORKER = 2;
+
+    /** The operations of the macro, in the order they are applied. */
+    private final List<ImageOperation> ops;
+
+    /** The region kept by the crop the macro starts with, or null if it does not start with one. */
+    private final Rectangle region;
+
+    /** The directory that matching paths are relative to. */
+    private final Path inputRoot;
+
+    /** The directory the results are written to. */
+    private final Path outputRoot;
+
+    /** The number of images processed so far, successfully or not. */
+    private final AtomicInteger done;
+
+    /** The number of pixels in the images processed successfully so far. */
+    private final AtomicLong pixels;
+
+    /** The error from each image that failed, by path. */
+    private final Map<Path, String> failures;
+
+    /**
+     * <p>
+     * Create a batch processor for a macro.
+     * </p>
+     *
+     * @param ops The operations to apply to each image, in order.
+     * @param inputRoot The directory that input paths are relative to.
+     * @param outputRoot The directory to write the results to.
+     */
+    public BatchProcessor(List<ImageOperation> ops, Path inputRoot, Path outputRoot) {
+        this.ops = FusedPointOperation.fuse(ops);
+        this.region = !ops.isEmpty() && ops.get(0) instanceof Crop ? ((Crop) ops.get(0)).getSelection() : null;
+        this.inputRoot = inputRoot;
+        this.outputRoot = outputRoot;
+        this.done = new AtomicInteger();
+        this.pixels = new AtomicLong();
+        this.failures = new ConcurrentSkipListMap<Path, String>();
+    }
+
+    /**
+     * <p>
+     * Read the operations from a macro or <code>.ops</code> file.
+     * </p>
+     *
+     * @param macroFile The file to read.
+     * @return The operations, in the order they are applied.
+     * @throws IOException If the file cannot be read or does not hold operations.
+     */
+    public static List<ImageOperation> readMacro(Path macroFile) throws IOException {
+        try (InputStream in = Files.newInputStream(macroFile)) {
+            return OperationCodec.read(in);
+        }
+    }
+
+    /**
+     * <p>
+     * Get the directory a glob pattern searches, which is the part of it before the last separator ahead of its first wildcard.
+     * </p>
+     *
+     * @param pattern The glob pattern, such as <code>photos/*.jpg</code>.
+     * @return The directory to search, such as <code>photos/</code>.
+     */
+    public static Path getSearchRoot(String pattern) {
+        int split = getSplit(pattern);
+        return Paths.get(split < 0 ? "." : pattern.substring(0, split + 1));
+    }
+
+    /**
+     * <p>
+     * Find the files matching a glob pattern.
+     * </p>
+     *
+     * <p>
+     * The part of the pattern after its {@link getSearchRoot} is matched against the paths of the
+     * files under that directory, relative to it.
+     * </p>
+     *
+     * @param pattern The glob pattern, such as <code>photos/*.jpg</code>.
+     * @return The matching files, in sorted order.
+     * @throws IOException If the directory cannot be searched.
+     */
+    public static List<Path> findFiles(String pattern) throws IOException {
+        Path root = getSearchRoot(pattern);
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern.substring(getSplit(pattern) + 1));
+
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(Files::isRegularFile)
+                .filter(path -> matcher.matches(root.relativize(path)))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * <p>
+     * Find the last path separator before the first wildcard of a glob pattern.
+     * </p>
+     *
+     * @param pattern The glob pattern.
+     * @return The index of the separator, or -1 if there is none.
+     */
+    private static int getSplit(String pattern) {
+        int wildcard = pattern.length();
+        for (char c: "*?[{".toCharArray()) {
+            int i = pattern.indexOf(c);
+            if (i >= 0) {
+                wildcard = Math.min(wildcard, i);
+            }
+        }
+
+        int split = -1;
+        for (int i = 0; i < wildcard; i++) {
+            if (pattern.charAt(i) == '/' || pattern.charAt(i) == File.separatorChar) {
+                split = i;
+            }
+        }
+        return split;
+    }
+
+    /**
+     * <p>
+     * Process a list of files, with a number of images in flight at once.
+     * </p>
+     *
+     * @param files The files to process.
+     * @param threads The number of worker threads.
+     * @param progress Where to print progress every second, or null for none.
+     * @throws InterruptedException If interrupted while waiting for the workers.
+     */
+    public void run(List<Path> files, int threads, PrintStream progress) throws InterruptedException {
+        // The images are already spread across the workers, so splitting each one as well would only add overhead.
+        boolean wasParallel = TileScheduler.isParallel();
+        TileScheduler.setParallel(threads <= 1);
+
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(threads * QUEUED_PER_WORKER), new ThreadPoolExecutor.CallerRunsPolicy());
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ANDIE batch progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long start = System.nanoTime();
+        if (progress != null) {
+            ticker.scheduleAtFixedRate(() -> printProgress(progress, files.size(), start), 1, 1, TimeUnit.SECONDS);
+        }
+
+        try {
+            for (Path file: files) {
+                workers.execute(() -> process(file));
+            }
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        finally {
+            workers.shutdownNow();
+            ticker.shutdownNow();
+            TileScheduler.setParallel(wasParallel);
+        }
+
+        if (progress != null) {
+            printProgress(progress, files.size(), start);
+        }
+    }
+
+    /**
+     * <p>
+     * Decode one image, apply the macro to it, and encode the result, recording any failure.
+     * </p>
+     *
+     * @param file The image to process.
+     */
+    private void process(Path file) {
+        try {
+            // Decoding only the region the crop keeps saves decoding pixels that would be thrown away.
+            BufferedImage image = region == null ? null : ImageDecoder.read(file.toFile(), 1, region);
+            int first = image == null ? 0 : 1;
+            if (image == null) {
+                image = ImageDecoder.read(file.toFile());
+            }
+
+            for (ImageOperation op: ops.subList(first, ops.size())) {
+                image = op.apply(image);
+            }
+
+            Path output = outputRoot.resolve(inputRoot.relativize(file));
+            Files.createDirectories(output.toAbsolutePath().getParent());
+            String name = output.getFileName().toString();
+            String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+            BackgroundWriter.writeImage(image, extension, output);
+            pixels.addAndGet((long) image.getWidth() * image.getHeight());
+        }
+        catch (Exception | OutOfMemoryError ex) {
+            failures.put(file, ex.getClass().getSimpleName() + ": " + ex.getMessage());
+        }
+        finally {
+            done.incrementAndGet();
+        }
+    }
+
+    /**
+     * <p>
+     * Print how many images have been processed and how fast.
+     * </p>
+     *
+     * @param out Where to print.
+     * @param total The number of images in the batch.
+     * @param start When the batch started, from {@link System#nanoTime}.
+     */
+    private void printProgress(PrintStream out, int total, long start) {
+        double seconds = Math.max((System.nanoTime() - start) / 1e9, 1e-9);
+        int count = done.get();
+        out.printf("%d/%d images, %d failed, %.1f images/s, %.1f megapixels/s%n",
+                   count, total, failures.size(), count / seconds, pixels.get() / 1e6 / seconds);
+    }
+
+    /**
+     * <p>
+     * Get the files that failed and why.
+     * </p>
+     *
+     * @return The error message for each failed file, in path order.
+     */
+    public Map<Path, String> getFailures() {
+        return failures;
+    }
+
+    /**
+     * <p>
+     * Main entry point for batch processing.
+     * </p>
+     *
+     * @param args The macro file, the input pattern and the output directory, optionally followed by {@code --threads n}.
+     * @throws Exception If the workers are interrupted.
+     */
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> positional = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            }
+            else {
+                positional.add(args[i]);
+            }
+        }
+        if (positional.size() != 3 || threads < 1) {
+            System.err.println("Usage: BatchProcessor <macro.ops> <input pattern> <output dir> [--threads n]");
+            System.exit(2);
+        }
+
+        // Draw operations compare their colour against the translated names, so the bundle must match the GUI's.
+        Preferences prefs = Preferences.userNodeForPackage(Andie.class);
+        Locale.setDefault(new Locale(prefs.get("language", "en"), prefs.get("country", "NZ")));
+        GaussianFilter.setDefaultRecursiveThreshold(prefs.getInt(GaussianFilter.THRESHOLD_PREFERENCE,
+                                                                 GaussianFilter.DEFAULT_RECURSIVE_THRESHOLD));
+        Andie.bundle = ResourceBundle.getBundle("TextBundle");
+
+        List<ImageOperation> ops;
+        List<Path> files;
+        try {
+            ops = readMacro(Paths.get(positional.get(0)));
+            files = findFiles(positional.get(1));
+        }
+        catch (IOException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(2);
+            return;
+        }
+        BatchProcessor batch = new BatchProcessor(ops, getSearchRoot(positional.get(1)), Paths.get(positional.get(2)));
+        batch.run(files, threads, System.out);
+
+        for (Map.Entry<Path, String> failure: batch.getFailures().entrySet()) {
+            System.err.println(failure.getKey() + ": " + failure.getValue());
+        }
+        System.exit(batch.getFailures().isEmpty() ? 0 : 1);
+    }
+}
@@ -1,7 +1,7 @@
 package cosc202.andie;
 
 import java.awt.image.*;
-import java.awt.*;
+import java.util.*;
 
 /**
  * <p>
@@ -15,13 +15,25 @@ import java.awt.*;
  * </p>
  *
  * <p>
+ * Each block is summed by a single pass over its rows, so every pixel is read once whatever the block size.
+ * Large images are split into bands of rows and averaged on several cores by the {@link TileScheduler}.
+ * A band reads every block that overlaps it, so it may read up to one block height above and below itself.
+ * </p>
+ *
+ * <p>
  * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
  * </p>
  *
  * @author Charlotte Williams
  * @version 1.0
  */
-public class BlockAveraging implements ImageOperation, java.io.Serializable {
+public class BlockAveraging implements BandedOperation, java.io.Serializable {
+
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = 1083908861832395351L;
+
+    /** The largest block height or width that can be chosen, or read from a file. */
+    public static final int MAX_BLOCK_SIZE = 200;
 
     /** The width of the block to be averaged, in pixels. */
     private int blockHeight;
@@ -52,6 +64,17 @@ public class BlockAveraging implements ImageOperation, java.io.Serializable {
         this.blockWidth = 1;
     }
 
+    /**
+     * <p>
+     * Create block averaging from the parameters saved by {@link writeParameters}.
+     * </p>
+     *
+     * @param params The saved parameters.
+     */
+    BlockAveraging(OperationParameters params) {
+        this(params.getInt(1, 1, 1, MAX_BLOCK_SIZE), params.getInt(2, 1, 1, MAX_BLOCK_SIZE));
+    }
+
     /**
      * <p>
      * Apply block averaging to an image
@@ -66,80 +89,135 @@ public class BlockAveraging implements ImageOperation, java.io.Serializable {
      * @return The resulting image with block averaging
      */
     public BufferedImage apply(BufferedImage input) {
-        for (int i = 0; i < input.getHeight(); i += blockHeight) {
-            for (int j = 0; j < input.getWidth(); j += blockWidth) {
-                BufferedImage subImage = getSubImage(input, j, i, blockHeight, blockWidth);
-                Color averageCol = getAverageColour(subImage);
-
-                for (int ii = i; (ii < i + blockHeight) && (ii < input.getHeight()); ii ++) {
-                    for (int jj = j; (jj < j + blockWidth) && (jj < input.getWidth()); jj ++) {
-                        input.setRGB(jj, ii, averageCol.getRGB());
+        int height = input.getHeight();
+        int width = input.getWidth();
+        int[] src = PackedPixels.read(input);
+        int[] dst = new int[width * height];
+
+        TileScheduler.run(this, src, dst, width, height);
+        return PackedPixels.create(input, dst, width, height);
+    }
+
+    /**
+     * <p>
+     * Get the number of rows above and below a band that block averaging reads.
+     * </p>
+     *
+     * @return One less than the block height.
+     */
+    public int getHalo() {
+        return blockHeight - 1;
+    }
+
+    /**
+     * <p>
+     * Block average the rows from {@code top} to {@code bottom}.
+     * </p>
+     *
+     * <p>
+     * Every block overlapping the band is averaged in full, but only the rows inside the band are written.
+     * </p>
+     *
+     * @param src The packed ARGB input pixels.
+     * @param dst The packed ARGB array to store the result in.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param top The first row to compute.
+     * @param bottom One past the last row to compute.
+     */
+    public void applyRows(int[] src, int[] dst, int width, int height, int top, int bottom) {
+        int firstBlock = (top / blockHeight) * blockHeight;
+        int blocksAcross = (width + blockWidth - 1) / blockWidth;
+        long[] red = new long[blocksAcross];
+        long[] green = new long[blocksAcross];
+        long[] blue = new long[blocksAcross];
+        OperationContext context = OperationContext.current();
+
+        for (int i = firstBlock; i < bottom; i += blockHeight) {
+            context.checkCancelled();
+            int blockBottom = Math.min(i + blockHeight, height);
+            sumBlocks(src, width, i, blockBottom, red, green, blue);
+
+            for (int k = 0; k < blocksAcross; k++) {
+                int j = k * blockWidth;
+                int blockRight = Math.min(j + blockWidth, width);
+                long count = (long) (blockRight - j) * (blockBottom - i);
+                int alpha = src[(blockBottom - 1) * width + (blockRight - 1)] & 0xFF000000;
+                int averageCol = alpha | (int) (red[k] / count) << 16 | (int) (green[k] / count) << 8 | (int) (blue[k] / count);
+
+                for (int ii = Math.max(i, top); ii < Math.min(blockBottom, bottom); ii ++) {
+                    for (int jj = j; jj < blockRight; jj ++) {
+                        dst[ii * width + jj] = averageCol;
                     }
                 }
             }
+
+            context.rowsCompleted(Math.min(blockBottom, bottom) - Math.max(i, top));
         }
-        return input;
     }
 
     /**
      * <p>
-     * Method to retrieve part of an image
-     * Used to get one block at a time so then can find the average colour using getAverageColour(input).
-     * Handles cases where x and y are out of bounds
+     * Add up the red, green and blue values of every block in a row of blocks.
      * </p>
      * 
      * <p>
-     * This method was sourced from user Thibaut Mottet https://stackoverflow.com/questions/15777821/how-can-i-pixelate-a-jpg-with-java
-     * License: https://creativecommons.org/licenses/by-sa/3.0/ used under the CC BY-SA 3.0 license
+     * The alpha value of the average colour is taken from the bottom-right pixel of each block,
+     * so it is not summed.
      * </p>
      * 
-     * @param input image to be block averaged
-     * @param x starting horizontal point
-     * @param y starting vertical point
-     * @param blockHeight height of block / sub image, in pixels
-     * @param blockWidth width of block / sub image, in pixels
-     * @return block sub-image
+     * @param src The packed ARGB pixels of the image
+     * @param width The width of the image
+     * @param top The first row of the blocks
+     * @param bottom One past the last row of the blocks
+     * @param red Filled with the sum of the red channel of each block, from left to right
+     * @param green Filled with the sum of the green channel of each block
+     * @param blue Filled with the sum of the blue channel of each block
      */
-    public static BufferedImage getSubImage(BufferedImage input, int x, int y, int blockHeight, int blockWidth) {
-        if(x < 0) x = 0;
-        if (y < 0) y = 0;
-        if (x > input.getWidth()) x = input.getWidth();
-        if (y > input.getHeight()) y = input.getHeight();
-        if ((x + blockWidth) > input.getWidth()) blockWidth = input.getWidth() - x;
-        if ((y + blockHeight) > input.getHeight()) blockHeight = input.getHeight() - y;
-        return input.getSubimage(x, y, blockWidth, blockHeight);
+    private void sumBlocks(int[] src, int width, int top, int bottom, long[] red, long[] green, long[] blue) {
+        Arrays.fill(red, 0);
+        Arrays.fill(green, 0);
+        Arrays.fill(blue, 0);
+
+        for (int y = top; y < bottom; y++) {
+            int offset = y * width;
+            for (int k = 0, x = 0; x < width; k++) {
+                int blockRight = Math.min(x + blockWidth, width);
+                int r = 0;
+                int g = 0;
+                int b = 0;
+                for (; x < blockRight; x++) {
+                    int argb = src[offset + x];
+                    r += (argb >> 16) & 0xFF;
+                    g += (argb >> 8) & 0xFF;
+                    b += argb & 0xFF;
+                }
+                red[k] += r;
+                green[k] += g;
+                blue[k] += b;
+            }
+        }
     }
 
     /**
      * <p>
-     * Finds the average colour of all pixels by averaging the red, green and blue values
+     * Check whether the operation changes the image it is applied to.
      * </p>
-     * 
+     *
+     * @return False, as the result is written to a new pixel array.
+     */
+    public boolean mutatesInput() {
+        return false;
+    }
+
+    /**
      * <p>
-     * This method was adapted from user Ceilvia C https://stackoverflow.com/questions/15777821/how-can-i-pixelate-a-jpg-with-java
-     * License: https://creativecommons.org/licenses/by-sa/4.0/ used under the CC BY-SA 4.0 license
+     * Add the block size to the parameters saved for this operation.
      * </p>
-     * 
-     * @param input the block subimage 
-     * @return Average colour of block
+     *
+     * @param params The parameters to add to.
      */
-    public static Color getAverageColour(BufferedImage input) {
-        int red = 0;
-        int green = 0;
-        int blue = 0;
-        int count = 0;
-        Color col = new Color(input.getRGB(0, 0), true);
-
-        for (int i = 0; i < input.getWidth(); i ++) {
-            for (int j = 0; j < input.getHeight(); j ++) {
-                col = new Color(input.getRGB(i, j), true);
-                red += col.getRed();
-                green += col.getGreen();
-                blue += col.getBlue();
-                count ++;
-            }
-        }
-        
-        return new Color(red/count, green/count, blue/count, col.getAlpha());
+    public void writeParameters(OperationParameters params) {
+        params.putInt(1, blockHeight).putInt(2, blockWidth);
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,5 @@
 package cosc202.andie;
 
-import java.awt.image.*;
-
 /**
  * <p>
  * ImageOperation to adjust the brightness and contrast of an image.
@@ -14,7 +12,13 @@ import java.awt.image.*;
  * @author Jennifer Puzey
  * @version 1.0
  */
-public class BrightnessContrastAdjust implements ImageOperation, java.io.Serializable {
+public class BrightnessContrastAdjust extends PointOperation implements java.io.Serializable {
+
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = 1087864741575672869L;
+
+    /** The largest change to brightness or contrast, either way, as a percentage. */
+    public static final int MAX_CHANGE = 100;
     
     /** The brightness of the image, as a percentage. */
     int brightness;
@@ -37,35 +41,33 @@ public class BrightnessContrastAdjust implements ImageOperation, java.io.Seriali
 
     /**
      * <p>
-     * Apply brightness and contrast changes to an image.
+     * Create a brightness and contrast adjustment from the parameters saved by {@link writeParameters}.
      * </p>
-     * 
-     * @param input The image to be adjusted
-     * @return The resulting adjusted image.
+     *
+     * @param params The saved parameters.
      */
-    public BufferedImage apply (BufferedImage input) {
-        int width = input.getWidth();
-        int height = input.getHeight();
-
-        for(int y = 0; y < height; y++){
-            for(int x = 0; x < width; x++){
-                int rgb = input.getRGB(x,y);
-                int alpha =(rgb>>>24)& 0xFF;
-                int red =(rgb>>16)& 0xFF;
-                int green =(rgb>>8)& 0xFF;
-                int blue = rgb & 0xFF;
-
-                red = adjust(red, contrast, brightness);
-                green = adjust(green, contrast, brightness);
-                blue = adjust(blue, contrast, brightness);
-
-                int newRgb = (alpha<<24)|(red<<16)|(green<<8)|blue;
+    BrightnessContrastAdjust(OperationParameters params) {
+        this(params.getInt(1, 0, -MAX_CHANGE, MAX_CHANGE), params.getInt(2, 0, -MAX_CHANGE, MAX_CHANGE));
+    }
 
-                input.setRGB(x,y,newRgb);
-            }
+    /**
+     * <p>
+     * Compile the brightness and contrast changes into a lookup.
+     * </p>
+     * 
+     * <p>
+     * Each of the red, green and blue values is adjusted the same way, so a single
+     * table of all 256 adjusted values is used for all three.
+     * </p>
+     * 
+     * @return The lookup adjusting each pixel.
+     */
+    protected ColourLookup compile() {
+        int[] table = new int[256];
+        for (int v = 0; v < 256; v++) {
+            table[v] = adjust(v, contrast, brightness);
         }
-
-        return input;
+        return ColourLookup.table(table);
     }
 
     /**
@@ -82,5 +84,16 @@ public class BrightnessContrastAdjust implements ImageOperation, java.io.Seriali
     private int adjust(int colorComponent, int contrast, int brightness) {
         double adjusted = ((1+(double)contrast/100)*(colorComponent-127.5)+127.5)*(1+(double)brightness/100);
         return (int)Math.max(0, Math.min(255, adjusted));
-    }   
-}
\ No newline at end of file
+    }
+
+    /**
+     * <p>
+     * Add the brightness and contrast to the parameters saved for this operation.
+     * </p>
+     *
+     * @param params The parameters to add to.
+     */
+    public void writeParameters(OperationParameters params) {
+        params.putInt(1, brightness).putInt(2, contrast);
+    }
+}
@@ -0,0 +1,266 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+
+/**
+ * <p>
+ * Snapshots of intermediate results along an {@link EditableImage}'s operation stack.
+ * </p>
+ *
+ * <p>
+ * Each snapshot holds a copy of the image as it was after the first <i>n</i> operations (its depth).
+ * To rebuild the image after undoing, {@link EditableImage} starts from the deepest snapshot that
+ * is still on the stack and only replays the operations after it, rather than replaying every
+ * operation from the original image.
+ * </p>
+ *
+ * <p>
+ * How long each operation took is recorded as it is applied, and a snapshot is only taken once
+ * at least {@link MIN_SNAPSHOT_NANOS} of work has built up since the previous one, so snapshots
+ * land after expensive operations such as large median filters rather than after every cheap one.
+ * The snapshots are kept within a budget of scratch space. When it is exceeded, the snapshot that
+ * saves the least replay time per byte is dropped first.
+ * </p>
+ *
+ * <p>
+ * Snapshots are held as {@link ScratchImage}s, off the Java heap, so however many are kept they
+ * add nothing to the time the garbage collector spends on the heap. Only the image being
+ * restored is copied back onto it. As the snapshots take disk space and page cache rather than
+ * heap, their budget is set on its own rather than from the size of the heap.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ * @version 1.0
+ */
+public class CheckpointCache {
+
+    /** The least replay time, in nanoseconds, that a snapshot must save to be worth taking. */
+    private static final long MIN_SNAPSHOT_NANOS = 50L * 1000 * 1000;
+
+    /** The most scratch space, in bytes, that the snapshots of each cache may use. */
+    private static long budget = 1L << 30;
+
+    /** The time taken to apply each operation, indexed by depth - 1. */
+    private final List<Long> costs;
+
+    /** The snapshots, by depth. */
+    private final TreeMap<Integer, ScratchImage> snapshots;
+
+    /** The scratch space used by all of the snapshots, in bytes. */
+    private long used;
+
+    /**
+     * <p>
+     * Create an empty checkpoint cache.
+     * </p>
+     */
+    public CheckpointCache() {
+        costs = new ArrayList<Long>();
+        snapshots = new TreeMap<Integer, ScratchImage>();
+        used = 0;
+    }
+
+    /**
+     * <p>
+     * Get the scratch space budget for the snapshots of each cache.
+     * </p>
+     *
+     * @return The budget, in bytes.
+     */
+    public static long getBudget() {
+        return budget;
+    }
+
+    /**
+     * <p>
+     * Set the scratch space budget for the snapshots of each cache.
+     * </p>
+     *
+     * <p>
+     * The default is 1GB. Caches over the new budget drop snapshots the next time one is taken. A budget of 0 turns checkpointing off.
+     * </p>
+     *
+     * @param bytes The budget, in bytes.
+     */
+    public static void setBudget(long bytes) {
+        budget = Math.max(bytes, 0);
+    }
+
+    /**
+     * <p>
+     * Forget every snapshot and recorded cost, for when a new image is opened.
+     * </p>
+     */
+    public void clear() {
+        costs.clear();
+        for (ScratchImage snapshot: snapshots.values()) {
+            snapshot.close();
+        }
+        snapshots.clear();
+        used = 0;
+    }
+
+    /**
+     * <p>
+     * Forget every snapshot and cost deeper than the given depth.
+     * </p>
+     *
+     * <p>
+     * This must be called when the operations after {@code depth} are replaced by different ones.
+     * </p>
+     *
+     * @param depth The number of operations that are still valid.
+     */
+    public void truncate(int depth) {
+        while (costs.size() > depth) {
+            costs.remove(costs.size() - 1);
+        }
+        while (!snapshots.isEmpty() && snapshots.lastKey() > depth) {
+            ScratchImage snapshot = snapshots.pollLastEntry().getValue();
+            used -= snapshot.getBytes();
+            snapshot.close();
+        }
+    }
+
+    /**
+     * <p>
+     * Record that an operation has been applied, and take a snapshot of the result if it is worth it.
+     * </p>
+     *
+     * @param depth The number of operations applied, including this one.
+     * @param nanos How long the operation took, in nanoseconds.
+     * @param result The image after the operation, or null if it cannot be snapshotted at this depth.
+     */
+    public void record(int depth, long nanos, BufferedImage result) {
+        truncate(depth - 1);
+        while (costs.size() < depth) {
+            costs.add(0L);
+        }
+        costs.set(depth - 1, nanos);
+
+        if (result == null || getSaving(depth) < MIN_SNAPSHOT_NANOS) {
+            return;
+        }
+
+        long bytes = getBytes(result);
+        if (bytes > budget || !ScratchImage.canStore(result)) {
+            return;
+        }
+
+        try {
+            snapshots.put(depth, new ScratchImage(result));
+        }
+        catch (UncheckedIOException ex) {
+            // Without room for the snapshot, replay just starts from an earlier one.
+            return;
+        }
+        used += bytes;
+
+        while (used > budget) {
+            evictLeastValuable();
+        }
+    }
+
+    /**
+     * <p>
+     * Find the deepest snapshot at or above the given depth.
+     * </p>
+     *
+     * @param depth The number of operations on the stack.
+     * @return The depth of the nearest snapshot, or 0 if replay must start from the original image.
+     */
+    public int getNearest(int depth) {
+        Integer nearest = snapshots.floorKey(depth);
+        return nearest == null ? 0 : nearest;
+    }
+
+    /**
+     * <p>
+     * Get the total time recorded for the operations up to a given depth.
+     * </p>
+     *
+     * @param depth The number of operations to count.
+     * @return The time taken to apply them, in nanoseconds, counting operations with no recorded time as free.
+     */
+    public long getCost(int depth) {
+        long cost = 0;
+        for (int i = 0; i < Math.min(depth, costs.size()); i++) {
+            cost += costs.get(i);
+        }
+        return cost;
+    }
+
+    /**
+     * <p>
+     * Get a copy of the snapshot at a given depth.
+     * </p>
+     *
+     * <p>
+     * A new on-heap copy is returned, as operations may change the image they are applied to.
+     * </p>
+     *
+     * @param depth The depth of the snapshot, as returned by {@link getNearest}.
+     * @return A copy of the image after the first {@code depth} operations.
+     */
+    public BufferedImage restore(int depth) {
+        return snapshots.get(depth).restore();
+    }
+
+    /**
+     * <p>
+     * Work out how much replay time the snapshot at a depth saves.
+     * </p>
+     *
+     * @param depth The depth of the snapshot.
+     * @return The total cost of the operations between the previous snapshot and this depth, in nanoseconds.
+     */
+    private long getSaving(int depth) {
+        Integer previous = snapshots.lowerKey(depth);
+        long saving = 0;
+        for (int i = (previous == null ? 0 : previous); i < depth; i++) {
+            saving += costs.get(i);
+        }
+        return saving;
+    }
+
+    /**
+     * <p>
+     * Drop the snapshot that saves the least replay time per byte.
+     * </p>
+     */
+    private void evictLeastValuable() {
+        int worst = -1;
+        double worstValue = Double.MAX_VALUE;
+
+        for (Map.Entry<Integer, ScratchImage> entry: snapshots.entrySet()) {
+            double value = (double) getSaving(entry.getKey()) / entry.getValue().getBytes();
+            if (value < worstValue) {
+                worst = entry.getKey();
+                worstValue = value;
+            }
+        }
+
+        ScratchImage snapshot = snapshots.remove(worst);
+        used -= snapshot.getBytes();
+        snapshot.close();
+    }
+
+    /**
+     * <p>
+     * Estimate the memory used by an image's pixels.
+     * </p>
+     *
+     * @param image The image to measure.
+     * @return The size of the image's data buffer, in bytes.
+     */
+    static long getBytes(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+}
@@ -1,6 +1,7 @@
 package cosc202.andie;
 
 import java.util.*;
+import java.awt.*;
 import java.awt.event.*;
 import javax.swing.*;
 
@@ -116,7 +117,7 @@ public class ColourActions {
          * @param e The event triggering this callback.
          */
         public void actionPerformed(ActionEvent e) {
-            target.getImage().apply(new ConvertToGrey());
+            target.getImage().applyAsync(new ConvertToGrey());
             target.repaint();
             target.getParent().revalidate();
         }
@@ -154,7 +155,7 @@ public class ColourActions {
          * @param e The event triggering this callback.
          */
         public void actionPerformed(ActionEvent e) {
-            target.getImage().apply(new InvertColour());
+            target.getImage().applyAsync(new InvertColour());
             target.repaint();
             target.getParent().revalidate();
         }
@@ -197,7 +198,7 @@ public class ColourActions {
             String selection = (String)JOptionPane.showInputDialog(target, Andie.getText("channelCyclePrompt"), Andie.getText("channelCyclePromptTitle"), JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
 
             if (selection != null) {
-                target.getImage().apply(new CycleColourChannel(selection));
+                target.getImage().applyAsync(new CycleColourChannel(selection));
                 target.repaint();
                 target.getParent().revalidate();
             }
@@ -234,7 +235,8 @@ public class ColourActions {
          * 
          * <p>
          * This method is called whenever the brightness action is triggered.
-         * It changes the brightness of the image.
+         * It asks for the contrast and brightness with a pair of sliders, previewing the
+         * adjustment on the image as they move, and changes the image once the user presses OK.
          * </p>
          * 
          * @param e The event triggering this callback.
@@ -245,27 +247,38 @@ public class ColourActions {
                 return;
             }
 
-            try {
-                String input = JOptionPane.showInputDialog(target, Andie.getText("contrastPrompt"));
-                String input2 = JOptionPane.showInputDialog(target, Andie.getText("brightnessPrompt"));
-                
-                if (input != null && input2 != null) {
-                    int contrast = Integer.parseInt(input);
-                    int brightness = Integer.parseInt(input2);
+            JSlider contrastSlider = new JSlider(-BrightnessContrastAdjust.MAX_CHANGE, BrightnessContrastAdjust.MAX_CHANGE, 0);
+            JSlider brightnessSlider = new JSlider(-BrightnessContrastAdjust.MAX_CHANGE, BrightnessContrastAdjust.MAX_CHANGE, 0);
+            for (JSlider slider: new JSlider[] {contrastSlider, brightnessSlider}) {
+                slider.setMajorTickSpacing(50);
+                slider.setPaintTicks(true);
+                slider.setPaintLabels(true);
+            }
 
-                    if (contrast < -100 || contrast > 100
-                        || brightness < -100 || brightness > 100) {
-                        JOptionPane.showMessageDialog(target, Andie.getText("contrastBrightnessErrorText"), Andie.getText("contrastBrightnessErrorTitle"), JOptionPane.ERROR_MESSAGE);
-                        return;
-                    }
+            JPanel panel = new JPanel(new GridLayout(0, 1));
+            panel.add(new JLabel(Andie.getText("contrastLabel")));
+            panel.add(contrastSlider);
+            panel.add(new JLabel(Andie.getText("brightnessLabel")));
+            panel.add(brightnessSlider);
 
-                    target.getImage().apply(new BrightnessContrastAdjust(contrast, brightness));
-                    target.repaint();
-                    target.getParent().revalidate();
-                }
+            // Preview the adjustment on the image while the sliders move.
+            OperationPreview preview = new OperationPreview(target, scale -> new BrightnessContrastAdjust(contrastSlider.getValue(), brightnessSlider.getValue()));
+            contrastSlider.addChangeListener(ce -> preview.update());
+            brightnessSlider.addChangeListener(ce -> preview.update());
+            preview.update();
+
+            int option;
+            try {
+                option = JOptionPane.showOptionDialog(target, panel, Andie.getText("contrastBrightnessText"), JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE, null, null, null);
             }
-            catch (Exception ex){
-                JOptionPane.showMessageDialog(target, Andie.getText("contrastBrightnessErrorText"), Andie.getText("contrastBrightnessErrorTitle"), JOptionPane.ERROR_MESSAGE);
+            finally {
+                preview.close();
+            }
+
+            if (option == JOptionPane.OK_OPTION) {
+                target.getImage().applyAsync(new BrightnessContrastAdjust(contrastSlider.getValue(), brightnessSlider.getValue()));
+                target.repaint();
+                target.getParent().revalidate();
             }
         }
     }  
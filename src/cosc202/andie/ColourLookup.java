@@ -0,0 +1,282 @@
+package cosc202.andie;
+
+/**
+ * <p>
+ * A compiled per-pixel colour mapping, applied with table lookups.
+ * </p>
+ *
+ * <p>
+ * A lookup maps each pixel in up to three stages. First, each output channel is taken from one
+ * of the input channels (allowing the channels to be swapped around) and passed through a
+ * 256-entry table for that channel. If the lookup converts to grey, the three results are then
+ * combined into a single grey level by a weighted sum, which is passed through a second table
+ * per channel. The alpha of each pixel is never changed.
+ * </p>
+ *
+ * <p>
+ * The weighted sum uses tables of {@code double}s holding each weight multiplied by each
+ * possible channel value, added in the order red, green, blue. This gives exactly the same
+ * rounding as computing {@code 0.3*r + 0.6*g + 0.1*b} directly.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ * @version 1.0
+ */
+public class ColourLookup {
+
+    /** The weight of each of red, green and blue in the grey level. */
+    private static final double[] GREY_WEIGHTS = {0.3, 0.6, 0.1};
+
+    /** For each output channel (red, green, blue), the bit shift of the input channel it is taken from. */
+    private final int[] shifts;
+
+    /** For each output channel, the table its input channel is passed through. */
+    private final int[][] tables;
+
+    /** For each input channel, the weighted contribution of each table value to the grey level, or null if not converting to grey. */
+    private final double[][] greyWeights;
+
+    /** For each output channel, the table the grey level is passed through, or null if not converting to grey. */
+    private final int[][] greyTables;
+
+    /** The last stage of the lookup, with each output table already shifted into place and combined into packed pixels. */
+    private final int[][] packed;
+
+    /** The mask to XOR every pixel with, if that is all the lookup does, or -1 if it does more. */
+    private final int xorMask;
+
+    /**
+     * <p>
+     * Create a lookup from its stages.
+     * </p>
+     *
+     * @param shifts The bit shift of the input channel for each output channel.
+     * @param tables The table for each output channel.
+     * @param greyTables The table applied to the grey level for each output channel, or null if not converting to grey.
+     */
+    private ColourLookup(int[] shifts, int[][] tables, int[][] greyTables) {
+        this.shifts = shifts;
+        this.tables = tables;
+        this.greyTables = greyTables;
+
+        if (greyTables == null) {
+            this.greyWeights = null;
+            this.packed = new int[3][256];
+            for (int c = 0; c < 3; c++) {
+                for (int v = 0; v < 256; v++) {
+                    packed[c][v] = tables[c][v] << (16 - 8 * c);
+                }
+            }
+        }
+        else {
+            this.greyWeights = new double[3][256];
+            for (int c = 0; c < 3; c++) {
+                for (int v = 0; v < 256; v++) {
+                    greyWeights[c][v] = GREY_WEIGHTS[c] * tables[c][v];
+                }
+            }
+            this.packed = new int[1][256];
+            for (int v = 0; v < 256; v++) {
+                packed[0][v] = (greyTables[0][v] << 16) | (greyTables[1][v] << 8) | greyTables[2][v];
+            }
+        }
+
+        this.xorMask = findXorMask();
+    }
+
+    /**
+     * <p>
+     * Check if the lookup just flips the same bits of every pixel, as inverting does.
+     * </p>
+     *
+     * <p>
+     * Such lookups are applied with a single XOR per pixel instead of table lookups,
+     * which the JIT compiler can turn into vector instructions.
+     * </p>
+     *
+     * @return The mask to XOR each pixel with, or -1 if the lookup cannot be done that way.
+     */
+    private int findXorMask() {
+        if (greyTables != null || shifts[0] != 16 || shifts[1] != 8 || shifts[2] != 0) {
+            return -1;
+        }
+
+        int mask = 0;
+        for (int c = 0; c < 3; c++) {
+            int flip = tables[c][0];
+            for (int v = 1; v < 256; v++) {
+                if ((tables[c][v] ^ v) != flip) {
+                    return -1;
+                }
+            }
+            mask = (mask << 8) | flip;
+        }
+        return mask;
+    }
+
+    /**
+     * <p>
+     * Create a lookup that leaves every pixel unchanged.
+     * </p>
+     *
+     * @return The identity lookup.
+     */
+    public static ColourLookup identity() {
+        return channels(0, 1, 2);
+    }
+
+    /**
+     * <p>
+     * Create a lookup that passes every colour channel through the same table.
+     * </p>
+     *
+     * @param table The 256-entry table, whose values must be in [0, 255].
+     * @return The lookup applying the table.
+     */
+    public static ColourLookup table(int[] table) {
+        return new ColourLookup(new int[] {16, 8, 0}, new int[][] {table, table, table}, null);
+    }
+
+    /**
+     * <p>
+     * Create a lookup that rearranges the colour channels.
+     * </p>
+     *
+     * @param red The input channel (0 for red, 1 for green, 2 for blue) to take the output red from.
+     * @param green The input channel to take the output green from.
+     * @param blue The input channel to take the output blue from.
+     * @return The lookup rearranging the channels.
+     */
+    public static ColourLookup channels(int red, int green, int blue) {
+        int[] identity = new int[256];
+        for (int v = 0; v < 256; v++) {
+            identity[v] = v;
+        }
+        int[] shifts = {16 - 8 * red, 16 - 8 * green, 16 - 8 * blue};
+        return new ColourLookup(shifts, new int[][] {identity, identity, identity}, null);
+    }
+
+    /**
+     * <p>
+     * Create a lookup that converts to grey, as {@link ConvertToGrey} does.
+     * </p>
+     *
+     * @return The lookup converting to grey.
+     */
+    public static ColourLookup grey() {
+        ColourLookup identity = identity();
+        return new ColourLookup(identity.shifts, identity.tables, identity.tables);
+    }
+
+    /**
+     * <p>
+     * Combine this lookup with one applied after it into a single lookup.
+     * </p>
+     *
+     * <p>
+     * The tables of {@code next} are folded into the last stage of this lookup. If both
+     * lookups convert to grey, the second grey level depends only on the first, so it is
+     * worked out for each of the 256 possible first levels with the same arithmetic as
+     * {@link apply} uses. The combined lookup therefore gives exactly the same result as
+     * applying the two lookups one after the other.
+     * </p>
+     *
+     * @param next The lookup applied after this one.
+     * @return A lookup equivalent to this one followed by {@code next}.
+     */
+    public ColourLookup then(ColourLookup next) {
+        if (greyTables == null) {
+            int[] combinedShifts = new int[3];
+            int[][] combinedTables = new int[3][];
+            for (int c = 0; c < 3; c++) {
+                int source = (16 - next.shifts[c]) / 8;
+                combinedShifts[c] = shifts[source];
+                combinedTables[c] = compose(next.tables[c], tables[source]);
+            }
+            return new ColourLookup(combinedShifts, combinedTables, next.greyTables);
+        }
+
+        // This lookup ends with a single grey level, which every channel of next is a function of.
+        int[][] combinedGrey = new int[3][];
+        for (int c = 0; c < 3; c++) {
+            combinedGrey[c] = compose(next.tables[c], greyTables[(16 - next.shifts[c]) / 8]);
+        }
+        if (next.greyTables == null) {
+            return new ColourLookup(shifts, tables, combinedGrey);
+        }
+
+        int[][] regreyed = new int[3][256];
+        for (int v = 0; v < 256; v++) {
+            int grey = (int) Math.round(GREY_WEIGHTS[0] * combinedGrey[0][v] + GREY_WEIGHTS[1] * combinedGrey[1][v] + GREY_WEIGHTS[2] * combinedGrey[2][v]);
+            for (int c = 0; c < 3; c++) {
+                regreyed[c][v] = next.greyTables[c][grey];
+            }
+        }
+        return new ColourLookup(shifts, tables, regreyed);
+    }
+
+    /**
+     * <p>
+     * Build the table that looks up one table and then another.
+     * </p>
+     *
+     * @param outer The table applied second.
+     * @param inner The table applied first.
+     * @return The table mapping each value {@code v} to {@code outer[inner[v]]}.
+     */
+    private static int[] compose(int[] outer, int[] inner) {
+        int[] table = new int[256];
+        for (int v = 0; v < 256; v++) {
+            table[v] = outer[inner[v]];
+        }
+        return table;
+    }
+
+    /**
+     * <p>
+     * Map the pixels from index {@code start} to {@code end}.
+     * </p>
+     *
+     * @param src The packed ARGB input pixels.
+     * @param dst The packed ARGB array to store the result in (may be {@code src}).
+     * @param start The index of the first pixel to map.
+     * @param end One past the index of the last pixel to map.
+     */
+    public void apply(int[] src, int[] dst, int start, int end) {
+        int s0 = shifts[0];
+        int s1 = shifts[1];
+        int s2 = shifts[2];
+
+        if (xorMask != -1) {
+            for (int i = start; i < end; i++) {
+                dst[i] = src[i] ^ xorMask;
+            }
+        }
+        else if (greyTables == null) {
+            int[] p0 = packed[0];
+            int[] p1 = packed[1];
+            int[] p2 = packed[2];
+
+            for (int i = start; i < end; i++) {
+                int argb = src[i];
+                dst[i] = (argb & 0xFF000000) | p0[(argb >> s0) & 0xFF] | p1[(argb >> s1) & 0xFF] | p2[(argb >> s2) & 0xFF];
+            }
+        }
+        else {
+            double[] w0 = greyWeights[0];
+            double[] w1 = greyWeights[1];
+            double[] w2 = greyWeights[2];
+            int[] p = packed[0];
+
+            for (int i = start; i < end; i++) {
+                int argb = src[i];
+                int grey = (int) Math.round(w0[(argb >> s0) & 0xFF] + w1[(argb >> s1) & 0xFF] + w2[(argb >> s2) & 0xFF]);
+                dst[i] = (argb & 0xFF000000) | p[grey];
+            }
+        }
+    }
+}
@@ -1,7 +1,5 @@
 package cosc202.andie;
 
-import java.awt.image.*;
-
 /**
  * <p>
  * ImageOperation to convert an image from colour to greyscale.
@@ -20,7 +18,10 @@ import java.awt.image.*;
  * @author Steven Mills
  * @version 1.0
  */
-public class ConvertToGrey implements ImageOperation, java.io.Serializable {
+public class ConvertToGrey extends PointOperation implements java.io.Serializable {
+
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = -6551968746842527704L;
 
     /**
      * <p>
@@ -31,7 +32,7 @@ public class ConvertToGrey implements ImageOperation, java.io.Serializable {
 
     /**
      * <p>
-     * Apply greyscale conversion to an image.
+     * Compile greyscale conversion into a lookup.
      * </p>
      * 
      * <p>
@@ -41,26 +42,9 @@ public class ConvertToGrey implements ImageOperation, java.io.Serializable {
      * least to blue.
      * </p>
      * 
-     * @param input The image to be converted to greyscale.
-     * @return The resulting greyscale image.
+     * @return The lookup converting each pixel to grey.
      */
-    public BufferedImage apply(BufferedImage input) {
-  
-        for (int y = 0; y < input.getHeight(); ++y) {
-            for (int x = 0; x < input.getWidth(); ++x) {
-                int argb = input.getRGB(x, y);
-                int a = (argb & 0xFF000000) >>> 24;
-                int r = (argb & 0x00FF0000) >> 16;
-                int g = (argb & 0x0000FF00) >> 8;
-                int b = (argb & 0x000000FF);
-
-                int grey = (int) Math.round(0.3*r + 0.6*g + 0.1*b);
-
-                argb = (a << 24) | (grey << 16) | (grey << 8) | grey;
-                input.setRGB(x, y, argb);
-            }
-        }
-        
-        return input;
-    }   
-}
\ No newline at end of file
+    protected ColourLookup compile() {
+        return ColourLookup.grey();
+    }
+}
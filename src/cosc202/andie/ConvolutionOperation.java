@@ -13,6 +13,20 @@ import java.awt.image.*;
  * </p>
  *
  * <p>
+ * Kernels that are the outer product of a column and a row vector (such as the Gaussian and
+ * mean kernels) are detected automatically, and applied as a horizontal 1-D pass followed by
+ * a vertical 1-D pass. This costs O(r) per pixel instead of O(r<sup>2</sup>) for a kernel of
+ * radius r. Because the weights are summed in a different order, the separable result may differ
+ * from the direct one by one intensity level where a channel sum lands within rounding error of a
+ * whole number.
+ * </p>
+ *
+ * <p>
+ * Convolution is a {@link BandedOperation} with a halo equal to the kernel radius, so large
+ * images are split into bands and convolved on several cores by the {@link TileScheduler}.
+ * </p>
+ *
+ * <p>
  * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
  * </p>
  *
@@ -21,11 +35,38 @@ import java.awt.image.*;
  * @version 1.0
  */
 
-public class ConvolutionOperation implements java.io.Serializable {
+public class ConvolutionOperation implements BandedOperation, java.io.Serializable {
+
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = -3316895363627463324L;
+
+    /** The largest kernel width or height that can be read from a file, which is that of the largest Gaussian filter. */
+    static final int MAX_KERNEL_SIDE = 2 * GaussianFilter.MAX_RADIUS + 1;
+
+    /**
+     * The smallest kernel width that is applied as two 1-D passes when it is separable.
+     * For 3x3 kernels the direct convolution is just as quick, and keeps the small edge detection filters exact.
+     */
+    private static final int SEPARABLE_MIN_SIZE = 5;
+
+    /** The relative tolerance used when checking whether the kernel is an outer product of two vectors. */
+    private static final float SEPARABLE_TOLERANCE = 1e-5f;
 
     /** The kernel to used for the convolution. */
     private Kernel kernel;
 
+    /** Whether the results are rescaled around mid-grey, as for edge detection filters, rather than clipped. */
+    private boolean isEdgeDetectionFilter;
+
+    /** The sum of all positive weights in the kernel, used to rescale edge detection results. */
+    private int weightSum;
+
+    /**
+     * The weights to convolve with: either just the kernel data, row by row, or the column
+     * and row vectors of a separable kernel. Worked out by the first band to need them.
+     */
+    private transient volatile float[][] weights;
+
     /**
      * <p>
      * The constructor for the ConvolutionOperation class
@@ -34,7 +75,34 @@ public class ConvolutionOperation implements java.io.Serializable {
      * @param kernel The kernel used in the convolution operation.
      */
     public ConvolutionOperation(Kernel kernel) {
+        this(kernel, false, -1);
+    }
+
+    /**
+     * <p>
+     * Create a ConvolutionOperation that rescales or clips its results in the given way.
+     * </p>
+     *
+     * @param kernel The kernel used in the convolution operation.
+     * @param isEdgeDetectionFilter Whether the filter being applied is an edge detection filter or not
+     * @param weightSum The sum of all positive weights in the kernel (only used for edge detection filters)
+     */
+    public ConvolutionOperation(Kernel kernel, boolean isEdgeDetectionFilter, int weightSum) {
         this.kernel = kernel;
+        this.isEdgeDetectionFilter = isEdgeDetectionFilter;
+        this.weightSum = weightSum;
+    }
+
+    /**
+     * <p>
+     * Create a convolution from the parameters saved by {@link writeParameters}.
+     * </p>
+     *
+     * @param params The saved parameters.
+     */
+    ConvolutionOperation(OperationParameters params) {
+        this(new Kernel(params.getInt(1, 1, 1, MAX_KERNEL_SIDE), params.getInt(2, 1, 1, MAX_KERNEL_SIDE), params.getFloats(3, new float[] {1})),
+             params.getInt(4, 0) != 0, params.getInt(5, -1));
     }
 
     /**
@@ -49,26 +117,135 @@ public class ConvolutionOperation implements java.io.Serializable {
      * @return The output image, after applying the convolution
      */
     public BufferedImage apply(BufferedImage input, boolean isEdgeDetectionFilter, int weightSum) {
-        BufferedImage output = new BufferedImage(input.getColorModel(), input.copyData(null), input.isAlphaPremultiplied(), null);
-        int kernelRadius = kernel.getWidth() / 2;
+        return new ConvolutionOperation(kernel, isEdgeDetectionFilter, weightSum).apply(input);
+    }
+
+    /**
+     * <p>
+     * Apply the convolution to an image.
+     * </p>
+     *
+     * <p>
+     * The image is read into a packed ARGB array once (see {@link PackedPixels}), and the kernel
+     * weights and clamped edge offsets are looked up before the main loop, so the inner loop only
+     * does array reads and arithmetic. Kernels of at least {@link SEPARABLE_MIN_SIZE} that are separable
+     * are applied as two 1-D passes; all others are applied directly.
+     * </p>
+     *
+     * @param input The image to apply the convolution to.
+     * @return The output image, after applying the convolution
+     */
+    public BufferedImage apply(BufferedImage input) {
         int height = input.getHeight();
         int width = input.getWidth();
+        int[] src = PackedPixels.read(input);
+        int[] dst = new int[width * height];
+
+        TileScheduler.run(this, src, dst, width, height);
+        return PackedPixels.create(input, dst, width, height);
+    }
+
+    /**
+     * <p>
+     * Apply the full 2-D kernel to an image, even if it is separable.
+     * </p>
+     *
+     * <p>
+     * This is the exact result that the separable passes approximate, so it can be used to check them.
+     * </p>
+     *
+     * @param input The image to apply the convolution to.
+     * @return The output image, after applying the convolution.
+     */
+    BufferedImage applyDirect(BufferedImage input) {
+        int height = input.getHeight();
+        int width = input.getWidth();
+        int[] src = PackedPixels.read(input);
+        int[] dst = new int[width * height];
+
+        convolveDirect(src, dst, width, height, 0, height, kernel.getKernelData(null), OperationContext.current());
+        return PackedPixels.create(input, dst, width, height);
+    }
+
+    /**
+     * <p>
+     * Get the number of rows above and below a band that the convolution reads.
+     * </p>
+     *
+     * @return The radius of the kernel.
+     */
+    public int getHalo() {
+        return kernel.getWidth() / 2;
+    }
+
+    /**
+     * <p>
+     * Convolve the rows from {@code top} to {@code bottom}.
+     * </p>
+     *
+     * @param src The packed ARGB input pixels.
+     * @param dst The packed ARGB array to store the result in.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param top The first row to compute.
+     * @param bottom One past the last row to compute.
+     */
+    public void applyRows(int[] src, int[] dst, int width, int height, int top, int bottom) {
+        float[][] taps = weights;
+        if (taps == null) {
+            // Bands racing to do this all get the same answer, so it does not matter which one wins.
+            taps = kernel.getWidth() >= SEPARABLE_MIN_SIZE ? separate() : null;
+            if (taps == null) {
+                taps = new float[][] {kernel.getKernelData(null)};
+            }
+            weights = taps;
+        }
+
+        OperationContext context = OperationContext.current();
+        if (taps.length == 2) {
+            convolveSeparable(src, dst, width, height, top, bottom, taps[0], taps[1], context);
+        }
+        else {
+            convolveDirect(src, dst, width, height, top, bottom, taps[0], context);
+        }
+    }
+
+    /**
+     * <p>
+     * Apply the full 2-D kernel to every pixel in a band of rows.
+     * </p>
+     *
+     * @param src The packed ARGB input pixels.
+     * @param dst The packed ARGB array to store the result in.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param top The first row to compute.
+     * @param bottom One past the last row to compute.
+     * @param kernelData The kernel weights, row by row.
+     * @param context The context to check for cancellation and report rows to.
+     */
+    private void convolveDirect(int[] src, int[] dst, int width, int height, int top, int bottom, float[] kernelData, OperationContext context) {
+        int kernelRadius = kernel.getWidth() / 2;
+        int side = 2 * kernelRadius + 1;
+        int[] columns = clampedIndices(width, kernelRadius, 1);
+        int[] rowOffsets = clampedIndices(height, kernelRadius, width);
         
-        for (int y = 0; y < height; y++) {
+        for (int y = top; y < bottom; y++) {
+            context.checkCancelled();
+
             for (int x = 0; x < width; x++) {
                 float sumR = 0;
                 float sumG = 0;
                 float sumB = 0;
+                int k = 0;
 
                 // Apply the kernel weights on the local neighbourhood, for each colour channel.
-                for (int dy = -kernelRadius; dy <= kernelRadius; dy++) {
-                    for (int dx = -kernelRadius; dx <= kernelRadius; dx++) {
-                    
-                        // Out of bounds pixels are assumed to have the same value as the nearest edge pixel. 
-                        int pixelX = Math.min(Math.max(x + dx, 0), width - 1);
-                        int pixelY = Math.min(Math.max(y + dy, 0), height - 1);
-                        int pixel = input.getRGB(pixelX, pixelY);
-                        float kernelValue = kernel.getKernelData(null)[(dy + kernelRadius) * kernel.getWidth() + (dx + kernelRadius)];
+                for (int dy = 0; dy < side; dy++) {
+                    int rowOffset = rowOffsets[y + dy];
+
+                    for (int dx = 0; dx < side; dx++) {
+                        int pixel = src[rowOffset + columns[x + dx]];
+                        float kernelValue = kernelData[k++];
 
                         sumR += ((pixel & 0x00FF0000) >> 16) * kernelValue;
                         sumG += ((pixel & 0x0000FF00) >> 8) * kernelValue;
@@ -76,28 +253,225 @@ public class ConvolutionOperation implements java.io.Serializable {
                     }
                 }
 
-                // Rescale/Clip the channel values, and pack them back into a pixel.
-                int a = (input.getRGB(x, y) & 0xFF000000) >>> 24;
-                int r = -1;
-                int g = -1;
-                int b = -1;
+                int i = y * width + x;
+                dst[i] = pack(src[i], sumR, sumG, sumB);
+            }
 
-                if (isEdgeDetectionFilter) {
-                    r = (int)(sumR / (weightSum * 2)) + 127;
-                    g = (int)(sumG / (weightSum * 2)) + 127;
-                    b = (int)(sumB / (weightSum * 2)) + 127;
+            context.rowsCompleted(1);
+        }
+    }
+
+    /**
+     * <p>
+     * Apply a separable kernel to a band of rows as a horizontal pass with the row vector,
+     * followed by a vertical pass with the column vector.
+     * </p>
+     *
+     * <p>
+     * The horizontal pass covers the band plus the kernel radius above and below it, and keeps
+     * its sums as floats, so no precision is lost between the passes.
+     * </p>
+     *
+     * @param src The packed ARGB input pixels.
+     * @param dst The packed ARGB array to store the result in.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param top The first row to compute.
+     * @param bottom One past the last row to compute.
+     * @param column The column vector of the kernel.
+     * @param row The row vector of the kernel.
+     * @param context The context to check for cancellation and report rows to.
+     */
+    private void convolveSeparable(int[] src, int[] dst, int width, int height, int top, int bottom, float[] column, float[] row, OperationContext context) {
+        int kernelRadius = kernel.getWidth() / 2;
+        int side = 2 * kernelRadius + 1;
+        int[] columns = clampedIndices(width, kernelRadius, 1);
+        int[] rowOffsets = clampedIndices(height, kernelRadius, width);
+        int passTop = Math.max(top - kernelRadius, 0);
+        int passBottom = Math.min(bottom + kernelRadius, height);
+        int passOffset = passTop * width;
+        float[] red = new float[(passBottom - passTop) * width];
+        float[] green = new float[red.length];
+        float[] blue = new float[red.length];
+
+        // Horizontal pass.
+        for (int y = passTop; y < passBottom; y++) {
+            context.checkCancelled();
+            int rowOffset = y * width;
+
+            for (int x = 0; x < width; x++) {
+                float sumR = 0;
+                float sumG = 0;
+                float sumB = 0;
+
+                for (int dx = 0; dx < side; dx++) {
+                    int pixel = src[rowOffset + columns[x + dx]];
+                    float kernelValue = row[dx];
+
+                    sumR += ((pixel & 0x00FF0000) >> 16) * kernelValue;
+                    sumG += ((pixel & 0x0000FF00) >> 8) * kernelValue;
+                    sumB +=  (pixel & 0x000000FF) * kernelValue;
                 }
-                else {
-                    r = Math.max(0, Math.min((int) sumR, 255));
-                    g = Math.max(0, Math.min((int) sumG, 255));
-                    b = Math.max(0, Math.min((int) sumB, 255));
+
+                int j = rowOffset - passOffset + x;
+                red[j] = sumR;
+                green[j] = sumG;
+                blue[j] = sumB;
+            }
+        }
+
+        // Vertical pass.
+        for (int y = top; y < bottom; y++) {
+            context.checkCancelled();
+
+            for (int x = 0; x < width; x++) {
+                float sumR = 0;
+                float sumG = 0;
+                float sumB = 0;
+
+                for (int dy = 0; dy < side; dy++) {
+                    int j = rowOffsets[y + dy] - passOffset + x;
+                    float kernelValue = column[dy];
+
+                    sumR += red[j] * kernelValue;
+                    sumG += green[j] * kernelValue;
+                    sumB += blue[j] * kernelValue;
+                }
+
+                int i = y * width + x;
+                dst[i] = pack(src[i], sumR, sumG, sumB);
+            }
+
+            context.rowsCompleted(1);
+        }
+    }
+
+    /**
+     * <p>
+     * Try to split the kernel into a column vector and a row vector whose outer product is the kernel.
+     * </p>
+     *
+     * <p>
+     * The row and column through the largest weight are used as the factors, and every weight is
+     * then checked against their product.
+     * </p>
+     *
+     * @return The column vector and row vector, in that order, or null if the kernel is not separable.
+     */
+    float[][] separate() {
+        int side = kernel.getWidth();
+        if (kernel.getHeight() != side) {
+            return null;
+        }
+
+        float[] kernelData = kernel.getKernelData(null);
+        int pivot = 0;
+        for (int i = 1; i < kernelData.length; i++) {
+            if (Math.abs(kernelData[i]) > Math.abs(kernelData[pivot])) {
+                pivot = i;
+            }
+        }
+
+        float pivotValue = kernelData[pivot];
+        if (pivotValue == 0) {
+            return null;
+        }
+
+        int pivotRow = pivot / side;
+        int pivotColumn = pivot % side;
+        float[] column = new float[side];
+        float[] row = new float[side];
+        for (int i = 0; i < side; i++) {
+            column[i] = kernelData[i * side + pivotColumn];
+            row[i] = kernelData[pivotRow * side + i] / pivotValue;
+        }
+
+        float tolerance = Math.abs(pivotValue) * SEPARABLE_TOLERANCE;
+        for (int i = 0; i < side; i++) {
+            for (int j = 0; j < side; j++) {
+                if (Math.abs(kernelData[i * side + j] - column[i] * row[j]) > tolerance) {
+                    return null;
                 }
-                
-                int argb = (a << 24) | (r << 16) | (g << 8) | b;
-                output.setRGB(x, y, argb);
             }
         }
 
-        return output;
+        return new float[][] {column, row};
+    }
+
+    /**
+     * <p>
+     * Work out the clamped index of every position a kernel can reach along one axis.
+     * </p>
+     *
+     * <p>
+     * Out of bounds pixels are assumed to have the same value as the nearest edge pixel, so
+     * entry {@code i} holds the index of {@code i - kernelRadius} clamped to the image, multiplied by {@code stride}.
+     * </p>
+     *
+     * @param length The number of pixels along the axis.
+     * @param kernelRadius The radius of the kernel.
+     * @param stride The amount to multiply each index by (1 for columns, the image width for rows).
+     * @return The clamped indices, of length {@code length + 2 * kernelRadius}.
+     */
+    private static int[] clampedIndices(int length, int kernelRadius, int stride) {
+        int[] indices = new int[length + 2 * kernelRadius];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = Math.min(Math.max(i - kernelRadius, 0), length - 1) * stride;
+        }
+        return indices;
+    }
+
+    /**
+     * <p>
+     * Rescale or clip the channel sums for one pixel, and pack them back into a pixel.
+     * </p>
+     *
+     * @param source The original pixel, whose alpha value is kept.
+     * @param sumR The weighted sum of the red channel.
+     * @param sumG The weighted sum of the green channel.
+     * @param sumB The weighted sum of the blue channel.
+     * @return The packed ARGB result pixel.
+     */
+    private int pack(int source, float sumR, float sumG, float sumB) {
+        int a = (source & 0xFF000000) >>> 24;
+        int r = -1;
+        int g = -1;
+        int b = -1;
+
+        if (isEdgeDetectionFilter) {
+            r = (int)(sumR / (weightSum * 2)) + 127;
+            g = (int)(sumG / (weightSum * 2)) + 127;
+            b = (int)(sumB / (weightSum * 2)) + 127;
+        }
+        else {
+            r = Math.max(0, Math.min((int) sumR, 255));
+            g = Math.max(0, Math.min((int) sumG, 255));
+            b = Math.max(0, Math.min((int) sumB, 255));
+        }
+        
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * <p>
+     * Check whether the convolution changes the image it is applied to.
+     * </p>
+     *
+     * @return False, as the result is written to a new pixel array.
+     */
+    public boolean mutatesInput() {
+        return false;
+    }
+
+    /**
+     * <p>
+     * Add the kernel and edge handling to the parameters saved for this operation.
+     * </p>
+     *
+     * @param params The parameters to add to.
+     */
+    public void writeParameters(OperationParameters params) {
+        params.putInt(1, kernel.getWidth()).putInt(2, kernel.getHeight()).putFloats(3, kernel.getKernelData(null));
+        params.putInt(4, isEdgeDetectionFilter ? 1 : 0).putInt(5, weightSum);
     }
-}
\ No newline at end of file
+}
@@ -16,6 +16,9 @@ import java.awt.*;
  * @author Evan Ting
  */
 public class Crop implements ImageOperation, java.io.Serializable {
+
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = 372833663309222005L;
     
     /** The top-left corner of the user-selected region. */
     private Point startPoint;
@@ -37,6 +40,18 @@ public class Crop implements ImageOperation, java.io.Serializable {
         this.endPoint = endPoint;
     }
 
+    /**
+     * <p>
+     * Create a crop from the parameters saved by {@link writeParameters}.
+     * </p>
+     *
+     * @param params The saved parameters.
+     */
+    Crop(OperationParameters params) {
+        this(new Point(params.getInt(1, 0, 0, Integer.MAX_VALUE), params.getInt(2, 0, 0, Integer.MAX_VALUE)),
+             new Point(params.getInt(3, 0, 0, Integer.MAX_VALUE), params.getInt(4, 0, 0, Integer.MAX_VALUE)));
+    }
+
     /**
      * <p>
      * Crop the image, based on the user-selected region.
@@ -46,9 +61,20 @@ public class Crop implements ImageOperation, java.io.Serializable {
      * @return The resulting cropped image
      */
     public BufferedImage apply(BufferedImage input) {
+        return cropImage(input, getSelection());
+    }
+
+    /**
+     * <p>
+     * Get the region of the image that the crop keeps.
+     * </p>
+     *
+     * @return The user-selected region, in image coordinates.
+     */
+    Rectangle getSelection() {
         Rectangle selection = new Rectangle(startPoint);
         selection.add(endPoint);
-        return cropImage(input, selection);
+        return selection;
     }
 
     /**
@@ -71,4 +97,26 @@ public class Crop implements ImageOperation, java.io.Serializable {
         g.dispose();
         return croppedImage;
     }
-}
\ No newline at end of file
+
+    /**
+     * <p>
+     * Check whether the crop changes the image it is applied to.
+     * </p>
+     *
+     * @return False, as the selected part is drawn into a new image.
+     */
+    public boolean mutatesInput() {
+        return false;
+    }
+
+    /**
+     * <p>
+     * Add the corners of the selection to the parameters saved for this operation.
+     * </p>
+     *
+     * @param params The parameters to add to.
+     */
+    public void writeParameters(OperationParameters params) {
+        params.putInt(1, startPoint.x).putInt(2, startPoint.y).putInt(3, endPoint.x).putInt(4, endPoint.y);
+    }
+}
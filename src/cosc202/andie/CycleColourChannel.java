@@ -1,7 +1,5 @@
 package cosc202.andie;
 
-import java.awt.image.*;
-
 /**
  * <p>
  * A class that allows for the colour channel of an image to cycle (swaps around the red, green, and blue colour values).
@@ -12,7 +10,10 @@ import java.awt.image.*;
  * @author Charlotte Williams
  * @author Evan Ting
  */
-public class CycleColourChannel implements ImageOperation, java.io.Serializable {
+public class CycleColourChannel extends PointOperation implements java.io.Serializable {
+
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = -8398633954474840647L;
 
     /** This variable represents what way the user has chosen to swap the colour values. */
     private String channels;
@@ -30,40 +31,53 @@ public class CycleColourChannel implements ImageOperation, java.io.Serializable
 
     /**
      * <p>
-     * Changes the colour channel of an image dependent on user input.
+     * Compile the channel swap chosen by the user into a lookup.
+     * </p>
+     * 
+     * <p>
+     * The channel string names, in order, the input channels that become the output red, green and blue.
+     * Anything other than GBR, BRG, RBG or GRB swaps red and blue.
      * </p>
-     * @param input the image to apply changes to
-     * @return the resulting image after changes
+     * 
+     * @return The lookup rearranging the channels of each pixel.
      */
-    public BufferedImage apply(BufferedImage input) {
-        for (int y = 0; y < input.getHeight(); ++y) {
-            for (int x = 0; x < input.getWidth(); ++x) {
-                int argb = input.getRGB(x, y);
-                int pixel = ((argb & 0xFF000000) >>> 24) << 24;
-                int r = (argb & 0x00FF0000) >> 16;
-                int g = (argb & 0x0000FF00) >> 8;
-                int b = (argb & 0x000000FF);
-
-                if (channels.equals("GBR")) {
-                    pixel |= (b << 16) | (r << 8) | g;
-                }
-                else if (channels.equals("BRG")) {
-                    pixel |= (g << 16) | (b << 8) | r;
-                }
-                else if (channels.equals("RBG")) {
-                    pixel |= (r << 16) | (b << 8) | g;
-                }
-                else if (channels.equals("GRB")) {
-                    pixel |= (g << 16) | (r << 8) | b;
-                }
-                else {
-                    pixel |= (b << 16) | (g << 8) | r;
-                }
-
-                input.setRGB(x, y, pixel);
-            }
+    protected ColourLookup compile() {
+        if (channels.equals("GBR")) {
+            return ColourLookup.channels(2, 0, 1);
+        }
+        else if (channels.equals("BRG")) {
+            return ColourLookup.channels(1, 2, 0);
+        }
+        else if (channels.equals("RBG")) {
+            return ColourLookup.channels(0, 2, 1);
+        }
+        else if (channels.equals("GRB")) {
+            return ColourLookup.channels(1, 0, 2);
         }
+        else {
+            return ColourLookup.channels(2, 1, 0);
+        }
+    }
+
+    /**
+     * <p>
+     * Create a channel cycle from the parameters saved by {@link writeParameters}.
+     * </p>
+     *
+     * @param params The saved parameters.
+     */
+    CycleColourChannel(OperationParameters params) {
+        this(params.getString(1, "RBG"));
+    }
 
-        return input;
-    }   
-}
\ No newline at end of file
+    /**
+     * <p>
+     * Add the channel order to the parameters saved for this operation.
+     * </p>
+     *
+     * @param params The parameters to add to.
+     */
+    public void writeParameters(OperationParameters params) {
+        params.putString(1, channels);
+    }
+}
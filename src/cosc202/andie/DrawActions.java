@@ -1,6 +1,7 @@
 package cosc202.andie;
 
 import javax.swing.*;
+import java.awt.Dimension;
 import java.awt.event.*;
 import java.util.*;
 
@@ -119,17 +120,16 @@ public class DrawActions {
                 int x2 = (int)(target.getEndPoint().getX() / scale);
                 int y2 = (int)(target.getEndPoint().getY() / scale);
 
-                int width = target.getImage().getCurrentImage().getWidth();
-                int height = target.getImage().getCurrentImage().getHeight();
+                Dimension size = target.getImage().getSize();
+                int width = size.width;
+                int height = size.height;
                 
                 if ((x1 >= width && x2 >= width) || (y1 >= height && y2 >= height)) {
                     JOptionPane.showMessageDialog(target, Andie.getText("noImageRegionToDrawText"), Andie.getText("noImageRegionToDrawTitle"), JOptionPane.WARNING_MESSAGE);
                     return;
                 }
 
-                target.getImage().apply(new DrawLineOperation(colour, x1, y1, x2, y2));
-                target.repaint();
-                target.getParent().revalidate();
+                target.getImage().applyAsync(new DrawLineOperation(colour, x1, y1, x2, y2));
             }
         }
     }
@@ -189,17 +189,16 @@ public class DrawActions {
                 int x2 = (int)(target.getEndPoint().getX() / scale);
                 int y2 = (int)(target.getEndPoint().getY() / scale);
 
-                int width = target.getImage().getCurrentImage().getWidth();
-                int height = target.getImage().getCurrentImage().getHeight();
+                Dimension size = target.getImage().getSize();
+                int width = size.width;
+                int height = size.height;
                 
                 if ((x1 >= width && x2 >= width) || (y1 >= height && y2 >= height)) {
                     JOptionPane.showMessageDialog(target, Andie.getText("noImageRegionToDrawText"), Andie.getText("noImageRegionToDrawTitle"), JOptionPane.WARNING_MESSAGE);
                     return;
                 }
 
-                target.getImage().apply(new DrawRectOperation(colour, fillType, x1, y1, x2, y2));
-                target.repaint();
-                target.getParent().revalidate();
+                target.getImage().applyAsync(new DrawRectOperation(colour, fillType, x1, y1, x2, y2));
             }
         }
     }
@@ -259,17 +258,16 @@ public class DrawActions {
                 int x2 = (int)(target.getEndPoint().getX() / scale);
                 int y2 = (int)(target.getEndPoint().getY() / scale);
 
-                int width = target.getImage().getCurrentImage().getWidth();
-                int height = target.getImage().getCurrentImage().getHeight();
+                Dimension size = target.getImage().getSize();
+                int width = size.width;
+                int height = size.height;
                 
                 if ((x1 >= width && x2 >= width) || (y1 >= height && y2 >= height)) {
                     JOptionPane.showMessageDialog(target, Andie.getText("noImageRegionToDrawText"), Andie.getText("noImageRegionToDrawTitle"), JOptionPane.WARNING_MESSAGE);
                     return;
                 }
 
-                target.getImage().apply(new DrawOvalOperation(colour, fillType, x1, y1, x2, y2));
-                target.repaint();
-                target.getParent().revalidate();
+                target.getImage().applyAsync(new DrawOvalOperation(colour, fillType, x1, y1, x2, y2));
             }
         }
     }
@@ -19,7 +19,10 @@ import java.awt.image.*;
  * @author Evan Ting
  * @version 1.0
  */
-public class DrawLineOperation implements ImageOperation, java.io.Serializable {
+public class DrawLineOperation implements RegionOperation, java.io.Serializable {
+
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = 4204035319908610433L;
     
     /** The colour of the line to be drawn. */
     private String colour;
@@ -55,6 +58,17 @@ public class DrawLineOperation implements ImageOperation, java.io.Serializable {
         this.y2 = y2;
     }
 
+    /**
+     * <p>
+     * Create a line from the parameters saved by {@link writeParameters}.
+     * </p>
+     *
+     * @param params The saved parameters.
+     */
+    DrawLineOperation(OperationParameters params) {
+        this(params.getString(1, ""), params.getInt(3, 0), params.getInt(4, 0), params.getInt(5, 0), params.getInt(6, 0));
+    }
+
     /**
      * <p>
      * Apply a line drawing operation to an image.
@@ -100,4 +114,27 @@ public class DrawLineOperation implements ImageOperation, java.io.Serializable {
         g2d.dispose();
         return input;
     }
-}
\ No newline at end of file
+
+    /**
+     * <p>
+     * Get the part of the image that drawing the line can change.
+     * </p>
+     *
+     * @return The bounds of the line, including the width of its outline.
+     */
+    public Rectangle getRegion() {
+        return new Rectangle(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x2 - x1) + 1, Math.abs(y2 - y1) + 1);
+    }
+
+    /**
+     * <p>
+     * Add the colour and end points to the parameters saved for this operation.
+     * </p>
+     *
+     * @param params The parameters to add to.
+     */
+    public void writeParameters(OperationParameters params) {
+        params.putString(1, colour);
+        params.putInt(3, x1).putInt(4, y1).putInt(5, x2).putInt(6, y2);
+    }
+}
@@ -20,7 +20,10 @@ import java.awt.image.*;
  * @author Evan Ting
  * @version 1.0
  */
-public class DrawRectOperation implements ImageOperation, java.io.Serializable {
+public class DrawRectOperation implements RegionOperation, java.io.Serializable {
+
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = 5075935089870137450L;
 
     /** The colour of the square/rectangle to be drawn. */
     private String colour;
@@ -61,6 +64,17 @@ public class DrawRectOperation implements ImageOperation, java.io.Serializable {
         this.y2 = y2;
     }
 
+    /**
+     * <p>
+     * Create a rectangle from the parameters saved by {@link writeParameters}.
+     * </p>
+     *
+     * @param params The saved parameters.
+     */
+    DrawRectOperation(OperationParameters params) {
+        this(params.getString(1, ""), params.getString(2, ""), params.getInt(3, 0), params.getInt(4, 0), params.getInt(5, 0), params.getInt(6, 0));
+    }
+
     /**
      * <p>
      * Apply a rectangle drawing operation to an image.
@@ -117,4 +131,27 @@ public class DrawRectOperation implements ImageOperation, java.io.Serializable {
         g2d.dispose();
         return input;
     }
-}
\ No newline at end of file
+
+    /**
+     * <p>
+     * Get the part of the image that drawing the rectangle can change.
+     * </p>
+     *
+     * @return The bounds of the rectangle, including the width of its outline.
+     */
+    public Rectangle getRegion() {
+        return new Rectangle(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x2 - x1) + 1, Math.abs(y2 - y1) + 1);
+    }
+
+    /**
+     * <p>
+     * Add the colour, fill and corners to the parameters saved for this operation.
+     * </p>
+     *
+     * @param params The parameters to add to.
+     */
+    public void writeParameters(OperationParameters params) {
+        params.putString(1, colour).putString(2, fillType);
+        params.putInt(3, x1).putInt(4, y1).putInt(5, x2).putInt(6, y2);
+    }
+}
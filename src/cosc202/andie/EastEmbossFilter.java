@@ -21,6 +21,9 @@ import java.awt.image.*;
  */
 public class EastEmbossFilter implements ImageOperation, java.io.Serializable {
 
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = -3730138599313762303L;
+
     /**
      * <p>
      * Apply an East Emboss Filter.
@@ -44,4 +47,15 @@ public class EastEmbossFilter implements ImageOperation, java.io.Serializable {
         ConvolutionOperation convOp = new ConvolutionOperation(kernel);
         return convOp.apply(input, true, 1);
     }
-}
\ No newline at end of file
+
+    /**
+     * <p>
+     * Check whether the filter changes the image it is applied to.
+     * </p>
+     *
+     * @return False, as the kernel is convolved into a new image.
+     */
+    public boolean mutatesInput() {
+        return false;
+    }
+}
@@ -100,20 +100,13 @@ public class EditActions {
          * <p>
          * This method is called whenever the UndoAction is triggered.
          * It undoes the most recently applied operation.
+         * The undo is done in the background, and the image is redrawn once it is ready.
          * </p>
          * 
          * @param e The event triggering this callback.
          */
         public void actionPerformed(ActionEvent e) {
-            try {
-                target.getImage().undo();
-                target.repaint();
-                target.getParent().revalidate();
-                Andie.frame.setTitle("ANDIE*");
-            } 
-            catch (EmptyStackException ex) {
-                JOptionPane.showMessageDialog(target,  Andie.getText("noChangesToUndoWarningText"), Andie.getText("noChangesToUndoWarningTitle"), JOptionPane.ERROR_MESSAGE);
-            }
+            target.getImage().undo();
         }
     }
 
@@ -148,20 +141,13 @@ public class EditActions {
          * <p>
          * This method is called whenever the RedoAction is triggered.
          * It redoes the most recently undone operation.
+         * The redo is done in the background, and the image is redrawn once it is ready.
          * </p>
          * 
          * @param e The event triggering this callback.
          */
         public void actionPerformed(ActionEvent e) {
-            try {
-                target.getImage().redo();
-                target.repaint();
-                target.getParent().revalidate();
-                Andie.frame.setTitle("ANDIE*");
-            } 
-            catch(EmptyStackException ex) {
-                JOptionPane.showMessageDialog(target,  Andie.getText("noChangesToRedoWarningText"), Andie.getText("noChangesToRedoWarningTitle"), JOptionPane.ERROR_MESSAGE);
-            }
+            target.getImage().redo();
         }
     }
 }
\ No newline at end of file
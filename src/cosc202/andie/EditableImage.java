@@ -1,9 +1,15 @@
 package cosc202.andie;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.awt.Dimension;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
 import java.awt.image.*;
-import javax.imageio.*;
 import javax.swing.*;
 
 /**
@@ -25,6 +31,23 @@ import javax.swing.*;
  * being used to allow undone operations to be redone.
  * </p>
  * 
+ * <p>
+ * Operations applied with {@link applyAsync} are computed one at a time, in the order they were
+ * requested, on a background thread, so the user interface stays responsive. Each is applied
+ * to a copy of the current image, which is only replaced once the result is ready. Operations
+ * that declare they do not change their input (see {@link ImageOperation#mutatesInput}) read the
+ * current image directly instead, as the copy would never be written to.
+ * Background operations are applied with an {@link OperationContext}, so they can be
+ * cancelled part way through and their progress can be shown.
+ * </p>
+ * 
+ * <p>
+ * Undo and redo are queued on the same thread, behind the operations already requested, as
+ * undoing may replay the operation stack and redoing may recompute an operation. The stacks
+ * are only changed on that thread, and the current image is only replaced once the new one is
+ * ready, so the previous image stays on screen in the meantime.
+ * </p>
+ * 
  * <p> 
  * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
  * </p>
@@ -40,13 +63,76 @@ class EditableImage {
     private BufferedImage original;
     
     /** The current image, the result of applying {@link ops} to {@link original}. */
-    private BufferedImage current;
+    private volatile BufferedImage current;
+
+    /** Increased every time {@link current} changes, including when it is changed in place. */
+    private volatile long version;
+
+    /** The part of the image changed to reach the current {@link version}, or null if it is not known. */
+    private volatile Rectangle changedRegion;
     
     /** The sequence of operations currently applied to the image. */
     private Stack<ImageOperation> ops;
     
     /** A memory of 'undone' operations to support 'redo'. */
     private Stack<ImageOperation> redoOps;
+
+    /** The images replaced by each undo, so that {@link redo} does not have to recompute them. */
+    private RedoCache redoResults;
+
+    /** Snapshots of intermediate results, so that {@link refresh} does not have to replay every operation. */
+    private CheckpointCache checkpoints;
+
+    /** Images with more pixels than this are shown from a subsampled decode while they are decoded in full in the background. */
+    private static final long PREVIEW_MIN_PIXELS = 1L << 22;
+
+    /** The most pixels across or down in the preview shown while an image is decoded. */
+    private static final int PREVIEW_SIDE = 2048;
+
+    /** A subsampled copy of the image being decoded in the background, or null if none is. */
+    private volatile BufferedImage loadingPreview;
+
+    /** The full size of the image being decoded in the background, or null if none is. */
+    private volatile Dimension loadingSize;
+
+    /** The decode of the last image opened in the background, or null if there has been none. */
+    private volatile Future<?> loading;
+
+    /** Increased every time an image is opened, so that an out of date background decode is thrown away. */
+    private int loads;
+
+    /** The file that holds an encoding of {@link original}, read when opened or written when saved, or null if there is none. */
+    private Path sourceFile;
+
+    /** The size of {@link sourceFile} when it was read or written, in bytes. */
+    private long sourceSize;
+
+    /** The modification time of {@link sourceFile} when it was read or written. */
+    private FileTime sourceModified;
+
+    /** The hash of the file {@link original} was decoded from, which starts its keys in the {@link RenderCache}, or null if there is none. */
+    private byte[] originalHash;
+
+    /** The last proxy made by {@link getProxy}, or null if there is none. */
+    private BufferedImage proxy;
+
+    /** The {@link version} of the image that {@link proxy} was made from. */
+    private long proxyVersion;
+
+    /** The scale that {@link proxy} was made at. */
+    private double proxyScale;
+
+    /** The latest pyramid built over the current image, which may be out of date, or null if none has been asked for. */
+    private volatile ImagePyramid pyramid;
+
+    /** The {@link version} of the image that {@link pyramid} is up to date with. */
+    private volatile long pyramidVersion;
+
+    /** The highest level of the pyramid that has been asked for. */
+    private final AtomicInteger pyramidLevel = new AtomicInteger();
+
+    /** Whether bringing the pyramid up to date is queued but has not started yet. */
+    private final AtomicBoolean pyramidQueued = new AtomicBoolean();
    
     /** The file where the original image is stored/ */
     private String imageFilename;
@@ -54,8 +140,40 @@ class EditableImage {
     /** The file where the operation sequence is stored. */
     private String opsFilename;
 
-    /** List of actions to be recorded in a unique macro file */
-    private static List<String> actions = new ArrayList<>();
+    /** The thread that operations are applied on in the background, shared by all images. */
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ANDIE operations");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** The thread that pyramids are built on, so that drawing the image never waits for them. */
+    private static final ExecutorService pyramidExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ANDIE pyramid");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** The listeners following operations applied in the background. */
+    private List<OperationListener> listeners;
+
+    /** The number of operations, undos and redos queued or running in the background. */
+    private int pending;
+
+    /** The number of {@link pending} tasks that {@link cancel} would cancel, which is all but the undos. */
+    private int cancellable;
+
+    /** Increased to cancel every background operation queued before it changed. */
+    private int generation;
+
+    /** The context of the operation running in the background, or null if there is none. */
+    private OperationContext running;
+
+    /** Whether the task {@link running} belongs to can be cancelled, which is false while undoing. */
+    private boolean runningCancellable;
+
+    /** The operations applied since recording a macro started, in order. */
+    private static List<ImageOperation> recorded = new ArrayList<ImageOperation>();
 
     /** Whether the user is currently recording the macro operations */
     private static boolean isRecording = false;
@@ -74,8 +192,16 @@ class EditableImage {
         current = null;
         ops = new Stack<ImageOperation>();
         redoOps = new Stack<ImageOperation>();
+        redoResults = new RedoCache();
+        checkpoints = new CheckpointCache();
+        listeners = new ArrayList<OperationListener>();
+        pending = 0;
+        cancellable = 0;
+        generation = 0;
+        running = null;
         imageFilename = null;
         opsFilename = null;
+        originalHash = null;
     }
 
     /**
@@ -86,7 +212,7 @@ class EditableImage {
      * @return True if there is an image, false otherwise.
      */
     public boolean hasImage() {
-        return current != null;
+        return current != null || loadingPreview != null;
     }
 
     /**
@@ -143,40 +269,205 @@ class EditableImage {
      * read the operations from <code>some/path/to/image.png.ops</code>.
      * </p>
      * 
+     * <p>
+     * Only a preview is decoded here: the whole image if it is small, or a subsampled copy, which is
+     * quick, if it is large. The preview is shown (see {@link getLoadingPreview}) while the rest is
+     * done in the background, queued behind anything already there, such as a save still to be
+     * snapshotted: the full image is decoded, the operations are read and replayed, and the file is
+     * hashed for the {@link RenderCache}. Operations applied in the meantime are queued behind
+     * that, and anything that needs the full image, such as {@link getCurrentImage}, waits for it.
+     * </p>
+     * 
      * @param filePath The file to open the image from.
-     * @throws Exception If something goes wrong.
+     * @throws Exception If the file cannot be read as an image.
      */
     public void open(String filePath) throws Exception {
+        cancel();
         imageFilename = filePath;
         opsFilename = imageFilename + ".ops";
         File imageFile = new File(imageFilename);
-        original = ImageIO.read(imageFile);
-        current = deepCopy(original);
-        
-        try {
-            FileInputStream fileIn = new FileInputStream(this.opsFilename);
-            ObjectInputStream objIn = new ObjectInputStream(fileIn);
-
-            // Silence the Java compiler warning about type casting.
-            // Understanding the cause of the warning is way beyond
-            // the scope of COSC202, but if you're interested, it has
-            // to do with "type erasure" in Java: the compiler cannot
-            // produce code that fails at this point in all cases in
-            // which there is actually a type mismatch for one of the
-            // elements within the Stack, i.e., a non-ImageOperation.
-            @SuppressWarnings("unchecked")
-            Stack<ImageOperation> opsFromFile = (Stack<ImageOperation>) objIn.readObject();
-            ops = opsFromFile;
-            redoOps.clear();
-            objIn.close();
-            fileIn.close();
+        Path opsFile = Paths.get(opsFilename);
+        Dimension size = ImageDecoder.getSize(imageFile);
+
+        // A small image is decoded whole, as that is as quick as subsampling it, and the decode is kept.
+        boolean whole = (long) size.width * size.height <= PREVIEW_MIN_PIXELS;
+        BufferedImage preview = whole ? ImageDecoder.read(imageFile) : ImageDecoder.read(imageFile, ImageDecoder.chooseSubsampling(size, PREVIEW_SIDE), null);
+        BufferedImage decoded = whole ? preview : null;
+        int token;
+        synchronized (this) {
+            token = ++loads;
+            loadingSize = size;
+            loadingPreview = preview;
+        }
+        loading = executor.submit(() -> finishLoading(imageFile, opsFile, decoded, token));
+    }
+
+    /**
+     * <p>
+     * Forget the image being edited and everything remembered about it, ready for another to be opened.
+     * </p>
+     * 
+     * <p>
+     * The current image is left on screen, as the one being opened is not ready yet.
+     * </p>
+     * 
+     * @param opsFromFile The operations of the image being opened.
+     */
+    private synchronized void reset(Stack<ImageOperation> opsFromFile) {
+        original = null;
+        originalHash = null;
+        sourceFile = null;
+        ops = opsFromFile;
+        redoOps.clear();
+        redoResults.clear();
+        checkpoints.clear();
+    }
+
+    /**
+     * <p>
+     * Finish opening an image on the background thread, and make it the image being edited.
+     * </p>
+     * 
+     * <p>
+     * The files are read once any save still being written has finished, so that they are
+     * never read part way through being replaced. Nothing is changed if another image has been
+     * opened since, as this is then out of date.
+     * </p>
+     * 
+     * @param imageFile The image file.
+     * @param opsFile The operations file, which may not exist.
+     * @param decoded The whole image if it was already decoded, or null to decode it here.
+     * @param token The value of {@link loads} when the image was opened.
+     */
+    private void finishLoading(File imageFile, Path opsFile, BufferedImage decoded, int token) {
+        BackgroundWriter.awaitIdle();
+
+        // Operations files saved by older versions of ANDIE are also read.
+        Stack<ImageOperation> opsFromFile = new Stack<ImageOperation>();
+        try (InputStream fileIn = Files.newInputStream(opsFile)) {
+            opsFromFile.addAll(OperationCodec.read(fileIn));
         } 
         catch (Exception ex) {
             // Could be no file or something else. Carry on for now.
-            ops.clear();
-            redoOps.clear();
+            opsFromFile.clear();
+        }
+
+        BufferedImage image = decoded;
+        byte[] hash = null;
+        try {
+            if (image == null) {
+                image = ImageDecoder.read(imageFile);
+            }
+            hash = RenderCache.hashFile(imageFile.toPath());
+        }
+        catch (Exception | OutOfMemoryError ex) {
+            image = null;
+        }
+
+        boolean loaded = image != null;
+        OperationContext context = new OperationContext();
+        synchronized (this) {
+            if (token != loads) {
+                return;
+            }
+            reset(opsFromFile);
+            if (loaded) {
+                original = image;
+                originalHash = hash;
+                recordSource(imageFile.toPath(), original);
+                running = context;
+                runningCancellable = false;
+            }
+        }
+
+        if (loaded) {
+            try {
+                refresh(context);
+            }
+            catch (RuntimeException | OutOfMemoryError ex) {
+                loaded = false;
+            }
+        }
+
+        synchronized (this) {
+            running = null;
+            if (token != loads) {
+                return;
+            }
+            if (!loaded) {
+                reset(new Stack<ImageOperation>());
+                current = null;
+            }
+            // The current image is in place before the preview goes, so there is always something to show.
+            loadingPreview = null;
+            loadingSize = null;
+            changed(null);
+        }
+
+        boolean failed = !loaded;
+        SwingUtilities.invokeLater(() -> {
+            for (OperationListener listener: listeners) {
+                listener.imageChanged();
+            }
+            if (failed) {
+                JOptionPane.showMessageDialog(ImageAction.target, Andie.getText("notAnImageWarningText"), Andie.getText("notAnImageWarningTitle"), JOptionPane.ERROR_MESSAGE);
+            }
+        });
+    }
+
+    /**
+     * <p>
+     * Wait until the image being decoded in the background, if any, is ready.
+     * </p>
+     * 
+     * <p>
+     * This must not be called while holding this image's lock, as the decode needs it to finish.
+     * </p>
+     */
+    private void awaitLoaded() {
+        Future<?> load = loading;
+        if (load == null || load.isDone()) {
+            return;
+        }
+
+        try {
+            load.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException ex) {
+            // The failure is reported by finishLoading.
+        }
+    }
+
+    /**
+     * <p>
+     * Get the preview shown while a large image is decoded in the background.
+     * </p>
+     * 
+     * @return A subsampled copy of the image being decoded, to be stretched to {@link getSize},
+     *         or null if no image is being decoded.
+     */
+    public BufferedImage getLoadingPreview() {
+        return loadingPreview;
+    }
+
+    /**
+     * <p>
+     * Get the size of the current image, without waiting for an image being decoded in the background.
+     * </p>
+     * 
+     * @return The width and height of the current image, or null if there is no image.
+     */
+    public Dimension getSize() {
+        // The loading size is read first, as it is only cleared once the current image is in place.
+        Dimension size = loadingSize;
+        if (size != null) {
+            return new Dimension(size);
         }
-        this.refresh();
+        BufferedImage image = current;
+        return image == null ? null : new Dimension(image.getWidth(), image.getHeight());
     }
 
     /**
@@ -191,21 +482,97 @@ class EditableImage {
      * the current operations to <code>some/path/to/image.png.ops</code>.
      * </p>
      * 
-     * @throws Exception If something goes wrong.
+     * <p>
+     * This returns straight away. What is saved is snapshotted on the background thread, queued
+     * behind the operations, undos and redos already requested, so they are all included. The files
+     * are then written by the {@link BackgroundWriter}, and each is replaced atomically. ANDIE never
+     * changes the original, so if the file it was read from has not changed since, it is not encoded
+     * again: only the operations are written when saving to the same file, and the file's bytes are
+     * copied when saving to another file in the same format.
+     * </p>
+     * 
+     * @return Completes with the {@link getVersion} of the image that was saved once everything has
+     *         been written, or exceptionally if something could not be.
      */
-    public void save() throws Exception {
+    public CompletableFuture<Long> save() {
         if (this.opsFilename == null) {
             this.opsFilename = this.imageFilename + ".ops";
         }
-        // Write image file based on file extension
-        String extension = imageFilename.substring(1+imageFilename.lastIndexOf(".")).toLowerCase();
-        ImageIO.write(original, extension, new File(imageFilename));
-        // Write operations file
-        FileOutputStream fileOut = new FileOutputStream(this.opsFilename);
-        ObjectOutputStream objOut = new ObjectOutputStream(fileOut);
-        objOut.writeObject(this.ops);
-        objOut.close();
-        fileOut.close();
+        String imageFilename = this.imageFilename;
+        String opsFilename = this.opsFilename;
+
+        CompletableFuture<Long> saved = new CompletableFuture<Long>();
+        executor.execute(() -> {
+            try {
+                saveInBackground(imageFilename, opsFilename).whenComplete((version, ex) -> {
+                    if (ex != null) {
+                        saved.completeExceptionally(ex);
+                    }
+                    else {
+                        saved.complete(version);
+                    }
+                });
+            }
+            catch (RuntimeException | OutOfMemoryError ex) {
+                saved.completeExceptionally(ex);
+            }
+        });
+        return saved;
+    }
+
+    /**
+     * <p>
+     * Snapshot what is to be saved on the background thread, and hand it to the {@link BackgroundWriter}.
+     * </p>
+     * 
+     * @param imageFilename The file to save the image to.
+     * @param opsFilename The file to save the operations to.
+     * @return Completes with the version of the image that was saved once everything has been written.
+     */
+    private CompletableFuture<Long> saveInBackground(String imageFilename, String opsFilename) {
+        BufferedImage image;
+        List<ImageOperation> opsToSave;
+        Path source;
+        boolean unchanged;
+        long savedVersion;
+        String renderKey;
+        BufferedImage render;
+        synchronized (this) {
+            if (original == null) {
+                return CompletableFuture.failedFuture(new IllegalStateException("No image to save"));
+            }
+            image = original;
+            opsToSave = new ArrayList<ImageOperation>(ops);
+            source = sourceFile;
+            unchanged = isSourceUnchanged();
+            savedVersion = version;
+
+            // Saving is usually the last thing done in a session, so the result is kept for when the image is next opened.
+            renderKey = checkpoints.getCost(ops.size()) >= RenderCache.MIN_STORE_NANOS ? getRenderKey() : null;
+            render = renderKey == null ? null : deepCopy(current);
+        }
+
+        Path target = Paths.get(imageFilename).toAbsolutePath();
+        Path opsTarget = Paths.get(opsFilename);
+        String extension = getExtension(imageFilename);
+        return BackgroundWriter.submit(() -> {
+            if (unchanged && target.equals(source)) {
+                // The file still holds the original, so only the operations need saving.
+            }
+            else if (unchanged && getExtension(source.toString()).equals(extension)) {
+                // Copying the bytes is quicker than encoding, and loses nothing for lossy formats.
+                BackgroundWriter.writeAtomically(target, out -> Files.copy(source, out));
+            }
+            else {
+                BackgroundWriter.writeImage(image, extension, target);
+            }
+            BackgroundWriter.writeAtomically(opsTarget, out -> OperationCodec.write(opsToSave, out));
+            recordSource(target, image);
+
+            if (renderKey != null) {
+                RenderCache.store(renderKey, render);
+            }
+        }).thenApply(done -> savedVersion);
     }
 
     /**
@@ -221,175 +588,1021 @@ class EditableImage {
      * </p>
      * 
      * @param imageFilename The file location to save the image to.
-     * @throws Exception If something goes wrong.
+     * @return Completes with the version of the image that was saved once everything has been
+     *         written, or exceptionally if something could not be.
      */
-    public void saveAs(String imageFilename) throws Exception {
+    public CompletableFuture<Long> saveAs(String imageFilename) {
         this.imageFilename = imageFilename;
         this.opsFilename = imageFilename + ".ops";
-        save();
+        return save();
     }
 
     /**
      * <p>
-     * Apply an {@link ImageOperation} to this image.
+     * Get a copy of the current image that nothing done to this image afterwards will change.
      * </p>
      * 
-     * @param op The operation to apply.
+     * <p>
+     * This lets the image be exported in the background while editing carries on.
+     * </p>
+     * 
+     * @return A copy of the current image, or null if there is no image.
      */
-    public void apply(ImageOperation op) {
-        if (current == null) {
-            JOptionPane.showMessageDialog(ImageAction.target, Andie.getText("noImageToEditWarningText"), Andie.getText("noImageLoadedWarningTitle"), JOptionPane.OK_OPTION);
+    public BufferedImage getSnapshot() {
+        BufferedImage image = getCurrentImage();
+        return image == null ? null : deepCopy(image);
+    }
+
+    /**
+     * <p>
+     * Remember the file that now holds the original, and its size and modification time.
+     * </p>
+     * 
+     * @param file The file, which holds an encoding of the original.
+     * @param image The original that was read from or written to the file. If another image has
+     *              been opened since, nothing is recorded.
+     */
+    private synchronized void recordSource(Path file, BufferedImage image) {
+        if (image != original) {
+            return;
         }
-        else {
-            current = op.apply(current);
-            ops.add(op);
-            Andie.frame.setTitle("ANDIE*");
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            sourceFile = file.toAbsolutePath();
+            sourceSize = attrs.size();
+            sourceModified = attrs.lastModifiedTime();
+        }
+        catch (IOException ex) {
+            sourceFile = null;
         }
     }
 
     /**
      * <p>
-     * Undo the last {@link ImageOperation} applied to the image.
+     * Check whether the file the original was read from or last written to is still as it was then.
      * </p>
+     * 
+     * @return True if the file has the same size and modification time as when it was recorded.
      */
-    public void undo() {
-        redoOps.push(ops.pop());
-        refresh();
+    private synchronized boolean isSourceUnchanged() {
+        if (sourceFile == null) {
+            return false;
+        }
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(sourceFile, BasicFileAttributes.class);
+            return attrs.size() == sourceSize && attrs.lastModifiedTime().equals(sourceModified);
+        }
+        catch (IOException ex) {
+            return false;
+        }
     }
 
     /**
      * <p>
-     * Reapply the most recently {@link undo}ne {@link ImageOperation} to the image.
+     * Get the extension of a file name, which decides the format images are written in.
      * </p>
+     * 
+     * @param filename The file name.
+     * @return The part of the name after the last dot, in lower case.
      */
-    public void redo()  {
-        apply(redoOps.pop());
+    private static String getExtension(String filename) {
+        return filename.substring(1 + filename.lastIndexOf(".")).toLowerCase();
     }
 
     /**
      * <p>
-     * Get the current image after the operations have been applied.
+     * Apply an {@link ImageOperation} to this image.
      * </p>
      * 
-     * @return The result of applying all of the current operations to the {@link original} image.
+     * <p>
+     * This waits for any operations being applied in the background to finish first, and then
+     * applies the operation on the calling thread. Any images kept for redo were computed from the
+     * image before this operation, so they are forgotten.
+     * </p>
+     * 
+     * @param op The operation to apply.
      */
-    public BufferedImage getCurrentImage() {
-        return current;
+    public void apply(ImageOperation op) {
+        awaitIdle();
+        redoResults.invalidate();
+        compute(op);
     }
 
     /**
      * <p>
-     * Reapply the current list of operations to the original.
+     * Apply an {@link ImageOperation} to this image in the background.
      * </p>
      * 
      * <p>
-     * While the latest version of the image is stored in {@link current}, this
-     * method makes a fresh copy of the original and applies the operations to it in sequence.
-     * This is useful when undoing changes to the image, or in any other case where {@link current}
-     * cannot be easily incrementally updated. 
+     * The operation is queued behind any others still being applied, and this returns straight away.
+     * The current image is left as it is until the result is ready, at which point the
+     * {@link OperationListener}s are told so that it can be redrawn.
      * </p>
+     * 
+     * @param op The operation to apply.
      */
-    private void refresh()  {
-        current = deepCopy(original);
-        
-        for (ImageOperation op: ops) {
-            current = op.apply(current);
+    public void applyAsync(ImageOperation op) {
+        if (!hasImage()) {
+            JOptionPane.showMessageDialog(ImageAction.target, Andie.getText("noImageToEditWarningText"), Andie.getText("noImageLoadedWarningTitle"), JOptionPane.OK_OPTION);
+            return;
+        }
+
+        int submitted;
+        synchronized (this) {
+            pending++;
+            cancellable++;
+            submitted = generation;
         }
+        firePendingChanged();
+        executor.execute(() -> applyInBackground(op, submitted));
     }
 
     /**
-     * Retrieve the filename of the image.
+     * <p>
+     * Apply a queued operation on the background thread, and push the result unless it has been cancelled.
+     * </p>
      * 
-     * @return A string representing the filename of the image.
+     * <p>
+     * An operation that fails, or runs out of memory, leaves the operation stack as it was,
+     * and the user is told in a dialog.
+     * </p>
+     * 
+     * @param op The operation to apply.
+     * @param submitted The {@link generation} when the operation was queued.
      */
-    public String getImageFilename() {
-        return imageFilename;
+    private void applyInBackground(ImageOperation op, int submitted) {
+        BufferedImage result = null;
+        long nanos = 0;
+        OperationContext context = new OperationContext();
+
+        try {
+            BufferedImage input = null;
+            synchronized (this) {
+                if (submitted == generation) {
+                    // The current image is on screen, so only operations that would change it need a copy.
+                    input = op.mutatesInput() ? deepCopy(current) : current;
+                    running = context;
+                    runningCancellable = true;
+                }
+            }
+
+            if (input != null) {
+                long start = System.nanoTime();
+                result = op.apply(input, context);
+                nanos = System.nanoTime() - start;
+            }
+        }
+        catch (CancellationException ex) {
+            result = null;
+        }
+        catch (RuntimeException | OutOfMemoryError ex) {
+            result = null;
+            warnLater("operationFailedWarningText", "operationFailedWarningTitle");
+        }
+        finally {
+            boolean applied = false;
+            synchronized (this) {
+                running = null;
+                if (result != null && submitted == generation && !context.isCancelled()) {
+                    redoResults.invalidate();
+                    push(op, result, nanos);
+                    applied = true;
+                }
+                pending--;
+                cancellable--;
+            }
+            fireFinished(applied);
+        }
     }
 
     /**
      * <p>
-     * Start recording macros by clearing actions list aand toggling isRecording to true.
+     * Tell the listeners, on the event dispatch thread, that a task in the background has finished.
      * </p>
+     * 
+     * @param changed Whether the task replaced the current image.
      */
-    public static void startRecording(){
-        actions.clear();
-        isRecording = true;
+    private void fireFinished(boolean changed) {
+        SwingUtilities.invokeLater(() -> {
+            if (changed) {
+                if (Andie.frame != null) {
+                    Andie.frame.setTitle("ANDIE*");
+                }
+                for (OperationListener listener: listeners) {
+                    listener.imageChanged();
+                }
+            }
+            firePendingChanged();
+        });
     }
 
     /**
      * <p>
-     * Stop recording macros by toggling isRecording to false.
+     * Show a warning from a background thread, unless there is no screen to show it on.
      * </p>
+     * 
+     * @param textKey The key of the warning's text in the resource bundle.
+     * @param titleKey The key of the warning's title in the resource bundle.
      */
-    public static void stopRecording(){
-        isRecording = false;
-        
+    private static void warnLater(String textKey, String titleKey) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(ImageAction.target, Andie.getText(textKey), Andie.getText(titleKey), JOptionPane.ERROR_MESSAGE));
+        }
     }
 
     /**
      * <p>
-     * Add an action to the actions list if the user is currently recording macros.
+     * Cancel every operation and redo queued or running in the background.
+     * </p>
+     * 
+     * <p>
+     * Cancelled operations are never pushed onto the operation stack. An operation that is
+     * already running stops at the next row its loops check, or, if it does not check, carries on
+     * until it finishes and has its result thrown away. Undos are not cancelled, so that pressing
+     * undo several times in a row undoes that many operations.
      * </p>
      * 
-     * @param action to be recorded
+     * @return True if there were any operations or redos to cancel.
      */
-    public void addAction(String action){
-        if(isRecording){
-            actions.add(action);
+    public boolean cancel() {
+        synchronized (this) {
+            if (cancellable == 0) {
+                return false;
+            }
+            generation++;
+            if (running != null && runningCancellable) {
+                running.cancel();
+            }
         }
+        return true;
     }
 
     /**
      * <p>
-     * Save a macro file with the user input name of the file. Automatically save it as a .ops file
-     * regardless of user input.
+     * Get how far through the operation running in the background is.
      * </p>
      * 
-     * @param saveFile to be saved
+     * @return The fraction of the operation done, in [0, 1], or -1 if it is not known or nothing is running.
      */
-    public void saveMacro(File saveFile){
-        if(actions.isEmpty()){
-            return;
+    public synchronized double getProgress() {
+        return running == null ? -1 : running.getProgress();
+    }
+
+    /**
+     * <p>
+     * Wait until every operation, undo and redo queued in the background has finished or been cancelled.
+     * </p>
+     */
+    public void awaitIdle() {
+        synchronized (this) {
+            if (pending == 0 && (loading == null || loading.isDone())) {
+                return;
+            }
         }
 
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(saveFile))){
-            oos.writeObject(actions);
-        } 
-        catch (IOException e){
-            JOptionPane.showMessageDialog(ImageAction.target, Andie.getText("macroSaveFailedText"), Andie.getText("macroSaveFailedTitle"), JOptionPane.ERROR_MESSAGE);
+        try {
+            executor.submit(() -> {}).get();
+        }
+        catch (InterruptedException | ExecutionException ex) {
+            Thread.currentThread().interrupt();
         }
     }
 
     /**
      * <p>
-     * Open a macro file and add the operations from the file to the current image.
+     * Get how many operations are queued or running in the background.
      * </p>
      * 
-     * @param filePath of the macro file to be opened
+     * @return The number of pending operations.
      */
-    public void openMacro(String filePath) throws IOException{
-        try {
-            FileInputStream fileIn = new FileInputStream(filePath);
-            ObjectInputStream objIn = new ObjectInputStream(fileIn);
-            @SuppressWarnings("unchecked")
-            Stack<ImageOperation> opsFromFile = (Stack<ImageOperation>) objIn.readObject();
-            Stack<ImageOperation> temp = new Stack<ImageOperation>();
+    synchronized int getPending() {
+        return pending;
+    }
 
-            while(!opsFromFile.isEmpty()){
-                temp.push(opsFromFile.pop());
-            }
+    /**
+     * <p>
+     * Register a listener to follow operations applied in the background.
+     * </p>
+     * 
+     * @param listener The listener to add.
+     */
+    public void addOperationListener(OperationListener listener) {
+        listeners.add(listener);
+    }
 
-            while(!temp.isEmpty()){
-                ops.push(temp.pop());
-            }
-           
-            objIn.close();
-            fileIn.close();
-        } 
-        catch (Exception ex) {
-            JOptionPane.showMessageDialog(ImageAction.target, Andie.getText("macroImportFailedText"), Andie.getText("macroImportFailedTitle"), JOptionPane.ERROR_MESSAGE);
+    /**
+     * <p>
+     * Tell the listeners how many operations are pending.
+     * </p>
+     */
+    private void firePendingChanged() {
+        int count;
+        synchronized (this) {
+            count = pending;
         }
-
-        this.refresh();
+        for (OperationListener listener: listeners) {
+            listener.operationsPending(count);
+        }
+    }
+
+    /**
+     * <p>
+     * Compute the result of an {@link ImageOperation} and push it onto the stack.
+     * </p>
+     * 
+     * @param op The operation to apply.
+     */
+    private void compute(ImageOperation op) {
+        if (current == null) {
+            JOptionPane.showMessageDialog(ImageAction.target, Andie.getText("noImageToEditWarningText"), Andie.getText("noImageLoadedWarningTitle"), JOptionPane.OK_OPTION);
+        }
+        else {
+            long start = System.nanoTime();
+            BufferedImage result = op.apply(current);
+            push(op, result, System.nanoTime() - start);
+            Andie.frame.setTitle("ANDIE*");
+        }
+    }
+
+    /**
+     * <p>
+     * Make the result of an operation the current image, and push the operation onto the stack.
+     * </p>
+     * 
+     * <p>
+     * A {@link FusedPointOperation} is never pushed itself. The operations it stands in for are
+     * pushed in its place, with only the last of them holding the result.
+     * </p>
+     * 
+     * @param op The operation that was applied.
+     * @param result The image after the operation.
+     * @param nanos How long the operation took, in nanoseconds.
+     */
+    private synchronized void push(ImageOperation op, BufferedImage result, long nanos) {
+        if (op instanceof FusedPointOperation) {
+            List<PointOperation> fused = ((FusedPointOperation) op).getOperations();
+            for (PointOperation part: fused.subList(0, fused.size() - 1)) {
+                ops.add(part);
+                record(part);
+                checkpoints.record(ops.size(), 0, null);
+            }
+            op = fused.get(fused.size() - 1);
+        }
+        current = result;
+        changed(op);
+        ops.add(op);
+        record(op);
+        checkpoints.record(ops.size(), nanos, current);
+    }
+
+    /**
+     * <p>
+     * Undo the last {@link ImageOperation} applied to the image.
+     * </p>
+     * 
+     * <p>
+     * If operations are still being applied in the background, they are cancelled instead,
+     * as they are the most recent changes. Otherwise the undo is queued in the background, behind
+     * any undos and redos still to run, and this returns straight away.
+     * </p>
+     * 
+     * <p>
+     * The image being replaced is kept in the {@link RedoCache}, so that redoing the operation is instant.
+     * </p>
+     */
+    public void undo() {
+        if (cancel()) {
+            return;
+        }
+
+        int token;
+        synchronized (this) {
+            pending++;
+            token = loads;
+        }
+        firePendingChanged();
+        executor.execute(() -> undoInBackground(token));
+    }
+
+    /**
+     * <p>
+     * Undo the last operation on the background thread, replaying the rest of the stack.
+     * </p>
+     * 
+     * <p>
+     * Nothing is changed if another image has been opened since the undo was queued. The user is
+     * told if there is nothing to undo, or if the replay fails, in which case the operation is
+     * left on the stack.
+     * </p>
+     * 
+     * @param token The value of {@link loads} when the undo was queued.
+     */
+    private void undoInBackground(int token) {
+        OperationContext context = new OperationContext();
+        ImageOperation op = null;
+        boolean undone = false;
+
+        try {
+            synchronized (this) {
+                if (token == loads && !ops.isEmpty()) {
+                    redoResults.push(current);
+                    op = ops.pop();
+                    redoOps.push(op);
+                    running = context;
+                    runningCancellable = false;
+                }
+            }
+
+            if (op == null) {
+                if (token == loads) {
+                    warnLater("noChangesToUndoWarningText", "noChangesToUndoWarningTitle");
+                }
+                return;
+            }
+
+            refresh(context);
+            undone = true;
+            synchronized (EditableImage.class) {
+                // An undone operation should not be part of the macro, unless it was applied before recording started.
+                if (isRecording && !recorded.isEmpty() && recorded.get(recorded.size() - 1) == op) {
+                    recorded.remove(recorded.size() - 1);
+                }
+            }
+        }
+        catch (RuntimeException | OutOfMemoryError ex) {
+            warnLater("operationFailedWarningText", "operationFailedWarningTitle");
+        }
+        finally {
+            synchronized (this) {
+                running = null;
+                if (op != null && !undone) {
+                    // The replay failed, so the current image still shows the operation.
+                    ops.push(redoOps.pop());
+                    redoResults.pop();
+                }
+                pending--;
+            }
+            fireFinished(undone);
+        }
+    }
+
+    /**
+     * <p>
+     * Reapply the most recently {@link undo}ne {@link ImageOperation} to the image.
+     * </p>
+     * 
+     * <p>
+     * The redo is queued in the background, behind the operations, undos and redos still to run,
+     * and this returns straight away. Like an operation, it is cancelled by {@link cancel}.
+     * </p>
+     * 
+     * <p>
+     * If the image from before the undo is still in the {@link RedoCache} it is reused,
+     * otherwise the operation is applied again.
+     * </p>
+     */
+    public void redo()  {
+        int submitted;
+        synchronized (this) {
+            pending++;
+            cancellable++;
+            submitted = generation;
+        }
+        firePendingChanged();
+        executor.execute(() -> redoInBackground(submitted));
+    }
+
+    /**
+     * <p>
+     * Redo the most recently undone operation on the background thread.
+     * </p>
+     * 
+     * <p>
+     * A redo that is cancelled, or whose operation fails, leaves the operation ready to be redone again.
+     * </p>
+     * 
+     * @param submitted The {@link generation} when the redo was queued.
+     */
+    private void redoInBackground(int submitted) {
+        OperationContext context = new OperationContext();
+        ImageOperation op = null;
+        BufferedImage result = null;
+        BufferedImage input = null;
+        long nanos = 0;
+        boolean redone = false;
+
+        try {
+            synchronized (this) {
+                if (submitted != generation) {
+                    return;
+                }
+                if (redoOps.isEmpty()) {
+                    warnLater("noChangesToRedoWarningText", "noChangesToRedoWarningTitle");
+                    return;
+                }
+
+                op = redoOps.pop();
+                result = redoResults.pop();
+                if (result != null) {
+                    current = result;
+                    changed(op);
+                    ops.add(op);
+                    record(op);
+                    checkpoints.record(ops.size(), 0, null);
+                    redone = true;
+                    return;
+                }
+                input = op.mutatesInput() ? deepCopy(current) : current;
+                running = context;
+                runningCancellable = true;
+            }
+
+            long start = System.nanoTime();
+            result = op.apply(input, context);
+            nanos = System.nanoTime() - start;
+        }
+        catch (CancellationException ex) {
+            result = null;
+        }
+        catch (RuntimeException | OutOfMemoryError ex) {
+            result = null;
+            warnLater("operationFailedWarningText", "operationFailedWarningTitle");
+        }
+        finally {
+            synchronized (this) {
+                if (!redone && op != null) {
+                    running = null;
+                    if (result != null && submitted == generation && !context.isCancelled()) {
+                        push(op, result, nanos);
+                        redone = true;
+                    }
+                    else {
+                        redoOps.push(op);
+                        redoResults.push(null);
+                    }
+                }
+                pending--;
+                cancellable--;
+            }
+            fireFinished(redone);
+        }
+    }
+
+    /**
+     * <p>
+     * Get the current image after the operations have been applied.
+     * </p>
+     * 
+     * <p>
+     * If the image is still being decoded in the background, this waits for it.
+     * </p>
+     * 
+     * @return The result of applying all of the current operations to the {@link original} image.
+     */
+    public BufferedImage getCurrentImage() {
+        awaitLoaded();
+        return current;
+    }
+
+    /**
+     * <p>
+     * Get the current image without waiting for an image being decoded in the background.
+     * </p>
+     * 
+     * <p>
+     * This is for the event dispatch thread, which should show the {@link getLoadingPreview} instead
+     * while the image is still being decoded.
+     * </p>
+     * 
+     * @return The current image, or null if there is none yet.
+     */
+    public BufferedImage getLoadedImage() {
+        return current;
+    }
+
+    /**
+     * <p>
+     * Get a number that changes whenever the current image does.
+     * </p>
+     * 
+     * <p>
+     * Operations may change the image in place, so this should be compared rather than the
+     * image returned by {@link getCurrentImage}, to tell whether anything derived from it is out of date.
+     * </p>
+     * 
+     * @return The version of the current image.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * <p>
+     * Get the part of the image that has changed since an earlier version.
+     * </p>
+     * 
+     * <p>
+     * Only the most recent change is remembered, and only if it was made by a {@link RegionOperation}.
+     * </p>
+     * 
+     * @param since The version to compare against, from {@link getVersion}.
+     * @return The bounds of the pixels that may have changed, clipped to the image,
+     *         or null if the whole image must be assumed to have changed.
+     */
+    public synchronized Rectangle getChangedRegion(long since) {
+        if (since == version) {
+            return new Rectangle();
+        }
+        if (since != version - 1 || changedRegion == null || current == null) {
+            return null;
+        }
+        return changedRegion.intersection(new Rectangle(current.getWidth(), current.getHeight()));
+    }
+
+    /**
+     * <p>
+     * Record that the current image has changed.
+     * </p>
+     * 
+     * @param op The operation that changed it, or null if the change is not from a single operation.
+     */
+    private synchronized void changed(ImageOperation op) {
+        changedRegion = op instanceof RegionOperation ? ((RegionOperation) op).getRegion() : null;
+        version++;
+        if (pyramid != null) {
+            updatePyramidLater();
+        }
+    }
+
+    /**
+     * <p>
+     * Get the pyramid of halved copies of the current image, for drawing it zoomed out.
+     * </p>
+     * 
+     * <p>
+     * This never waits, so it can be called while painting. The levels are built and kept up to
+     * date on a background thread, and the {@link OperationListener}s are told each time they
+     * are ready. Until then, the pyramid returned may be out of date, or be missing the level
+     * asked for; compare {@link getPyramidVersion} to {@link getVersion} to tell. If the last
+     * change only touched a region, the levels already built are updated in that region rather
+     * than built again.
+     * </p>
+     * 
+     * @param level The level that is about to be drawn, which is built if it is not there yet.
+     * @return The latest pyramid, or null if none has been built yet.
+     */
+    public ImagePyramid getPyramid(int level) {
+        pyramidLevel.accumulateAndGet(level, Math::max);
+        // The version is read first, as it is only increased once the pyramid is up to date.
+        long builtVersion = pyramidVersion;
+        ImagePyramid built = pyramid;
+        if (built == null || builtVersion != version || built.getBuiltLevel(level) == null) {
+            updatePyramidLater();
+        }
+        return built;
+    }
+
+    /**
+     * <p>
+     * Get the version of the image that the pyramid from {@link getPyramid} is up to date with.
+     * </p>
+     * 
+     * @return The {@link getVersion} of the image when the pyramid was last brought up to date.
+     */
+    public long getPyramidVersion() {
+        return pyramidVersion;
+    }
+
+    /**
+     * <p>
+     * Queue the pyramid to be brought up to date in the background, unless it already is queued.
+     * </p>
+     */
+    private void updatePyramidLater() {
+        if (pyramidQueued.compareAndSet(false, true)) {
+            pyramidExecutor.execute(this::updatePyramid);
+        }
+    }
+
+    /**
+     * <p>
+     * Bring the pyramid up to date with the current image, and build every level asked for.
+     * </p>
+     */
+    private void updatePyramid() {
+        // Cleared first, so that a change made while this runs queues another update.
+        pyramidQueued.set(false);
+        long sourceVersion;
+        BufferedImage source;
+        Rectangle region;
+        synchronized (this) {
+            sourceVersion = version;
+            source = current;
+            region = pyramid == null ? null : getChangedRegion(pyramidVersion);
+        }
+        if (source == null) {
+            return;
+        }
+
+        ImagePyramid built = pyramid;
+        if (built == null || (region == null && pyramidVersion != sourceVersion)) {
+            built = new ImagePyramid(source);
+        }
+        else if (region != null && !region.isEmpty()) {
+            built.update(source, region);
+        }
+        built.getLevel(pyramidLevel.get());
+
+        // The pyramid is set first, so that it is never taken to be up to date too early.
+        pyramid = built;
+        pyramidVersion = sourceVersion;
+        SwingUtilities.invokeLater(() -> {
+            for (OperationListener listener: listeners) {
+                listener.pyramidChanged();
+            }
+        });
+    }
+
+    /**
+     * <p>
+     * Get a shrunk copy of the current image, for previewing operations on.
+     * </p>
+     * 
+     * <p>
+     * The proxy is kept until the current image changes, so opening several dialogs in a row
+     * only shrinks the image once. The returned image must not be changed.
+     * </p>
+     * 
+     * <p>
+     * This waits for an image being decoded in the background, and can take a while for a large
+     * image, so it should not be called on the event dispatch thread. The image is shrunk without
+     * holding this image's lock, so painting is never held up by it.
+     * </p>
+     * 
+     * @param scale The size of the proxy relative to the current image, in (0, 1].
+     * @return The proxy, or null if there is no image.
+     */
+    public BufferedImage getProxy(double scale) {
+        awaitLoaded();
+        long sourceVersion;
+        BufferedImage source;
+        synchronized (this) {
+            // The version is read first, as it is increased after the image changes.
+            sourceVersion = version;
+            source = current;
+            if (source == null) {
+                return null;
+            }
+            if (proxy != null && proxyVersion == sourceVersion && proxyScale == scale) {
+                return proxy;
+            }
+        }
+
+        BufferedImage shrunk = OperationPreview.downsample(source, scale);
+        synchronized (this) {
+            if (version == sourceVersion) {
+                proxy = shrunk;
+                proxyVersion = sourceVersion;
+                proxyScale = scale;
+            }
+        }
+        return shrunk;
+    }
+
+    /**
+     * <p>
+     * Reapply the current list of operations to the original.
+     * </p>
+     * 
+     * <p>
+     * While the latest version of the image is stored in {@link current}, this
+     * method makes a fresh copy of the original and applies the operations to it in sequence.
+     * This is useful when undoing changes to the image, or in any other case where {@link current}
+     * cannot be easily incrementally updated. 
+     * </p>
+     * 
+     * <p>
+     * Replay starts from the deepest snapshot in the {@link CheckpointCache} that is still on the stack,
+     * rather than from the original, and new snapshots are taken along the way where they are worth it.
+     * Runs of consecutive per-pixel operations are fused by {@link FusedPointOperation#fuse}
+     * so that each run takes a single pass over the image. The {@link ops} stack itself is not changed.
+     * </p>
+     * 
+     * <p>
+     * If the {@link RenderCache} on disk holds the result of a longer prefix of the stack than any
+     * snapshot, such as from an earlier session, replay starts from that instead. If the replay
+     * still took long enough, its result is added to the cache.
+     * </p>
+     * 
+     * <p>
+     * The replay works on an image of its own, and only replaces {@link current} once it is done,
+     * so the previous image can be drawn in the meantime. It must run on the background thread,
+     * or with nothing queued there, as it reads the stacks that the queued tasks change.
+     * </p>
+     * 
+     * @param context The context to report the replay's progress to.
+     */
+    private void refresh(OperationContext context)  {
+        int depth = checkpoints.getNearest(ops.size());
+        List<String> keys = originalHash == null ? Collections.emptyList() : RenderCache.getKeys(originalHash, ops);
+        int cached = RenderCache.getNearest(keys, depth);
+        BufferedImage restored = cached > 0 ? RenderCache.load(keys.get(cached - 1)) : null;
+
+        BufferedImage image;
+        if (restored != null) {
+            image = restored;
+            depth = cached;
+            checkpoints.record(depth, 0, null);
+        }
+        else {
+            image = depth > 0 ? checkpoints.restore(depth) : deepCopy(original);
+        }
+
+        long replayed = 0;
+        for (ImageOperation op: FusedPointOperation.fuse(ops.subList(depth, ops.size()))) {
+            long start = System.nanoTime();
+            image = op.apply(image, context);
+            long nanos = System.nanoTime() - start;
+            replayed += nanos;
+
+            // A fused run has no result part way through, so its whole cost is put on its last operation.
+            if (op instanceof FusedPointOperation) {
+                for (int i = 1; i < ((FusedPointOperation) op).getOperationCount(); i++) {
+                    checkpoints.record(++depth, 0, null);
+                }
+            }
+            checkpoints.record(++depth, nanos, image);
+        }
+        synchronized (this) {
+            current = image;
+            changed(null);
+        }
+
+        if (replayed >= RenderCache.MIN_STORE_NANOS) {
+            storeRender();
+        }
+    }
+
+    /**
+     * <p>
+     * Add the current image to the {@link RenderCache}, under the key of the whole operation stack.
+     * </p>
+     * 
+     * <p>
+     * A copy of the image is written by the {@link BackgroundWriter}, so undoing and opening
+     * never wait for the disk.
+     * </p>
+     */
+    private void storeRender() {
+        String key = getRenderKey();
+        if (key != null) {
+            BufferedImage render = deepCopy(current);
+            BackgroundWriter.submit(() -> RenderCache.store(key, render));
+        }
+    }
+
+    /**
+     * <p>
+     * Get the key to store the current image under in the {@link RenderCache}.
+     * </p>
+     * 
+     * @return The key of the whole operation stack, or null if the image cannot be stored or already is.
+     */
+    private String getRenderKey() {
+        if (originalHash == null || ops.isEmpty() || !RenderCache.canStore(current)) {
+            return null;
+        }
+        List<String> keys = RenderCache.getKeys(originalHash, ops);
+        if (keys.size() == ops.size() && RenderCache.getNearest(keys, ops.size() - 1) == 0) {
+            return keys.get(keys.size() - 1);
+        }
+        return null;
+    }
+
+    /**
+     * Retrieve the filename of the image.
+     * 
+     * @return A string representing the filename of the image.
+     */
+    public String getImageFilename() {
+        return imageFilename;
+    }
+
+    /**
+     * <p>
+     * Start recording macros by clearing the recorded operations and toggling isRecording to true.
+     * </p>
+     */
+    public static synchronized void startRecording(){
+        recorded.clear();
+        isRecording = true;
+    }
+
+    /**
+     * <p>
+     * Stop recording macros by toggling isRecording to false.
+     * </p>
+     */
+    public static synchronized void stopRecording(){
+        isRecording = false;
+    }
+
+    /**
+     * <p>
+     * Add an operation to the recorded operations if the user is currently recording macros.
+     * </p>
+     * 
+     * @param op The operation that was applied.
+     */
+    private static synchronized void record(ImageOperation op){
+        if(isRecording){
+            recorded.add(op);
+        }
+    }
+
+    /**
+     * <p>
+     * Save the recorded operations as a macro file with the user input name of the file.
+     * Automatically save it as a .ops file regardless of user input.
+     * </p>
+     * 
+     * <p>
+     * Macros are written with {@link OperationCodec}, the same as an image's operations file.
+     * </p>
+     * 
+     * @param saveFile to be saved
+     */
+    public void saveMacro(File saveFile){
+        List<ImageOperation> macro;
+        synchronized (EditableImage.class) {
+            macro = new ArrayList<ImageOperation>(recorded);
+        }
+        if(macro.isEmpty()){
+            return;
+        }
+        if(!saveFile.getName().toLowerCase().endsWith(".ops")){
+            saveFile = new File(saveFile.getPath() + ".ops");
+        }
+
+        try {
+            BackgroundWriter.writeAtomically(saveFile.toPath(), out -> OperationCodec.write(macro, out));
+        } 
+        catch (IOException e){
+            JOptionPane.showMessageDialog(ImageAction.target, Andie.getText("macroSaveFailedText"), Andie.getText("macroSaveFailedTitle"), JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * <p>
+     * Open a macro file and add the operations from the file to the current image.
+     * </p>
+     * 
+     * <p>
+     * The operations are applied in the background as they are read, like any others passed to
+     * {@link applyAsync}, so a long macro is never held in memory all at once and can be cancelled.
+     * Runs of consecutive {@link PointOperation}s are queued as one {@link FusedPointOperation},
+     * but each original operation is still pushed onto the stack. If the file turns out to be
+     * damaged part way through, the operations read before the damage are still applied.
+     * </p>
+     * 
+     * @param filePath of the macro file to be opened
+     */
+    public void openMacro(String filePath) throws IOException{
+        if (!hasImage()) {
+            return;
+        }
+
+        List<ImageOperation> run = new ArrayList<ImageOperation>();
+        try (FileInputStream fileIn = new FileInputStream(filePath)) {
+            OperationCodec.read(fileIn, op -> {
+                if (!(op instanceof PointOperation)) {
+                    applyRun(run);
+                    applyAsync(op);
+                }
+                else {
+                    run.add(op);
+                }
+            });
+        } 
+        catch (Exception ex) {
+            JOptionPane.showMessageDialog(ImageAction.target, Andie.getText("macroImportFailedText"), Andie.getText("macroImportFailedTitle"), JOptionPane.ERROR_MESSAGE);
+        }
+        finally {
+            applyRun(run);
+        }
+    }
+
+    /**
+     * <p>
+     * Queue a run of point operations read from a macro, fused into one pass, and clear the run.
+     * </p>
+     * 
+     * @param run The point operations, in the order they are applied.
+     */
+    private void applyRun(List<ImageOperation> run) {
+        for (ImageOperation op: FusedPointOperation.fuse(run)) {
+            applyAsync(op);
+        }
+        run.clear();
     }
 }
\ No newline at end of file
@@ -2,9 +2,10 @@ package cosc202.andie;
 
 import javax.swing.*;
 import java.awt.event.*;
+import java.awt.image.*;
 import java.io.*;
+import java.nio.file.*;
 import java.util.*;
-import javax.imageio.*;
 
 /**
  * <p>
@@ -179,13 +180,15 @@ public class FileActions {
          * @param e The event triggering this callback.
          */
         public void actionPerformed(ActionEvent e) {
-            try {
-                target.getImage().save();
-                Andie.frame.setTitle("ANDIE");
-            } 
-            catch (Exception ex) {
-                JOptionPane.showMessageDialog(target, Andie.getText("noImageToSaveWarningText"), Andie.getText("noImageLoadedWarningTitle"), JOptionPane.ERROR_MESSAGE);
-            }
+            // The files are written in the background, so the title only changes if nothing has been edited since the version saved.
+            target.getImage().save().whenComplete((version, ex) -> SwingUtilities.invokeLater(() -> {
+                if (ex != null) {
+                    JOptionPane.showMessageDialog(target, Andie.getText("noImageToSaveWarningText"), Andie.getText("noImageLoadedWarningTitle"), JOptionPane.ERROR_MESSAGE);
+                }
+                else if (target.getImage().getVersion() == version) {
+                    Andie.frame.setTitle("ANDIE");
+                }
+            }));
         }
     }
 
@@ -231,7 +234,11 @@ public class FileActions {
             if (result == JFileChooser.APPROVE_OPTION) {
                 try {
                     String imageFilepath = fileChooser.getSelectedFile().getCanonicalPath();
-                    target.getImage().saveAs(imageFilepath);
+                    target.getImage().saveAs(imageFilepath).whenComplete((done, ex) -> {
+                        if (ex != null) {
+                            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(target, Andie.getText("noImageToSaveWarningText"), Andie.getText("noImageLoadedWarningTitle"), JOptionPane.OK_OPTION));
+                        }
+                    });
                 } 
                 catch (Exception ex) {
                     JOptionPane.showMessageDialog(target, Andie.getText("noImageToSaveWarningText"), Andie.getText("noImageLoadedWarningTitle"), JOptionPane.OK_OPTION);
@@ -323,6 +330,9 @@ public class FileActions {
                 JOptionPane.showMessageDialog(target, Andie.getText("noImagetoExportWarningText"), Andie.getText("noImageLoadedWarningTitle"), JOptionPane.OK_OPTION);
                 return;
             }
+            if (isLoading()) {
+                return;
+            }
             
             JFileChooser fileChooser = new JFileChooser();
             fileChooser.setDialogTitle(Andie.getText("fileExportText"));
@@ -337,12 +347,15 @@ public class FileActions {
                     newFilename += "." + extension;
                 }
 
-                try {
-                    ImageIO.write(target.getImage().getCurrentImage(), extension, new File(newFilename));
-                } 
-                catch (Exception ex) {
-                    JOptionPane.showMessageDialog(target, Andie.getText("imageExportFailedDescription"), Andie.getText("imageExportFailedText"), JOptionPane.OK_OPTION);
-                }
+                // The image is encoded in the background from a copy, so editing can carry on meanwhile.
+                BufferedImage snapshot = target.getImage().getSnapshot();
+                Path exportPath = Paths.get(newFilename);
+                String format = extension;
+                BackgroundWriter.submit(() -> BackgroundWriter.writeImage(snapshot, format, exportPath)).whenComplete((done, ex) -> {
+                    if (ex != null) {
+                        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(target, Andie.getText("imageExportFailedDescription"), Andie.getText("imageExportFailedText"), JOptionPane.OK_OPTION));
+                    }
+                });
             }
         }
     }
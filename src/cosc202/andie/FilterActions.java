@@ -2,6 +2,7 @@ package cosc202.andie;
 
 import java.awt.event.*;
 import java.util.*;
+import java.util.function.*;
 import javax.swing.*;
 
 /**
@@ -79,6 +80,39 @@ public class FilterActions {
         return filterMenu;
     }
 
+    /**
+     * <p>
+     * Ask the user for a filter radius, previewing the filter on the image as the radius changes.
+     * </p>
+     *
+     * <p>
+     * The preview is rendered on a shrunk copy of the image with the radius scaled to match,
+     * and the image itself is only filtered once the user presses OK.
+     * </p>
+     *
+     * @param radiusModel The model for the radius spinner, which holds the chosen radius afterwards.
+     * @param filter Creates the filter for a radius, in pixels of the image it is applied to.
+     * @return The option chosen in the dialog.
+     */
+    private static int showRadiusDialog(SpinnerNumberModel radiusModel, IntFunction<ImageOperation> filter) {
+        JSpinner radiusSpinner = new JSpinner(radiusModel);
+        radiusSpinner.setEditor(new JSpinner.DefaultEditor(radiusSpinner));
+
+        OperationPreview preview = new OperationPreview(ImageAction.target, scale -> {
+            int radius = OperationPreview.scaleRadius(radiusModel.getNumber().intValue(), scale);
+            return radius > 0 ? filter.apply(radius) : null;
+        });
+        radiusSpinner.addChangeListener(e -> preview.update());
+        preview.update();
+
+        try {
+            return JOptionPane.showOptionDialog(ImageAction.target, radiusSpinner, Andie.getText("filterRadiusPrompt"), JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE, null, null, null);
+        }
+        finally {
+            preview.close();
+        }
+    }
+
     /**
      * <p>
      * Action to blur an image with a mean filter.
@@ -120,12 +154,11 @@ public class FilterActions {
             int radius = 1;
 
             /**  
-             * Pop-up dialog box to ask for the radius value (capped at 6).
+             * Pop-up dialog box to ask for the radius value (capped at 200).
+             * The mean is kept as running sums that slide across the image, so larger radii cost no more.
              */
-            SpinnerNumberModel radiusModel = new SpinnerNumberModel(1, 1, 6, 1);
-            JSpinner radiusSpinner = new JSpinner(radiusModel);
-            radiusSpinner.setEditor(new JSpinner.DefaultEditor(radiusSpinner));
-            int option = JOptionPane.showOptionDialog(target, radiusSpinner, Andie.getText("filterRadiusPrompt"), JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE, null, null, null);
+            SpinnerNumberModel radiusModel = new SpinnerNumberModel(1, 1, MeanFilter.MAX_RADIUS, 1);
+            int option = showRadiusDialog(radiusModel, previewRadius -> new MeanFilter(previewRadius));
 
             // Check the return value from the dialog box.
             if (option == JOptionPane.CANCEL_OPTION) {
@@ -135,7 +168,7 @@ public class FilterActions {
                 radius = radiusModel.getNumber().intValue();
 
                 // Create and apply the filter
-                target.getImage().apply(new MeanFilter(radius));
+                target.getImage().applyAsync(new MeanFilter(radius));
                 target.repaint();
                 target.getParent().revalidate();
             }
@@ -183,13 +216,11 @@ public class FilterActions {
             int radius = 1;
 
             /** 
-             * Pop-up dialog box to ask for the radius value.
-             * Capped at 6 as the application starts to get slow down/crash for higher values.
+             * Pop-up dialog box to ask for the radius value (capped at 30).
+             * The sliding histogram median only costs linearly more for larger radii.
              */
-            SpinnerNumberModel radiusModel = new SpinnerNumberModel(1, 1, 6, 1);
-            JSpinner radiusSpinner = new JSpinner(radiusModel);
-            radiusSpinner.setEditor(new JSpinner.DefaultEditor(radiusSpinner));
-            int option = JOptionPane.showOptionDialog(target, radiusSpinner, Andie.getText("filterRadiusPrompt"), JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE, null, null, 1);
+            SpinnerNumberModel radiusModel = new SpinnerNumberModel(1, 1, MedianFilter.MAX_RADIUS, 1);
+            int option = showRadiusDialog(radiusModel, previewRadius -> new MedianFilter(previewRadius));
 
             // Check the return value from the dialog box.
             if (option == JOptionPane.CANCEL_OPTION) {
@@ -199,7 +230,7 @@ public class FilterActions {
                 radius = radiusModel.getNumber().intValue();
                 
                 // Create and apply the filter.
-                target.getImage().apply(new MedianFilter(radius));
+                target.getImage().applyAsync(new MedianFilter(radius));
                 target.repaint();
                 target.getParent().revalidate();
             }    
@@ -243,7 +274,7 @@ public class FilterActions {
          */
         public void actionPerformed(ActionEvent e) {
             // Create and apply the filter.
-            target.getImage().apply(new SharpenFilter());
+            target.getImage().applyAsync(new SharpenFilter());
             target.repaint();
             target.getParent().revalidate();
         }
@@ -289,11 +320,9 @@ public class FilterActions {
             // Determine the radius - ask the user.
             int radius = 1;
 
-            // Pop-up dialog box to ask for the radius value (capped at 6).
-            SpinnerNumberModel radiusModel = new SpinnerNumberModel(1, 1, 6, 1);
-            JSpinner radiusSpinner = new JSpinner(radiusModel);
-            radiusSpinner.setEditor(new JSpinner.DefaultEditor(radiusSpinner));
-            int option = JOptionPane.showOptionDialog(target, radiusSpinner, Andie.getText("filterRadiusPrompt"), JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE, null, null, null);
+            // Pop-up dialog box to ask for the radius value (capped at 200; large radii are applied recursively).
+            SpinnerNumberModel radiusModel = new SpinnerNumberModel(1, 1, GaussianFilter.MAX_RADIUS, 1);
+            int option = showRadiusDialog(radiusModel, previewRadius -> new GaussianFilter(previewRadius));
 
             // Check the return value from the dialog box.
             if (option == JOptionPane.CANCEL_OPTION) {
@@ -303,7 +332,7 @@ public class FilterActions {
                 radius = radiusModel.getNumber().intValue();
 
                 // Create and apply the filter.
-                target.getImage().apply(new GaussianFilter(radius));
+                target.getImage().applyAsync(new GaussianFilter(radius));
                 target.repaint();
                 target.getParent().revalidate();
             }
@@ -354,8 +383,8 @@ public class FilterActions {
             }
 
             try {
-                if (blockHeight > 0 && blockHeight < 201 && blockWidth > 0 && blockWidth < 201) {
-                    target.getImage().apply(new BlockAveraging(blockHeight, blockWidth));
+                if (blockHeight > 0 && blockHeight <= BlockAveraging.MAX_BLOCK_SIZE && blockWidth > 0 && blockWidth <= BlockAveraging.MAX_BLOCK_SIZE) {
+                    target.getImage().applyAsync(new BlockAveraging(blockHeight, blockWidth));
                     target.repaint();
                     target.getParent().revalidate();
                 }
@@ -419,28 +448,28 @@ public class FilterActions {
 
             if (selectedOption != null) {
                 if (selectedOption.equals(options[0])) {
-                    target.getImage().apply(new NorthEmbossFilter());
+                    target.getImage().applyAsync(new NorthEmbossFilter());
                 }
                 else if (selectedOption.equals(options[1])) {
-                    target.getImage().apply(new NorthEastEmbossFilter());
+                    target.getImage().applyAsync(new NorthEastEmbossFilter());
                 }
                 else if (selectedOption.equals(options[2])) {
-                    target.getImage().apply(new EastEmbossFilter());
+                    target.getImage().applyAsync(new EastEmbossFilter());
                 } 
                 else if (selectedOption.equals(options[3])) {
-                    target.getImage().apply(new SoutheastEmbossFilter());
+                    target.getImage().applyAsync(new SoutheastEmbossFilter());
                 }
                 else if (selectedOption.equals(options[4])) {
-                    target.getImage().apply(new SouthEmbossFilter());
+                    target.getImage().applyAsync(new SouthEmbossFilter());
                 }
                 else if (selectedOption.equals(options[5])) {
-                    target.getImage().apply(new SouthwestEmbossFilter());
+                    target.getImage().applyAsync(new SouthwestEmbossFilter());
                 }
                 else if (selectedOption.equals(options[6])) {
-                    target.getImage().apply(new WestEmbossFilter());
+                    target.getImage().applyAsync(new WestEmbossFilter());
                 }
                 else if (selectedOption.equals(options[7])) {
-                    target.getImage().apply(new NorthwestEmbossFilter());
+                    target.getImage().applyAsync(new NorthwestEmbossFilter());
                 }                    
                 
                 target.repaint();
@@ -491,10 +520,10 @@ public class FilterActions {
 
             if (selectedOption != null) {
                 if (selectedOption.equals(options[0])) {
-                    target.getImage().apply(new HorizontalSobelFilter());
+                    target.getImage().applyAsync(new HorizontalSobelFilter());
                 }
                 else if (selectedOption.equals(options[1])) {
-                    target.getImage().apply(new VerticalSobelFilter());
+                    target.getImage().applyAsync(new VerticalSobelFilter());
                 }
 
                 target.repaint();
@@ -538,8 +567,8 @@ public class FilterActions {
             }
             
             try {
-                if (radius > 0 && radius < 101) {
-                    target.getImage().apply(new RandomScattering(radius));
+                if (radius > 0 && radius <= RandomScattering.MAX_RADIUS) {
+                    target.getImage().applyAsync(new RandomScattering(radius));
                     target.repaint();
                     target.getParent().revalidate();
                 }
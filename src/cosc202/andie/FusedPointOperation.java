@@ -0,0 +1,130 @@
+package cosc202.andie;
+
+import java.util.*;
+
+/**
+ * <p>
+ * A run of consecutive {@link PointOperation}s applied in a single pass over the image.
+ * </p>
+ *
+ * <p>
+ * The lookups of the operations are combined with {@link ColourLookup#then} into one lookup,
+ * so a stack of greyscale, brightness/contrast, invert and channel cycling reads and writes
+ * each pixel once rather than once per operation, with exactly the same result.
+ * </p>
+ *
+ * <p>
+ * A FusedPointOperation is only ever built when operations are replayed, by {@link fuse}.
+ * It is never put on an {@link EditableImage}'s operation stack, so it is not serializable
+ * and saved operation files always hold the original operations.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ * @version 1.0
+ */
+public class FusedPointOperation extends PointOperation {
+
+    /** The operations being fused, in the order they are applied. */
+    private final List<PointOperation> ops;
+
+    /**
+     * <p>
+     * Create an operation applying the given point operations in one pass.
+     * </p>
+     *
+     * @param ops The operations to fuse, in the order they are applied.
+     */
+    public FusedPointOperation(List<PointOperation> ops) {
+        this.ops = new ArrayList<PointOperation>(ops);
+    }
+
+    /**
+     * <p>
+     * Get the number of operations fused together.
+     * </p>
+     *
+     * @return The number of operations this one stands in for.
+     */
+    public int getOperationCount() {
+        return ops.size();
+    }
+
+    /**
+     * <p>
+     * Get the operations fused together.
+     * </p>
+     *
+     * @return The operations, in the order they are applied.
+     */
+    List<PointOperation> getOperations() {
+        return Collections.unmodifiableList(ops);
+    }
+
+    /**
+     * <p>
+     * Combine the lookups of every fused operation.
+     * </p>
+     *
+     * @return A lookup equivalent to applying each operation in turn.
+     */
+    protected ColourLookup compile() {
+        ColourLookup lookup = ops.get(0).getLookup();
+        for (int i = 1; i < ops.size(); i++) {
+            lookup = lookup.then(ops.get(i).getLookup());
+        }
+        return lookup;
+    }
+
+    /**
+     * <p>
+     * Replace each run of two or more consecutive point operations with a single fused operation.
+     * </p>
+     *
+     * <p>
+     * The given list is not changed. Applying the returned operations in order gives exactly the
+     * same image as applying the original operations in order.
+     * </p>
+     *
+     * @param ops The operations to optimise.
+     * @return The operations to apply instead.
+     */
+    public static List<ImageOperation> fuse(List<ImageOperation> ops) {
+        List<ImageOperation> fused = new ArrayList<ImageOperation>();
+        List<PointOperation> run = new ArrayList<PointOperation>();
+
+        for (ImageOperation op: ops) {
+            if (op instanceof PointOperation) {
+                run.add((PointOperation) op);
+            }
+            else {
+                addRun(fused, run);
+                fused.add(op);
+            }
+        }
+        addRun(fused, run);
+
+        return fused;
+    }
+
+    /**
+     * <p>
+     * Add a run of point operations to a list, fused if there is more than one, and clear the run.
+     * </p>
+     *
+     * @param fused The list to add to.
+     * @param run The run of point operations.
+     */
+    private static void addRun(List<ImageOperation> fused, List<PointOperation> run) {
+        if (run.size() == 1) {
+            fused.add(run.get(0));
+        }
+        else if (run.size() > 1) {
+            fused.add(new FusedPointOperation(run));
+        }
+        run.clear();
+    }
+}
@@ -13,6 +13,19 @@ import java.awt.image.*;
  * </p>
  *
  * <p>
+ * Radii up to the filter's recursive threshold are applied by convolving with a Gaussian kernel.
+ * Larger radii use a {@link RecursiveGaussian}, whose cost per pixel does not grow with the
+ * radius, at the price of a small difference from the exact kernel (see {@link RecursiveGaussian}
+ * for the bound on that difference).
+ * </p>
+ *
+ * <p>
+ * The threshold for new filters is a setting, kept in the user's preferences under
+ * {@link THRESHOLD_PREFERENCE}. Each filter saves the threshold it was made with alongside its
+ * radius, so a saved operation stack renders the same way whatever the setting is later changed to.
+ * </p>
+ *
+ * <p>
  * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
  * </p>
  *
@@ -21,13 +34,47 @@ import java.awt.image.*;
  * @version 1.0
  */
 public class GaussianFilter implements ImageOperation, java.io.Serializable {
-    
+
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = -2231664300427344574L;
+
+    /** The largest radius that can be chosen, or read from a file. */
+    public static final int MAX_RADIUS = 200;
+
+    /**
+     * The recursive threshold used when none has been set, and when reading filters saved
+     * before the threshold was part of their parameters.
+     */
+    public static final int DEFAULT_RECURSIVE_THRESHOLD = 30;
+
+    /** The preference key holding the recursive threshold for new filters. */
+    public static final String THRESHOLD_PREFERENCE = "gaussianRecursiveThreshold";
+
+    /** The recursive threshold given to new filters. */
+    private static volatile int defaultThreshold = DEFAULT_RECURSIVE_THRESHOLD;
+
     /**
      * The size of filter to apply. A radius of 1 is a 3x3 filter, a radius of 2
      * a 5x5 filter, and so forth.
      */
     private int radius;
 
+    /** The largest radius that is applied with a convolution kernel rather than recursively. */
+    private int recursiveThreshold;
+
+    /**
+     * <p>
+     * Construct a Gaussian filter with the given size and recursive threshold.
+     * </p>
+     *
+     * @param radius The radius of the newly constructed GaussianFilter
+     * @param recursiveThreshold The largest radius applied with a convolution kernel.
+     */
+    GaussianFilter(int radius, int recursiveThreshold) {
+        this.radius = radius;
+        this.recursiveThreshold = recursiveThreshold;
+    }
+
     /**
      * <p>
      * Construct a Gaussian filter with the given size.
@@ -37,12 +84,13 @@ public class GaussianFilter implements ImageOperation, java.io.Serializable {
      * The size of the filter is the 'radius' of the convolution kernel used.
      * A size of 1 is a 3x3 filter, 2 is 5x5, and so on.
      * Larger filters give a stronger blurring effect.
+     * The filter uses the current {@link getDefaultRecursiveThreshold}.
      * </p>
      *
      * @param radius The radius of the newly constructed GaussianFilter
      */
     GaussianFilter(int radius) {
-        this.radius = radius;
+        this(radius, defaultThreshold);
     }
 
     /**
@@ -60,6 +108,76 @@ public class GaussianFilter implements ImageOperation, java.io.Serializable {
         this(1);
     }
 
+    /**
+     * <p>
+     * Create a Gaussian filter from the parameters saved by {@link writeParameters}.
+     * Filters saved without a threshold use {@link DEFAULT_RECURSIVE_THRESHOLD}, as they did when saved.
+     * </p>
+     *
+     * @param params The saved parameters.
+     */
+    GaussianFilter(OperationParameters params) {
+        this(params.getInt(1, 1, 0, MAX_RADIUS), params.getInt(2, DEFAULT_RECURSIVE_THRESHOLD, 0, MAX_RADIUS));
+    }
+
+    /**
+     * <p>
+     * Read a filter saved with Java serialization.
+     * </p>
+     *
+     * <p>
+     * Filters serialized before the threshold was a field use {@link DEFAULT_RECURSIVE_THRESHOLD},
+     * rather than a threshold of 0 that would apply every radius recursively.
+     * </p>
+     *
+     * @param in The stream to read from.
+     * @throws java.io.IOException If the stream cannot be read.
+     * @throws ClassNotFoundException If a class in the stream cannot be found.
+     */
+    private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
+        java.io.ObjectInputStream.GetField fields = in.readFields();
+        radius = fields.get("radius", 1);
+        recursiveThreshold = fields.get("recursiveThreshold", DEFAULT_RECURSIVE_THRESHOLD);
+    }
+
+    /**
+     * <p>
+     * Get the recursive threshold given to new filters.
+     * </p>
+     *
+     * @return The largest radius new filters apply with a convolution kernel.
+     */
+    public static int getDefaultRecursiveThreshold() {
+        return defaultThreshold;
+    }
+
+    /**
+     * <p>
+     * Set the recursive threshold given to new filters.
+     * </p>
+     *
+     * <p>
+     * Filters already made, including those in open images and saved files, keep their own threshold.
+     * Values outside 0 to {@link MAX_RADIUS} are clamped to that range.
+     * </p>
+     *
+     * @param threshold The largest radius new filters should apply with a convolution kernel.
+     */
+    public static void setDefaultRecursiveThreshold(int threshold) {
+        defaultThreshold = Math.max(0, Math.min(MAX_RADIUS, threshold));
+    }
+
+    /**
+     * <p>
+     * Get the largest radius this filter applies with a convolution kernel.
+     * </p>
+     *
+     * @return The recursive threshold of this filter.
+     */
+    int getRecursiveThreshold() {
+        return recursiveThreshold;
+    }
+
     /**
      * <p>
      * Apply a Gaussian filter to an image.
@@ -68,13 +186,29 @@ public class GaussianFilter implements ImageOperation, java.io.Serializable {
      * <p>
      * As with many filters, the Gaussian filter is implemented via convolution.
      * The size of the convolution kernel is specified by the {@link radius}.
-     * Larger radii lead to stronger blurring.
+     * Larger radii lead to stronger blurring. Radii above the filter's recursive threshold
+     * are applied recursively instead, in time independent of the radius.
      * </p>
      *
      * @param input The image to apply the Gaussian filter to.
      * @return The resulting (blurred) image.
      */
     public BufferedImage apply(BufferedImage input) {
+        if (radius > recursiveThreshold) {
+            return applyRecursive(input);
+        }
+        return applyKernel(input);
+    }
+
+    /**
+     * <p>
+     * Apply the filter by convolving with a Gaussian kernel, whatever the radius.
+     * </p>
+     *
+     * @param input The image to apply the Gaussian filter to.
+     * @return The resulting (blurred) image.
+     */
+    BufferedImage applyKernel(BufferedImage input) {
         int size = (2*radius+1);
         float[] array = new float[size * size];
         float sigma = radius / 3.0f;
@@ -100,4 +234,42 @@ public class GaussianFilter implements ImageOperation, java.io.Serializable {
         ConvolutionOperation convOp = new ConvolutionOperation(kernel);
         return convOp.apply(input, false, -1);
     }
-}
\ No newline at end of file
+
+    /**
+     * <p>
+     * Apply the filter with a {@link RecursiveGaussian}, whatever the radius.
+     * </p>
+     *
+     * @param input The image to apply the Gaussian filter to.
+     * @return The resulting (blurred) image.
+     */
+    BufferedImage applyRecursive(BufferedImage input) {
+        int width = input.getWidth();
+        int height = input.getHeight();
+        int[] argb = new RecursiveGaussian(radius / 3.0).apply(PackedPixels.read(input), width, height);
+        return PackedPixels.create(input, argb, width, height);
+    }
+
+    /**
+     * <p>
+     * Check whether the filter changes the image it is applied to.
+     * </p>
+     *
+     * @return False, as the result is written to a new pixel array.
+     */
+    public boolean mutatesInput() {
+        return false;
+    }
+
+    /**
+     * <p>
+     * Add the radius and recursive threshold to the parameters saved for this operation.
+     * </p>
+     *
+     * @param params The parameters to add to.
+     */
+    public void writeParameters(OperationParameters params) {
+        params.putInt(1, radius);
+        params.putInt(2, recursiveThreshold);
+    }
+}
@@ -16,6 +16,9 @@ import java.awt.image.*;
  */
 public class HorizontalFlip implements ImageOperation, java.io.Serializable {
 
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = -5443253385985420895L;
+
     /**
      * <p>
      * Flip the image horizontally. This means that everything in the left half 
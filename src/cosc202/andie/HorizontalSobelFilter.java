@@ -19,6 +19,9 @@ import java.awt.image.*;
  * @version 1.0
  */
 public class HorizontalSobelFilter implements ImageOperation, java.io.Serializable {
+
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = 7252374292477866478L;
     
     /**
      * <p>
@@ -43,4 +46,15 @@ public class HorizontalSobelFilter implements ImageOperation, java.io.Serializab
         ConvolutionOperation convOp = new ConvolutionOperation(kernel);
         return convOp.apply(input, true, 2);
     }
-}
\ No newline at end of file
+
+    /**
+     * <p>
+     * Check whether the filter changes the image it is applied to.
+     * </p>
+     *
+     * @return False, as the kernel is convolved into a new image.
+     */
+    public boolean mutatesInput() {
+        return false;
+    }
+}
@@ -84,4 +84,24 @@ public abstract class ImageAction extends AbstractAction {
     public static ImagePanel getTarget() {
         return target;
     }
+
+    /**
+     * <p>
+     * Check whether the target's image is still being decoded in the background, telling the user if so.
+     * </p>
+     * 
+     * <p>
+     * Actions that need the full image, rather than queueing an operation, call this first so that
+     * they never wait for the decode on the event dispatch thread.
+     * </p>
+     * 
+     * @return True if the image is still loading, so the action should not go ahead.
+     */
+    protected static boolean isLoading() {
+        if (target.getImage().getLoadingPreview() == null) {
+            return false;
+        }
+        JOptionPane.showMessageDialog(target, Andie.getText("imageLoadingWarningText"), Andie.getText("imageLoadingWarningTitle"), JOptionPane.INFORMATION_MESSAGE);
+        return true;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,166 @@
+package cosc202.andie;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+import javax.imageio.*;
+import javax.imageio.stream.*;
+
+/**
+ * <p>
+ * Decodes image files, optionally at a reduced size or only in part.
+ * </p>
+ *
+ * <p>
+ * {@link ImageIO#read} always decodes every pixel of a file at full size. These methods go
+ * through an {@link ImageReader} instead, with an {@link ImageReadParam} that sets source
+ * subsampling, which keeps only every <i>n</i>th pixel of every <i>n</i>th row, and a source region,
+ * which keeps only the pixels inside a rectangle. The pixels that are skipped are never converted
+ * or stored, so a subsampled or partial decode takes a fraction of the memory of a full one and
+ * less time. The size of an image can also be read from the file's header without decoding it.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ * @version 1.0
+ */
+public class ImageDecoder {
+
+    /**
+     * <p>
+     * ImageDecoder only provides static methods, so it should not be constructed.
+     * </p>
+     */
+    private ImageDecoder() {}
+
+    /**
+     * <p>
+     * Read the size of an image from its file, without decoding its pixels.
+     * </p>
+     *
+     * @param file The image file.
+     * @return The width and height of the image.
+     * @throws IOException If the file cannot be read or is not in a supported format.
+     */
+    public static Dimension getSize(File file) throws IOException {
+        try (ImageInputStream in = open(file)) {
+            ImageReader reader = getReader(in);
+            try {
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            }
+            finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Decode a whole image at full size, as {@link ImageIO#read} would.
+     * </p>
+     *
+     * @param file The image file.
+     * @return The image.
+     * @throws IOException If the file cannot be read or is not in a supported format.
+     */
+    public static BufferedImage read(File file) throws IOException {
+        return read(file, 1, null);
+    }
+
+    /**
+     * <p>
+     * Decode part of an image, at a reduced size.
+     * </p>
+     *
+     * <p>
+     * The image returned has pixel (<i>x</i>, <i>y</i>) equal to pixel
+     * (<i>region.x</i> + <i>x</i> * <i>subsampling</i>, <i>region.y</i> + <i>y</i> * <i>subsampling</i>)
+     * of the full image, so its size is that of the region divided by the subsampling, rounded up.
+     * </p>
+     *
+     * @param file The image file.
+     * @param subsampling Keep one pixel in this many across and down. 1 decodes at full size.
+     * @param region The part of the image to decode, or null for all of it.
+     * @return The decoded pixels, or null if the region does not lie wholly within the image.
+     * @throws IOException If the file cannot be read or is not in a supported format.
+     */
+    public static BufferedImage read(File file, int subsampling, Rectangle region) throws IOException {
+        try (ImageInputStream in = open(file)) {
+            ImageReader reader = getReader(in);
+            try {
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (region != null) {
+                    Rectangle bounds = new Rectangle(reader.getWidth(0), reader.getHeight(0));
+                    if (region.isEmpty() || !bounds.contains(region)) {
+                        return null;
+                    }
+                    param.setSourceRegion(region);
+                }
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            }
+            finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Choose how much to subsample an image so that it fits within a size.
+     * </p>
+     *
+     * @param size The full size of the image.
+     * @param maxSide The most pixels wanted across or down.
+     * @return The smallest subsampling that brings both sides of the image down to {@code maxSide} or less.
+     */
+    public static int chooseSubsampling(Dimension size, int maxSide) {
+        int longest = Math.max(size.width, size.height);
+        return Math.max(1, (longest + maxSide - 1) / maxSide);
+    }
+
+    /**
+     * <p>
+     * Open an image file for reading.
+     * </p>
+     *
+     * @param file The image file.
+     * @return A stream over the file.
+     * @throws IOException If the file cannot be opened.
+     */
+    private static ImageInputStream open(File file) throws IOException {
+        if (!file.canRead()) {
+            throw new FileNotFoundException(file.getPath());
+        }
+        ImageInputStream in = ImageIO.createImageInputStream(file);
+        if (in == null) {
+            throw new IOException("Cannot open " + file);
+        }
+        return in;
+    }
+
+    /**
+     * <p>
+     * Find a reader for an image stream, and point it at the stream.
+     * </p>
+     *
+     * @param in The image stream.
+     * @return A reader for the stream, which the caller must dispose of.
+     * @throws IOException If no reader supports the stream's format.
+     */
+    private static ImageReader getReader(ImageInputStream in) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (!readers.hasNext()) {
+            throw new IOException("Not a supported image format");
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(in, true, true);
+        return reader;
+    }
+}
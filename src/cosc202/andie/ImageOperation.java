@@ -20,6 +20,23 @@ import java.awt.image.*;
  * </p>
  * 
  * <p>
+ * Operations that need to run quickly on large images can implement {@link BandedOperation},
+ * which lets the {@link TileScheduler} compute them on several cores.
+ * </p>
+ * 
+ * <p>
+ * Operations can be applied with an {@link OperationContext}, through which they can be cancelled
+ * part way through and report how many rows they have computed so far.
+ * </p>
+ * 
+ * <p>
+ * Operations are saved to <code>.ops</code> files by the {@link OperationCodec}, as an opcode and
+ * the parameters written by {@link writeParameters}. Files saved by older versions of ANDIE used Java
+ * serialization, so every operation class also declares the {@code serialVersionUID} Java computed for
+ * it before it was first changed, so that those files still load.
+ * </p>
+ * 
+ * <p>
  * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
  * </p>
  * 
@@ -33,10 +50,59 @@ public interface ImageOperation {
      * 
      * ImageOperations may be either done in-place (that is, modifying the input image), or 
      * create a new BufferedImage to store the result.
-     * This decision is left to the implementer of specific operations.
+     * This decision is left to the implementer of specific operations, and is reported by {@link mutatesInput}.
      * 
      * @param input The image to apply the operation to
      * @return The image resulting from the operation
      */
     public BufferedImage apply(BufferedImage input);    
-}
\ No newline at end of file
+
+    /**
+     * Apply the operation to an image, so that it can be cancelled and its progress followed.
+     * 
+     * The context is made current with {@link OperationContext#current} while the operation runs.
+     * Operations whose loops check it stop part way through when it is cancelled, and the input
+     * image should then be treated as lost, as in-place operations may have partly changed it.
+     * 
+     * @param input The image to apply the operation to
+     * @param context The context to report progress to and check for cancellation
+     * @return The image resulting from the operation
+     * @throws java.util.concurrent.CancellationException If the context was cancelled before the operation finished
+     */
+    public default BufferedImage apply(BufferedImage input, OperationContext context) {
+        OperationContext previous = OperationContext.enter(context);
+        try {
+            context.checkCancelled();
+            return apply(input);
+        }
+        finally {
+            OperationContext.exit(previous);
+        }
+    }
+
+    /**
+     * Check whether the operation changes the image it is given.
+     * 
+     * Operations that work in place must return true, so that callers copy the image first
+     * wherever it is still in use, such as while it is on screen. Operations that only read their
+     * input and return a new image can return false, and are then given the image itself,
+     * saving a copy of every pixel. The default of true is always safe.
+     * 
+     * @return True if {@link apply} may change its input image
+     */
+    public default boolean mutatesInput() {
+        return true;
+    }
+
+    /**
+     * Add the operation's settings to the parameters saved for it in an <code>.ops</code> file.
+     * 
+     * Operations with settings override this, and have a constructor taking the same
+     * {@link OperationParameters} back. Operations without settings have nothing to add.
+     * 
+     * @param params The parameters to add to
+     * @see OperationCodec
+     */
+    public default void writeParameters(OperationParameters params) {
+    }
+}
@@ -2,6 +2,7 @@ package cosc202.andie;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.*;
 import javax.swing.*;
 
 /**
@@ -14,6 +15,12 @@ import javax.swing.*;
  * in and out. 
  * </p>
  * 
+ * <p>
+ * The image is drawn from a copy already scaled to the zoom level, in a format compatible with
+ * the screen, so repaints such as those while a selection is dragged only copy pixels rather than
+ * resampling the whole image. The copy is only remade when the image or the zoom changes.
+ * </p>
+ * 
  * <p> 
  * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
  * </p>
@@ -66,6 +73,24 @@ public class ImagePanel extends JPanel {
      */
     private double scale;
 
+    /** A preview to show in place of the image, stretched to the image's size, or null to show the image. */
+    private BufferedImage preview;
+
+    /** Scaled copies larger than this many pixels are not kept, and the image is scaled as it is drawn instead. */
+    private static final long MAX_SCALED_PIXELS = 1L << 25;
+
+    /** The image scaled to the zoom level, or null if it has not been made. */
+    private BufferedImage scaled;
+
+    /** The {@link EditableImage#getVersion} of the image that {@link scaled} was made from. */
+    private long scaledVersion;
+
+    /** The zoom level that {@link scaled} was made at. */
+    private double scaledScale;
+
+    /** The {@link EditableImage#getVersion} of the image that repaints have been asked for up to. */
+    private long shownVersion;
+
     /**
      * <p>
      * Create a new ImagePanel.
@@ -78,15 +103,45 @@ public class ImagePanel extends JPanel {
     public ImagePanel() {
         image = new EditableImage();
         scale = 1.0;
+
+        image.addOperationListener(new OperationListener() {
+            public void operationsPending(int pending) {
+            }
+
+            public void imageChanged() {
+                // The version is read first, as it is increased after the image changes.
+                long version = image.getVersion();
+                Rectangle region = image.getChangedRegion(shownVersion);
+                shownVersion = version;
+
+                if (region == null) {
+                    if (getParent() != null) {
+                        getParent().revalidate();
+                    }
+                    repaint();
+                }
+                else if (!region.isEmpty()) {
+                    repaint(toView(region));
+                }
+            }
+
+            public void pyramidChanged() {
+                // The image may have been drawn without the pyramid while it was being built.
+                repaint();
+            }
+        });
         
         addMouseListener(new MouseAdapter() {
             public void mousePressed(MouseEvent e) {
+                Rectangle before = getSelectionBounds();
                 startPoint = e.getPoint(); 
+                repaintSelection(before);
             }
 
             public void mouseReleased(MouseEvent e) {
+                Rectangle before = getSelectionBounds();
                 endPoint = e.getPoint(); 
-                repaint();
+                repaintSelection(before);
 
                 int x = (int)Math.max(startPoint.getX(), endPoint.getX()) + 10;
                 int y = (int)Math.max(startPoint.getY(), endPoint.getY()); 
@@ -100,8 +155,9 @@ public class ImagePanel extends JPanel {
 
         addMouseMotionListener(new MouseAdapter() {
             public void mouseDragged(MouseEvent e) {
+                Rectangle before = getSelectionBounds();
                 endPoint = e.getPoint(); 
-                repaint();
+                repaintSelection(before);
             }
         }); 
     }
@@ -166,13 +222,14 @@ public class ImagePanel extends JPanel {
      * 
      * <p>
      * The percentage zoom is used for the external interface, where 100% is the original size, 50% is half-size, etc. 
-     * The zoom level is restricted to the range [50, 200].
+     * The zoom level is restricted to the range [1, 200]. Zooming out draws from an {@link ImagePyramid},
+     * so very large images can be shown whole without resampling every pixel.
      * </p>
      * @param zoomPercent The new zoom level as a percentage.
      */
     public void setZoom(double zoomPercent) {
-        if (zoomPercent < 50) {
-            zoomPercent = 50;
+        if (zoomPercent < 1) {
+            zoomPercent = 1;
         }
         else if (zoomPercent > 200) {
             zoomPercent = 200;
@@ -194,9 +251,10 @@ public class ImagePanel extends JPanel {
      */
     @Override
     public Dimension getPreferredSize() {
-        if (image.hasImage()) {
-            return new Dimension((int) Math.round(image.getCurrentImage().getWidth()*scale), 
-                                 (int) Math.round(image.getCurrentImage().getHeight()*scale));
+        Dimension size = image.getSize();
+        if (size != null) {
+            return new Dimension((int) Math.round(size.width*scale), 
+                                 (int) Math.round(size.height*scale));
         } 
         else {
             return new Dimension(450, 450);
@@ -216,8 +274,23 @@ public class ImagePanel extends JPanel {
         
         if (image.hasImage()) {
             Graphics2D g2 = (Graphics2D) g.create();
-            g2.scale(scale, scale);
-            g2.drawImage(image.getCurrentImage(), null, 0, 0);
+            // While a large image is still being decoded, a subsampled copy of it is shown instead.
+            BufferedImage stretched = preview != null ? preview : image.getLoadingPreview();
+            if (stretched != null) {
+                Dimension size = image.getSize();
+                g2.scale(scale, scale);
+                g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g2.drawImage(stretched, 0, 0, size.width, size.height, null);
+            }
+            else {
+                BufferedImage view = getScaledImage();
+                if (view != null) {
+                    g2.drawImage(view, 0, 0, null);
+                }
+                else {
+                    drawZoomed(g2);
+                }
+            }
             g2.dispose();
         }
         
@@ -230,12 +303,188 @@ public class ImagePanel extends JPanel {
         }
     }
 
+    /**
+     * <p>
+     * Get the image scaled to the current zoom level, making it if it is out of date.
+     * </p>
+     * 
+     * <p>
+     * The scaled image is drawn in the same way as {@link drawZoomed} would draw it straight to the screen,
+     * so the result on screen is the same, but it only has to be done once per image and zoom level.
+     * </p>
+     * 
+     * @return The scaled image, or null if there is no image yet or it would be too large to keep.
+     */
+    private BufferedImage getScaledImage() {
+        // The version is read first, as it is increased after the image changes.
+        long version = image.getVersion();
+        BufferedImage current = image.getLoadedImage();
+        if (current == null) {
+            return null;
+        }
+        int width = (int) Math.round(current.getWidth() * scale);
+        int height = (int) Math.round(current.getHeight() * scale);
+
+        if (scaled != null && scaledScale == scale) {
+            if (scaledVersion == version) {
+                return scaled;
+            }
+
+            // If only part of the image has changed, only that part of the copy needs to be redrawn.
+            Rectangle region = image.getChangedRegion(scaledVersion);
+            if (region != null) {
+                Graphics2D g2 = scaled.createGraphics();
+                g2.setComposite(AlphaComposite.Src);
+                g2.clip(toView(region));
+                boolean exact = drawZoomed(g2);
+                g2.dispose();
+
+                scaledVersion = exact ? version : Long.MIN_VALUE;
+                return scaled;
+            }
+        }
+
+        scaled = null;
+        if ((long) width * height > MAX_SCALED_PIXELS || width == 0 || height == 0) {
+            return null;
+        }
+
+        int transparency = current.getColorModel().getTransparency();
+        GraphicsConfiguration config = getGraphicsConfiguration();
+        BufferedImage copy = config != null
+            ? config.createCompatibleImage(width, height, transparency)
+            : new BufferedImage(width, height, transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+
+        Graphics2D g2 = copy.createGraphics();
+        g2.setComposite(AlphaComposite.Src);
+        boolean exact = drawZoomed(g2);
+        g2.dispose();
+
+        // A copy drawn without the pyramid level it needs is used until the level is ready, and then made again.
+        scaled = copy;
+        scaledVersion = exact ? version : Long.MIN_VALUE;
+        scaledScale = scale;
+        return scaled;
+    }
+
+    /**
+     * <p>
+     * Draw the current image at the zoom level.
+     * </p>
+     * 
+     * <p>
+     * When zoomed out to half size or less, the image is drawn from the level of its
+     * {@link ImagePyramid} that is closest in size to the image on screen, smoothed as it is stretched.
+     * The pyramid is built in the background, so until the level is up to date, the level from
+     * before the last change is drawn instead, or the image itself if that is a different size.
+     * </p>
+     * 
+     * @param g2 The graphics to draw the image with, in panel coordinates.
+     * @return False if the image was drawn without an up to date pyramid level, so should be drawn again once it is ready.
+     */
+    private boolean drawZoomed(Graphics2D g2) {
+        // The version is read first, as it is increased after the image changes.
+        long version = image.getVersion();
+        BufferedImage current = image.getLoadedImage();
+        if (current == null) {
+            return true;
+        }
+        int level = ImagePyramid.chooseLevel(scale);
+        g2.scale(scale, scale);
+
+        if (level == 0) {
+            g2.drawImage(current, null, 0, 0);
+            return true;
+        }
+
+        boolean exact = image.getPyramidVersion() == version;
+        ImagePyramid pyramid = image.getPyramid(level);
+        BufferedImage source = pyramid == null ? null : pyramid.getBuiltLevel(level);
+        if (source == null || pyramid.getBase().getWidth() != current.getWidth() || pyramid.getBase().getHeight() != current.getHeight()) {
+            source = current;
+            exact = false;
+        }
+
+        // Levels are rounded up in size, so stretch the level over the whole image.
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.drawImage(source, 0, 0, current.getWidth(), current.getHeight(), null);
+        return exact;
+    }
+
+    /**
+     * <p>
+     * Convert a region of the image to the part of the panel it is drawn in.
+     * </p>
+     * 
+     * <p>
+     * The result is rounded outwards and has a pixel to spare on each side, so that it covers
+     * every panel pixel that the region's pixels can touch at the current zoom level.
+     * </p>
+     * 
+     * @param region The region in image coordinates.
+     * @return The region in panel coordinates.
+     */
+    private Rectangle toView(Rectangle region) {
+        int left = (int) Math.floor(region.x * scale) - 1;
+        int top = (int) Math.floor(region.y * scale) - 1;
+        int right = (int) Math.ceil((region.x + region.width) * scale) + 1;
+        int bottom = (int) Math.ceil((region.y + region.height) * scale) + 1;
+        return new Rectangle(left, top, right - left, bottom - top);
+    }
+
+    /**
+     * <p>
+     * Get the part of the panel covered by the selection rectangle.
+     * </p>
+     * 
+     * @return The bounds of the selection rectangle, including its outline.
+     */
+    private Rectangle getSelectionBounds() {
+        int x = Math.min(startPoint.x, endPoint.x);
+        int y = Math.min(startPoint.y, endPoint.y);
+        return new Rectangle(x, y, Math.abs(startPoint.x - endPoint.x) + 1, Math.abs(startPoint.y - endPoint.y) + 1);
+    }
+
+    /**
+     * <p>
+     * Repaint only the part of the panel where the selection rectangle was and now is.
+     * </p>
+     * 
+     * <p>
+     * Repainting just this area, rather than the whole panel, keeps dragging out a selection
+     * smooth on large, zoomed-in images.
+     * </p>
+     * 
+     * @param before The bounds of the selection rectangle before it changed.
+     */
+    private void repaintSelection(Rectangle before) {
+        repaint(before.union(getSelectionBounds()));
+    }
+
+    /**
+     * <p>
+     * Show a preview in place of the image, or go back to showing the image.
+     * </p>
+     * 
+     * <p>
+     * The preview may be smaller than the image, and is stretched to cover it.
+     * </p>
+     * 
+     * @param preview The preview to show, or null to show the image itself.
+     * @see OperationPreview
+     */
+    public void setPreview(BufferedImage preview) {
+        this.preview = preview;
+        repaint();
+    }
+
     /**
      * Clear the current region selection within the panel.
      */
     public void clearSelection() {
+        Rectangle before = getSelectionBounds();
         startPoint = new Point(-1, -1);
         endPoint = new Point(-1, -1);
-        repaint();
+        repaintSelection(before);
     }
 }
\ No newline at end of file
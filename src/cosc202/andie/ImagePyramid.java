@@ -0,0 +1,265 @@
+package cosc202.andie;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * <p>
+ * Successively halved copies of an image, for drawing it zoomed out.
+ * </p>
+ *
+ * <p>
+ * Level 0 is the image itself, and each level after it is half the width and height of the one
+ * before, with each pixel the average of the 2x2 block of pixels it covers. To draw the image at
+ * a small zoom, the {@link ImagePanel} starts from the smallest level that is still at least as
+ * large as the image on screen, so it never has to resample more than twice the pixels it shows,
+ * however large the image is.
+ * </p>
+ *
+ * <p>
+ * Levels are only built the first time they are asked for. When part of the image changes,
+ * {@link update} recomputes just the matching part of each level that has been built.
+ * </p>
+ *
+ * <p>
+ * Building and updating levels takes a while for a large image, so {@link EditableImage} does it
+ * on a background thread. The {@link ImagePanel} only ever reads the levels that are already
+ * there, through {@link getBuiltLevel}, which never waits.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ * @version 1.0
+ */
+public class ImagePyramid {
+
+    /** The image at full size. */
+    private volatile BufferedImage base;
+
+    /** The packed ARGB pixels of each level that has been built, from level 1 on. */
+    private final List<int[]> pixels;
+
+    /** The images backed by {@link pixels}, from level 1 on, which may be read while more are built. */
+    private final List<BufferedImage> levels;
+
+    /**
+     * <p>
+     * Create a pyramid over an image, without building any levels yet.
+     * </p>
+     *
+     * @param base The image at full size.
+     */
+    public ImagePyramid(BufferedImage base) {
+        this.base = base;
+        this.pixels = new ArrayList<int[]>();
+        this.levels = new CopyOnWriteArrayList<BufferedImage>();
+    }
+
+    /**
+     * <p>
+     * Choose the level to draw an image from at a zoom level.
+     * </p>
+     *
+     * @param scale The zoom level, where 1.0 is actual size.
+     * @return The highest level that is no smaller than the image as drawn.
+     */
+    public static int chooseLevel(double scale) {
+        int level = 0;
+        while (scale * (2L << level) <= 1.0 && level < 30) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * <p>
+     * Get the image at full size.
+     * </p>
+     *
+     * @return The image the pyramid was built over.
+     */
+    public BufferedImage getBase() {
+        return base;
+    }
+
+    /**
+     * <p>
+     * Get one level of the pyramid, building it and the levels below it if needed.
+     * </p>
+     *
+     * <p>
+     * Levels past the one that is a single pixel are not built; asking for them gives that level instead.
+     * The returned image must not be changed.
+     * </p>
+     *
+     * @param level The level, where 0 is full size and each level after it is half the size.
+     * @return The image at that level.
+     */
+    public synchronized BufferedImage getLevel(int level) {
+        if (level == 0) {
+            return base;
+        }
+
+        while (levels.size() < level) {
+            BufferedImage below = levels.isEmpty() ? base : levels.get(levels.size() - 1);
+            if (below.getWidth() == 1 && below.getHeight() == 1) {
+                return below;
+            }
+            build(below);
+        }
+        return levels.get(level - 1);
+    }
+
+    /**
+     * <p>
+     * Get one level of the pyramid if it has already been built, without building anything.
+     * </p>
+     *
+     * <p>
+     * This can be called while levels are built or updated on another thread. The returned image
+     * must not be changed.
+     * </p>
+     *
+     * @param level The level, where 0 is full size and each level after it is half the size.
+     * @return The image at that level, or null if it has not been built yet.
+     */
+    public BufferedImage getBuiltLevel(int level) {
+        if (level == 0) {
+            return base;
+        }
+
+        // Levels are only ever added, so any level below the count read here is there to get.
+        int count = levels.size();
+        if (level <= count) {
+            return levels.get(level - 1);
+        }
+        BufferedImage top = count == 0 ? base : levels.get(count - 1);
+        return top.getWidth() == 1 && top.getHeight() == 1 ? top : null;
+    }
+
+    /**
+     * <p>
+     * Build the next level up from the one below it.
+     * </p>
+     *
+     * @param below The level to halve.
+     */
+    private void build(BufferedImage below) {
+        int width = below.getWidth();
+        int height = below.getHeight();
+        int[] src = levels.isEmpty() ? PackedPixels.read(below) : pixels.get(pixels.size() - 1);
+        int halfWidth = (width + 1) / 2;
+        int halfHeight = (height + 1) / 2;
+        int[] dst = new int[halfWidth * halfHeight];
+
+        TileScheduler.forEach(halfHeight, y -> reduce(src, 0, 0, width, width, height, dst, halfWidth, 0, y, halfWidth, y + 1));
+
+        pixels.add(dst);
+        levels.add(PackedPixels.wrap(dst, halfWidth, halfHeight));
+    }
+
+    /**
+     * <p>
+     * Bring the pyramid up to date after part of the image has changed.
+     * </p>
+     *
+     * <p>
+     * The image may have been replaced by a copy, as long as the copy is the same size and only
+     * differs from the old image inside the region. Only the pixels of each built level that
+     * cover the region are recomputed. The new base only replaces the old one once every level
+     * is up to date.
+     * </p>
+     *
+     * @param image The changed image, which becomes the new base.
+     * @param region The part of the image that changed.
+     */
+    public synchronized void update(BufferedImage image, Rectangle region) {
+        Rectangle changed = region.intersection(new Rectangle(image.getWidth(), image.getHeight()));
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        for (int level = 1; level <= levels.size() && !changed.isEmpty(); level++) {
+            int left = changed.x / 2;
+            int top = changed.y / 2;
+            int right = (changed.x + changed.width + 1) / 2;
+            int bottom = (changed.y + changed.height + 1) / 2;
+            int halfWidth = (width + 1) / 2;
+
+            // Read the source pixels behind the changed part of this level.
+            int srcLeft = 2 * left;
+            int srcTop = 2 * top;
+            int srcWidth = Math.min(2 * right, width) - srcLeft;
+            int srcHeight = Math.min(2 * bottom, height) - srcTop;
+            int[] src;
+            int stride;
+            if (level == 1) {
+                src = image.getRGB(srcLeft, srcTop, srcWidth, srcHeight, null, 0, srcWidth);
+                stride = srcWidth;
+            }
+            else {
+                src = pixels.get(level - 2);
+                stride = width;
+                srcLeft = 0;
+                srcTop = 0;
+            }
+
+            reduce(src, srcLeft, srcTop, stride, width, height, pixels.get(level - 1), halfWidth, left, top, right, bottom);
+
+            changed = new Rectangle(left, top, right - left, bottom - top);
+            width = halfWidth;
+            height = (height + 1) / 2;
+        }
+        base = image;
+    }
+
+    /**
+     * <p>
+     * Compute part of a level by averaging 2x2 blocks of the level below.
+     * </p>
+     *
+     * <p>
+     * At an odd right or bottom edge the last column or row of the level below is used twice.
+     * </p>
+     *
+     * @param src The packed ARGB pixels of the level below, or of part of it.
+     * @param srcLeft The column of the level below that the first column of {@code src} holds.
+     * @param srcTop The row of the level below that the first row of {@code src} holds.
+     * @param stride The number of pixels in each row of {@code src}.
+     * @param width The width of the level below.
+     * @param height The height of the level below.
+     * @param dst The packed ARGB pixels of the level being computed.
+     * @param dstWidth The width of the level being computed.
+     * @param left The first column to compute.
+     * @param top The first row to compute.
+     * @param right One past the last column to compute.
+     * @param bottom One past the last row to compute.
+     */
+    private static void reduce(int[] src, int srcLeft, int srcTop, int stride, int width, int height,
+                               int[] dst, int dstWidth, int left, int top, int right, int bottom) {
+        for (int y = top; y < bottom; y++) {
+            int row0 = (2 * y - srcTop) * stride - srcLeft;
+            int row1 = (Math.min(2 * y + 1, height - 1) - srcTop) * stride - srcLeft;
+
+            for (int x = left; x < right; x++) {
+                int x0 = 2 * x;
+                int x1 = Math.min(2 * x + 1, width - 1);
+                int p00 = src[row0 + x0];
+                int p01 = src[row0 + x1];
+                int p10 = src[row1 + x0];
+                int p11 = src[row1 + x1];
+
+                int a = ((p00 >>> 24) + (p01 >>> 24) + (p10 >>> 24) + (p11 >>> 24) + 2) >> 2;
+                int r = (((p00 >> 16) & 0xFF) + ((p01 >> 16) & 0xFF) + ((p10 >> 16) & 0xFF) + ((p11 >> 16) & 0xFF) + 2) >> 2;
+                int g = (((p00 >> 8) & 0xFF) + ((p01 >> 8) & 0xFF) + ((p10 >> 8) & 0xFF) + ((p11 >> 8) & 0xFF) + 2) >> 2;
+                int b = ((p00 & 0xFF) + (p01 & 0xFF) + (p10 & 0xFF) + (p11 & 0xFF) + 2) >> 2;
+                dst[y * dstWidth + x] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+}
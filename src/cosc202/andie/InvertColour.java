@@ -1,8 +1,5 @@
 package cosc202.andie;
 
-import java.awt.image.*;
-import java.awt.*;
-
 /** 
  * <p>
  * An image operation that inverts the colour of an image.
@@ -11,33 +8,28 @@ import java.awt.*;
  * @author Charlotte Williams
  * @version 1.0
  */
-public class InvertColour implements ImageOperation, java.io.Serializable {
+public class InvertColour extends PointOperation implements java.io.Serializable {
+
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = -6475732798932284992L;
 
     /**
      * <p>
-     * Invert colour of an image.
+     * Compile colour inversion into a lookup.
      * </p>
      * 
      * <p>
-     * Finds the RGB values of the all original pixels. Then finds 255 - the original 
-     * values in order to find the corresponding inverted RGB values.
-     * Creates a new colour from these inverted values and applies it to the image.
+     * Each of the red, green and blue values is replaced by 255 minus the original value.
+     * The original alpha is kept.
      * </p>
      * 
-     * @param input The image to be colour inverted
-     * @return The resulting colour inverted image.
+     * @return The lookup inverting each pixel.
      */
-    public BufferedImage apply(BufferedImage input) {
-        for (int y = 0; y < input.getHeight(); ++y) {
-            for (int x = 0; x < input.getWidth(); ++x) {
-                int argb = input.getRGB(x, y);
-                Color col = new Color(argb, true);
-                col = new Color(255 - col.getRed(), 255 - col.getGreen(), 255 - col.getBlue(), col.getAlpha());
-                
-                input.setRGB(x, y, col.getRGB());
-            }
+    protected ColourLookup compile() {
+        int[] table = new int[256];
+        for (int v = 0; v < 256; v++) {
+            table[v] = 255 - v;
         }
-        
-        return input;
-    }   
-}
\ No newline at end of file
+        return ColourLookup.table(table);
+    }
+}
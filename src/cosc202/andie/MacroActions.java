@@ -74,7 +74,7 @@ public class MacroActions {
      * Action to save a set of macros
      * </p>
      * 
-     * @see EditableImage#saveAs(String)
+     * @see EditableImage#saveMacro(File)
      */
     public class MacroSaveAction extends ImageAction {
 
@@ -109,8 +109,7 @@ public class MacroActions {
 
             if (result == JFileChooser.APPROVE_OPTION) {
                 try {
-                    String filepath = fileChooser.getSelectedFile().getCanonicalPath();
-                    target.getImage().saveAs(filepath);
+                    target.getImage().saveMacro(fileChooser.getSelectedFile().getCanonicalFile());
                 } 
                 catch (Exception ex) {
                     JOptionPane.showMessageDialog(target, Andie.getText("noImageToSaveWarningText"),
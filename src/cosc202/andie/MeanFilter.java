@@ -1,7 +1,6 @@
 package cosc202.andie;
 
 import java.awt.image.*;
-import java.util.*;
 
 /**
  * <p>
@@ -12,6 +11,13 @@ import java.util.*;
  * A Mean filter blurs an image by replacing each pixel by the average of the
  * pixels in a surrounding neighbourhood, and can be implemented by a convolution.
  * </p>
+ *
+ * <p>
+ * Rather than convolving, the neighbourhood sums are kept as running sums that slide
+ * across and down the image, so every radius costs the same per pixel and only one row
+ * of column sums is held at a time. Out of bounds pixels are assumed to have the
+ * same value as the nearest edge pixel, as they are for convolution.
+ * </p>
  * 
  * <p> 
  * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
@@ -21,8 +27,14 @@ import java.util.*;
  * @author Steven Mills
  * @version 1.0
  */
-public class MeanFilter implements ImageOperation, java.io.Serializable {
-    
+public class MeanFilter implements BandedOperation, java.io.Serializable {
+
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = -4421560294553137662L;
+
+    /** The largest radius that can be chosen, or read from a file. */
+    public static final int MAX_RADIUS = 200;
+
     /**
      * The size of filter to apply. A radius of 1 is a 3x3 filter, a radius of 2 a 5x5 filter, and so forth.
      */
@@ -45,27 +57,169 @@ public class MeanFilter implements ImageOperation, java.io.Serializable {
         this.radius = radius;    
     }
 
+    /**
+     * <p>
+     * Create a mean filter from the parameters saved by {@link writeParameters}.
+     * </p>
+     *
+     * @param params The saved parameters.
+     */
+    MeanFilter(OperationParameters params) {
+        this(params.getInt(1, 1, 0, MAX_RADIUS));
+    }
+
     /**
      * <p>
      * Apply a Mean filter to an image.
      * </p>
      * 
      * <p>
-     * As with many filters, the Mean filter is implemented via convolution.
-     * The size of the convolution kernel is specified by the {@link radius}.  
-     * Larger radii lead to stronger blurring.
+     * Each pixel is replaced by the mean of the square neighbourhood of the given {@link radius},
+     * rounded down. Larger radii lead to stronger blurring, but take no longer to compute.
      * </p>
      * 
      * @param input The image to apply the Mean filter to.
      * @return The resulting (blurred)) image.
      */
     public BufferedImage apply(BufferedImage input) {
-        int size = (2*radius+1) * (2*radius+1);
-        float [] array = new float[size];
-        Arrays.fill(array, 1.0f/size);
+        int width = input.getWidth();
+        int height = input.getHeight();
+        int[] src = PackedPixels.read(input);
+        int[] dst = new int[width * height];
+
+        TileScheduler.run(this, src, dst, width, height);
+        return PackedPixels.create(input, dst, width, height);
+    }
+
+    /**
+     * <p>
+     * Get the number of rows above and below a band that the filter reads.
+     * </p>
+     *
+     * @return The radius of the filter.
+     */
+    public int getHalo() {
+        return radius;
+    }
+
+    /**
+     * <p>
+     * Compute the mean of every pixel in the rows from {@code top} to {@code bottom}.
+     * </p>
+     *
+     * <p>
+     * Each column keeps the sum of its red, green and blue values over the rows within the
+     * radius of the current row, which is updated by adding the row entering the window and
+     * removing the row leaving it. Each row is then swept from left to right with a window
+     * over those column sums, in the same way. The alpha of each pixel is kept unchanged.
+     * </p>
+     *
+     * @param src The packed ARGB input pixels.
+     * @param dst The packed ARGB array to store the result in.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param top The first row to compute.
+     * @param bottom One past the last row to compute.
+     */
+    public void applyRows(int[] src, int[] dst, int width, int height, int top, int bottom) {
+        OperationContext context = OperationContext.current();
+        int[] red = new int[width];
+        int[] green = new int[width];
+        int[] blue = new int[width];
+        long count = (2L * radius + 1) * (2L * radius + 1);
+
+        for (int y = top - radius; y <= top + radius; y++) {
+            addRow(src, width, clamp(y, height), red, green, blue, 1);
+        }
+
+        for (int y = top; y < bottom; y++) {
+            context.checkCancelled();
 
-        Kernel kernel = new Kernel(2*radius+1, 2*radius+1, array);
-        ConvolutionOperation convOp = new ConvolutionOperation(kernel);
-        return convOp.apply(input, false, -1);
+            long r = 0;
+            long g = 0;
+            long b = 0;
+            for (int x = -radius; x <= radius; x++) {
+                int column = clamp(x, width);
+                r += red[column];
+                g += green[column];
+                b += blue[column];
+            }
+
+            for (int x = 0; x < width; x++) {
+                int mean = (int) (r / count) << 16 | (int) (g / count) << 8 | (int) (b / count);
+                dst[y * width + x] = (src[y * width + x] & 0xFF000000) | mean;
+
+                int entering = clamp(x + radius + 1, width);
+                int leaving = clamp(x - radius, width);
+                r += red[entering] - red[leaving];
+                g += green[entering] - green[leaving];
+                b += blue[entering] - blue[leaving];
+            }
+
+            if (y + 1 < bottom) {
+                addRow(src, width, clamp(y + radius + 1, height), red, green, blue, 1);
+                addRow(src, width, clamp(y - radius, height), red, green, blue, -1);
+            }
+
+            context.rowsCompleted(1);
+        }
+    }
+
+    /**
+     * <p>
+     * Add a row of pixels to the column sums, or take it away.
+     * </p>
+     *
+     * @param src The packed ARGB pixels of the image.
+     * @param width The width of the image.
+     * @param row The row of the image to add.
+     * @param red The sums of the red channel of each column.
+     * @param green The sums of the green channel of each column.
+     * @param blue The sums of the blue channel of each column.
+     * @param sign 1 to add the row, or -1 to take it away.
+     */
+    private static void addRow(int[] src, int width, int row, int[] red, int[] green, int[] blue, int sign) {
+        int offset = row * width;
+        for (int x = 0; x < width; x++) {
+            int argb = src[offset + x];
+            red[x] += sign * ((argb >> 16) & 0xFF);
+            green[x] += sign * ((argb >> 8) & 0xFF);
+            blue[x] += sign * (argb & 0xFF);
+        }
+    }
+
+    /**
+     * <p>
+     * Bring a row or column index back inside the image, so that the edge pixels are repeated.
+     * </p>
+     *
+     * @param index The index, which may be outside the image.
+     * @param size The width or height of the image.
+     * @return The nearest index inside the image.
+     */
+    private static int clamp(int index, int size) {
+        return Math.min(Math.max(index, 0), size - 1);
+    }
+
+    /**
+     * <p>
+     * Check whether the filter changes the image it is applied to.
+     * </p>
+     *
+     * @return False, as the result is written to a new pixel array.
+     */
+    public boolean mutatesInput() {
+        return false;
+    }
+
+    /**
+     * <p>
+     * Add the radius to the parameters saved for this operation.
+     * </p>
+     *
+     * @param params The parameters to add to.
+     */
+    public void writeParameters(OperationParameters params) {
+        params.putInt(1, radius);
     }
-}
\ No newline at end of file
+}
@@ -20,6 +20,9 @@ import java.awt.image.*;
  */
 public class NorthEastEmbossFilter implements ImageOperation, java.io.Serializable {
 
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = 27474189042713106L;
+
     /**
      * <p>
      * Apply a Northeast Emboss Filter.
@@ -43,4 +46,15 @@ public class NorthEastEmbossFilter implements ImageOperation, java.io.Serializab
         ConvolutionOperation convOp = new ConvolutionOperation(kernel);
         return convOp.apply(input, true, 1);
     }
-}
\ No newline at end of file
+
+    /**
+     * <p>
+     * Check whether the filter changes the image it is applied to.
+     * </p>
+     *
+     * @return False, as the kernel is convolved into a new image.
+     */
+    public boolean mutatesInput() {
+        return false;
+    }
+}
@@ -0,0 +1,305 @@
+package cosc202.andie;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * <p>
+ * Reads and writes stacks of {@link ImageOperation}s in ANDIE's <code>.ops</code> file format.
+ * </p>
+ *
+ * <p>
+ * A file starts with the bytes <code>AOPS</code> and a format version, followed by the number of
+ * operations. Each operation is written as its opcode, a number that stands for its class in the
+ * registry below, and its {@link OperationParameters}. Numbers are written as varints, so most
+ * operations take only a few bytes, and nothing in the file depends on how the operation classes
+ * are laid out in memory.
+ * </p>
+ *
+ * <p>
+ * Files saved by earlier versions of ANDIE hold a {@link Stack} written with Java serialization.
+ * These are recognised by their first two bytes and still read, although they are always saved in
+ * the new format.
+ * </p>
+ *
+ * <p>
+ * Macros use the same format, so a macro recorded in ANDIE can be applied to another image,
+ * or to many with {@link BatchProcessor}, and an image's operations file can be used as a macro.
+ * </p>
+ *
+ * <p>
+ * To add a new operation, give it an unused opcode in the registry, a constructor taking
+ * {@link OperationParameters} and, if it has any state, an override of {@link ImageOperation#writeParameters}.
+ * Opcodes must never be reused or changed, as files saved with them would then load as the wrong operation.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ * @version 1.0
+ */
+public class OperationCodec {
+
+    /** The first bytes of every file in this format, "AOPS". */
+    private static final int MAGIC = 0x414F5053;
+
+    /** The version of the format written. Files with a later version are refused. */
+    private static final int VERSION = 1;
+
+    /** The first two bytes of a Java serialization stream, as in files saved by older versions of ANDIE. */
+    private static final int SERIALIZATION_MAGIC = 0xACED;
+
+    /**
+     * The only classes that may be read from a file saved with Java serialization: the stack, the array
+     * behind it, ANDIE's own operations and the points a crop is saved with. Anything else is rejected
+     * before it is created.
+     */
+    private static final ObjectInputFilter LEGACY_FILTER = ObjectInputFilter.Config.createFilter(
+            "java.util.Stack;java.util.Vector;java.lang.Object;java.awt.Point;cosc202.andie.*;maxdepth=8;!*");
+
+    /** The opcode of each registered operation class. */
+    private static final Map<Class<?>, Integer> opcodes = new HashMap<Class<?>, Integer>();
+
+    /** The way to create each registered operation from its parameters, by opcode. */
+    private static final Map<Integer, Function<OperationParameters, ImageOperation>> factories = new HashMap<Integer, Function<OperationParameters, ImageOperation>>();
+
+    static {
+        // Colour
+        register(1, InvertColour.class, params -> new InvertColour());
+        register(2, ConvertToGrey.class, params -> new ConvertToGrey());
+        register(3, BrightnessContrastAdjust.class, BrightnessContrastAdjust::new);
+        register(4, CycleColourChannel.class, CycleColourChannel::new);
+
+        // Filters
+        register(10, MeanFilter.class, MeanFilter::new);
+        register(11, MedianFilter.class, MedianFilter::new);
+        register(12, GaussianFilter.class, GaussianFilter::new);
+        register(13, SharpenFilter.class, params -> new SharpenFilter());
+        register(14, BlockAveraging.class, BlockAveraging::new);
+        register(15, RandomScattering.class, RandomScattering::new);
+        register(16, ConvolutionOperation.class, ConvolutionOperation::new);
+        register(20, EastEmbossFilter.class, params -> new EastEmbossFilter());
+        register(21, WestEmbossFilter.class, params -> new WestEmbossFilter());
+        register(22, NorthEmbossFilter.class, params -> new NorthEmbossFilter());
+        register(23, SouthEmbossFilter.class, params -> new SouthEmbossFilter());
+        register(24, NorthEastEmbossFilter.class, params -> new NorthEastEmbossFilter());
+        register(25, NorthwestEmbossFilter.class, params -> new NorthwestEmbossFilter());
+        register(26, SoutheastEmbossFilter.class, params -> new SoutheastEmbossFilter());
+        register(27, SouthwestEmbossFilter.class, params -> new SouthwestEmbossFilter());
+        register(28, HorizontalSobelFilter.class, params -> new HorizontalSobelFilter());
+        register(29, VerticalSobelFilter.class, params -> new VerticalSobelFilter());
+
+        // Transforms
+        register(30, HorizontalFlip.class, params -> new HorizontalFlip());
+        register(31, VerticalFlip.class, params -> new VerticalFlip());
+        register(32, RotateLeft.class, params -> new RotateLeft());
+        register(33, RotateRight.class, params -> new RotateRight());
+        register(34, Rotate180.class, params -> new Rotate180());
+        register(35, Resize.class, Resize::new);
+        register(36, Crop.class, Crop::new);
+
+        // Drawing
+        register(40, DrawLineOperation.class, DrawLineOperation::new);
+        register(41, DrawRectOperation.class, DrawRectOperation::new);
+        register(42, DrawOvalOperation.class, DrawOvalOperation::new);
+    }
+
+    /**
+     * <p>
+     * OperationCodec only provides static methods, so it should not be constructed.
+     * </p>
+     */
+    private OperationCodec() {}
+
+    /**
+     * <p>
+     * Add an operation class to the registry.
+     * </p>
+     *
+     * @param opcode The number standing for the class in files.
+     * @param type The operation class.
+     * @param factory Creates an operation of the class from the parameters it wrote.
+     */
+    private static void register(int opcode, Class<? extends ImageOperation> type, Function<OperationParameters, ImageOperation> factory) {
+        opcodes.put(type, opcode);
+        factories.put(opcode, factory);
+    }
+
+    /**
+     * <p>
+     * Check whether an operation can be written in this format.
+     * </p>
+     *
+     * @param op The operation to check.
+     * @return True if the operation's class is registered.
+     */
+    public static boolean isRegistered(ImageOperation op) {
+        return opcodes.containsKey(op.getClass());
+    }
+
+    /**
+     * <p>
+     * Write a stack of operations.
+     * </p>
+     *
+     * <p>
+     * The stream is flushed but not closed.
+     * </p>
+     *
+     * @param ops The operations, in the order they are applied.
+     * @param stream The stream to write to.
+     * @throws IOException If the stream cannot be written, or an operation is not registered.
+     */
+    public static void write(List<? extends ImageOperation> ops, OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        OperationParameters.writeVarint(out, ops.size());
+
+        for (ImageOperation op: ops) {
+            writeOperation(op, out);
+        }
+        out.flush();
+    }
+
+    /**
+     * <p>
+     * Get the bytes an operation is written as, which are the same for any two operations that give the same result.
+     * </p>
+     *
+     * @param op The operation to encode.
+     * @return The operation's opcode and parameters, as written in a file.
+     * @throws NotSerializableException If the operation is not registered.
+     */
+    static byte[] encode(ImageOperation op) throws NotSerializableException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            writeOperation(op, new DataOutputStream(bytes));
+        }
+        catch (NotSerializableException ex) {
+            throw ex;
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * <p>
+     * Write one operation as its opcode and parameters.
+     * </p>
+     *
+     * @param op The operation to write.
+     * @param out The stream to write to.
+     * @throws IOException If the stream cannot be written, or the operation is not registered.
+     */
+    private static void writeOperation(ImageOperation op, DataOutput out) throws IOException {
+        Integer opcode = opcodes.get(op.getClass());
+        if (opcode == null) {
+            throw new NotSerializableException(op.getClass().getName());
+        }
+        OperationParameters params = new OperationParameters();
+        op.writeParameters(params);
+
+        OperationParameters.writeVarint(out, opcode);
+        params.write(out);
+    }
+
+    /**
+     * <p>
+     * Read a stack of operations, in this format or as saved by older versions of ANDIE.
+     * </p>
+     *
+     * @param stream The stream to read from, which is not closed.
+     * @return The operations, in the order they are applied.
+     * @throws IOException If the stream cannot be read or does not hold operations ANDIE knows.
+     */
+    public static List<ImageOperation> read(InputStream stream) throws IOException {
+        List<ImageOperation> ops = new ArrayList<ImageOperation>();
+        read(stream, ops::add);
+        return ops;
+    }
+
+    /**
+     * <p>
+     * Read a stack of operations, handing each one on as soon as it has been decoded.
+     * </p>
+     *
+     * <p>
+     * This lets a macro be replayed while it is still being read, without holding the whole
+     * stack first. If the stream turns out to be damaged part way through, the operations
+     * before the damage have already been handed on when the exception is thrown.
+     * </p>
+     *
+     * @param stream The stream to read from, which is not closed.
+     * @param consumer Given each operation, in the order they are applied.
+     * @throws IOException If the stream cannot be read or does not hold operations ANDIE knows.
+     */
+    public static void read(InputStream stream, Consumer<ImageOperation> consumer) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(stream);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        if (((first << 8) | second) == SERIALIZATION_MAGIC) {
+            readLegacy(buffered).forEach(consumer);
+            return;
+        }
+
+        DataInputStream in = new DataInputStream(buffered);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an ANDIE operations file");
+        }
+        int version = in.readUnsignedByte();
+        if (version > VERSION) {
+            throw new IOException("Operations file is from a newer version of ANDIE (format " + version + ")");
+        }
+
+        long count = OperationParameters.readVarint(in);
+        for (long i = 0; i < count; i++) {
+            int opcode = (int) OperationParameters.readVarint(in);
+            OperationParameters params = OperationParameters.read(in);
+            Function<OperationParameters, ImageOperation> factory = factories.get(opcode);
+            if (factory == null) {
+                throw new IOException("Unknown operation " + opcode);
+            }
+            ImageOperation op;
+            try {
+                op = factory.apply(params);
+            }
+            catch (RuntimeException ex) {
+                // Parameters that a damaged file gives out of range are rejected by the constructors.
+                throw new IOException("Invalid parameters for operation " + opcode, ex);
+            }
+            consumer.accept(op);
+        }
+    }
+
+    /**
+     * <p>
+     * Read a stack of operations saved with Java serialization.
+     * </p>
+     *
+     * @param stream The stream to read from.
+     * @return The operations, in the order they are applied.
+     * @throws IOException If the stream does not hold a stack of known operations.
+     */
+    private static List<ImageOperation> readLegacy(InputStream stream) throws IOException {
+        try {
+            ObjectInputStream objIn = new ObjectInputStream(stream);
+            objIn.setObjectInputFilter(LEGACY_FILTER);
+            List<ImageOperation> ops = new ArrayList<ImageOperation>();
+            for (Object op: (Stack<?>) objIn.readObject()) {
+                ops.add((ImageOperation) op);
+            }
+            return ops;
+        }
+        catch (ClassNotFoundException | ClassCastException ex) {
+            throw new IOException("Not an ANDIE operations file", ex);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package cosc202.andie;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * <p>
+ * Progress and cancellation for one {@link ImageOperation} being applied.
+ * </p>
+ *
+ * <p>
+ * An operation is given a context with {@link ImageOperation#apply(java.awt.image.BufferedImage, OperationContext)}.
+ * While it runs, the context is available to the operation's loops through {@link current}, including on
+ * the threads of the {@link TileScheduler}, so operations and the filters they are built from do not have
+ * to pass it around. The loops of long-running operations call {@link checkCancelled} at the start of each
+ * row, which throws a {@link CancellationException} once {@link cancel} has been called, and
+ * {@link rowsCompleted} after each row so that the progress can be shown.
+ * </p>
+ *
+ * <p>
+ * When an operation is applied without a context, it runs with one that is never cancelled and
+ * does not keep count of progress.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ * @version 1.0
+ */
+public class OperationContext {
+
+    /** The context used when an operation is applied without one. */
+    private static final OperationContext NONE = new OperationContext(false);
+
+    /** The context of the operation running on each thread. */
+    private static final ThreadLocal<OperationContext> current = ThreadLocal.withInitial(() -> NONE);
+
+    /** Whether this context can be cancelled and keeps count of progress. */
+    private final boolean active;
+
+    /** Whether the operation has been cancelled. */
+    private volatile boolean cancelled;
+
+    /** The number of rows computed so far. */
+    private final AtomicLong rowsDone;
+
+    /** The number of rows the operation is known to compute in total. */
+    private final AtomicLong rowsTotal;
+
+    /**
+     * <p>
+     * Create a context for an operation that has not started yet.
+     * </p>
+     */
+    public OperationContext() {
+        this(true);
+    }
+
+    /**
+     * <p>
+     * Create a context.
+     * </p>
+     *
+     * @param active False for the context that is used when none has been given.
+     */
+    private OperationContext(boolean active) {
+        this.active = active;
+        this.cancelled = false;
+        this.rowsDone = new AtomicLong();
+        this.rowsTotal = new AtomicLong();
+    }
+
+    /**
+     * <p>
+     * Get the context of the operation running on the calling thread.
+     * </p>
+     *
+     * @return The context, which is never null.
+     */
+    public static OperationContext current() {
+        return current.get();
+    }
+
+    /**
+     * <p>
+     * Make a context the current one on the calling thread.
+     * </p>
+     *
+     * @param context The context to make current.
+     * @return The context that was current before, to be given back to {@link exit}.
+     */
+    static OperationContext enter(OperationContext context) {
+        OperationContext previous = current.get();
+        current.set(context);
+        return previous;
+    }
+
+    /**
+     * <p>
+     * Restore the context that was current before {@link enter} was called.
+     * </p>
+     *
+     * @param previous The context returned by {@link enter}.
+     */
+    static void exit(OperationContext previous) {
+        current.set(previous);
+    }
+
+    /**
+     * <p>
+     * Ask the operation to stop.
+     * </p>
+     *
+     * <p>
+     * The operation stops the next time one of its loops calls {@link checkCancelled}.
+     * </p>
+     */
+    public void cancel() {
+        if (active) {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * <p>
+     * Check if the operation has been asked to stop.
+     * </p>
+     *
+     * @return True if {@link cancel} has been called.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * <p>
+     * Stop the operation if it has been cancelled.
+     * </p>
+     *
+     * @throws CancellationException If {@link cancel} has been called.
+     */
+    public void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * <p>
+     * Add to the number of rows the operation will compute in total.
+     * </p>
+     *
+     * <p>
+     * The {@link TileScheduler} calls this as each pass over the image starts.
+     * </p>
+     *
+     * @param rows The number of rows in the pass.
+     */
+    public void rowsStarted(int rows) {
+        if (active) {
+            rowsTotal.addAndGet(rows);
+        }
+    }
+
+    /**
+     * <p>
+     * Record that rows have been computed.
+     * </p>
+     *
+     * @param rows The number of rows just computed.
+     */
+    public void rowsCompleted(int rows) {
+        if (active) {
+            rowsDone.addAndGet(rows);
+        }
+    }
+
+    /**
+     * <p>
+     * Get how far through the operation is.
+     * </p>
+     *
+     * <p>
+     * Operations that make several passes over the image only add the rows of each pass as it
+     * starts, so the progress can step back when a new pass begins.
+     * </p>
+     *
+     * @return The fraction of rows computed so far, in [0, 1], or -1 if the operation has not reported any rows.
+     */
+    public double getProgress() {
+        long total = rowsTotal.get();
+        if (total == 0) {
+            return -1;
+        }
+        return Math.min((double) rowsDone.get() / total, 1.0);
+    }
+}
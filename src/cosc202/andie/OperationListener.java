@@ -0,0 +1,47 @@
+package cosc202.andie;
+
+/**
+ * <p>
+ * Interface for parts of the user interface that follow operations applied in the background.
+ * </p>
+ *
+ * <p>
+ * Operations passed to {@link EditableImage#applyAsync} are computed on a background thread.
+ * An OperationListener registered with {@link EditableImage#addOperationListener} is told when
+ * the number of operations still to be computed changes, and when a result replaces the current
+ * image. They are also told when the {@link ImagePyramid} used to draw the image zoomed out has
+ * been brought up to date. Every method is always called on the Swing Event Dispatch Thread.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ * @version 1.0
+ */
+public interface OperationListener {
+
+    /**
+     * <p>
+     * Called when an operation is queued, finishes, or is cancelled.
+     * </p>
+     *
+     * @param pending The number of operations queued or running.
+     */
+    public void operationsPending(int pending);
+
+    /**
+     * <p>
+     * Called when the result of an operation has become the current image.
+     * </p>
+     */
+    public void imageChanged();
+
+    /**
+     * <p>
+     * Called when the pyramid from {@link EditableImage#getPyramid} has been built or brought up to date.
+     * </p>
+     */
+    public void pyramidChanged();
+}
@@ -0,0 +1,416 @@
+package cosc202.andie;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * <p>
+ * The parameters of an {@link ImageOperation}, as saved in an <code>.ops</code> file.
+ * </p>
+ *
+ * <p>
+ * Each parameter is stored under a small number (its tag) chosen by the operation, along with
+ * its type. Tags only have to be unique within one operation, and once used for a parameter a
+ * tag must never be reused for a different one. A parameter that is missing when reading, such as
+ * one added after the file was saved, is given a default instead, and parameters with tags an
+ * operation does not know about are ignored. This lets operations gain and lose parameters
+ * without breaking files saved by other versions of ANDIE.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ * @version 1.0
+ * @see OperationCodec
+ */
+public class OperationParameters {
+
+    /** The type code of an int parameter, stored as a zigzag varint. */
+    private static final int TYPE_INT = 1;
+
+    /** The type code of a long parameter, stored as a zigzag varint. */
+    private static final int TYPE_LONG = 2;
+
+    /** The type code of a double parameter, stored as 8 bytes. */
+    private static final int TYPE_DOUBLE = 3;
+
+    /** The type code of a string parameter, stored as modified UTF-8 with a 2-byte length. */
+    private static final int TYPE_STRING = 4;
+
+    /** The type code of a float array parameter, stored as a varint length followed by 4 bytes per value. */
+    private static final int TYPE_FLOATS = 5;
+
+    /** The value of each parameter, by tag. */
+    private final TreeMap<Integer, Object> values;
+
+    /**
+     * <p>
+     * Create an empty set of parameters.
+     * </p>
+     */
+    public OperationParameters() {
+        values = new TreeMap<Integer, Object>();
+    }
+
+    /**
+     * <p>
+     * Add an int parameter.
+     * </p>
+     *
+     * @param tag The parameter's tag.
+     * @param value The value to store.
+     * @return These parameters, so that calls can be chained.
+     */
+    public OperationParameters putInt(int tag, int value) {
+        values.put(tag, value);
+        return this;
+    }
+
+    /**
+     * <p>
+     * Add a long parameter.
+     * </p>
+     *
+     * @param tag The parameter's tag.
+     * @param value The value to store.
+     * @return These parameters, so that calls can be chained.
+     */
+    public OperationParameters putLong(int tag, long value) {
+        values.put(tag, value);
+        return this;
+    }
+
+    /**
+     * <p>
+     * Add a double parameter.
+     * </p>
+     *
+     * @param tag The parameter's tag.
+     * @param value The value to store.
+     * @return These parameters, so that calls can be chained.
+     */
+    public OperationParameters putDouble(int tag, double value) {
+        values.put(tag, value);
+        return this;
+    }
+
+    /**
+     * <p>
+     * Add a string parameter. Null strings are left out, and so read back as the default.
+     * </p>
+     *
+     * @param tag The parameter's tag.
+     * @param value The value to store.
+     * @return These parameters, so that calls can be chained.
+     */
+    public OperationParameters putString(int tag, String value) {
+        if (value != null) {
+            values.put(tag, value);
+        }
+        return this;
+    }
+
+    /**
+     * <p>
+     * Add a float array parameter.
+     * </p>
+     *
+     * @param tag The parameter's tag.
+     * @param value The values to store, which are copied.
+     * @return These parameters, so that calls can be chained.
+     */
+    public OperationParameters putFloats(int tag, float[] value) {
+        values.put(tag, value.clone());
+        return this;
+    }
+
+    /**
+     * <p>
+     * Get an int parameter.
+     * </p>
+     *
+     * @param tag The parameter's tag.
+     * @param defaultValue The value to use if there is no int parameter with the tag.
+     * @return The parameter's value.
+     */
+    public int getInt(int tag, int defaultValue) {
+        Object value = values.get(tag);
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+
+    /**
+     * <p>
+     * Get an int parameter that must be within a range.
+     * </p>
+     *
+     * <p>
+     * Operations read their parameters with this, so that a damaged file is rejected when it is
+     * read rather than failing, or allocating without bound, when the operation is applied.
+     * </p>
+     *
+     * @param tag The parameter's tag.
+     * @param defaultValue The value to use if there is no int parameter with the tag.
+     * @param min The smallest value allowed.
+     * @param max The largest value allowed.
+     * @return The parameter's value.
+     * @throws IllegalArgumentException If the value is outside the range.
+     */
+    public int getInt(int tag, int defaultValue, int min, int max) {
+        int value = getInt(tag, defaultValue);
+        if (value < min || value > max) {
+            throw new IllegalArgumentException("Parameter " + tag + " is " + value + ", outside " + min + " to " + max);
+        }
+        return value;
+    }
+
+    /**
+     * <p>
+     * Get a long parameter.
+     * </p>
+     *
+     * @param tag The parameter's tag.
+     * @param defaultValue The value to use if there is no long parameter with the tag.
+     * @return The parameter's value.
+     */
+    public long getLong(int tag, long defaultValue) {
+        Object value = values.get(tag);
+        return value instanceof Long ? (Long) value : defaultValue;
+    }
+
+    /**
+     * <p>
+     * Get a double parameter.
+     * </p>
+     *
+     * @param tag The parameter's tag.
+     * @param defaultValue The value to use if there is no double parameter with the tag.
+     * @return The parameter's value.
+     */
+    public double getDouble(int tag, double defaultValue) {
+        Object value = values.get(tag);
+        return value instanceof Double ? (Double) value : defaultValue;
+    }
+
+    /**
+     * <p>
+     * Get a double parameter that must be within a range.
+     * </p>
+     *
+     * @param tag The parameter's tag.
+     * @param defaultValue The value to use if there is no double parameter with the tag.
+     * @param min The smallest value allowed.
+     * @param max The largest value allowed.
+     * @return The parameter's value.
+     * @throws IllegalArgumentException If the value is outside the range, or is not a number.
+     */
+    public double getDouble(int tag, double defaultValue, double min, double max) {
+        double value = getDouble(tag, defaultValue);
+        if (!(value >= min && value <= max)) {
+            throw new IllegalArgumentException("Parameter " + tag + " is " + value + ", outside " + min + " to " + max);
+        }
+        return value;
+    }
+
+    /**
+     * <p>
+     * Get a string parameter.
+     * </p>
+     *
+     * @param tag The parameter's tag.
+     * @param defaultValue The value to use if there is no string parameter with the tag.
+     * @return The parameter's value.
+     */
+    public String getString(int tag, String defaultValue) {
+        Object value = values.get(tag);
+        return value instanceof String ? (String) value : defaultValue;
+    }
+
+    /**
+     * <p>
+     * Get a float array parameter.
+     * </p>
+     *
+     * @param tag The parameter's tag.
+     * @param defaultValue The value to use if there is no float array parameter with the tag.
+     * @return A copy of the parameter's values.
+     */
+    public float[] getFloats(int tag, float[] defaultValue) {
+        Object value = values.get(tag);
+        return value instanceof float[] ? ((float[]) value).clone() : defaultValue;
+    }
+
+    /**
+     * <p>
+     * Write the parameters, each as its tag, type and value.
+     * </p>
+     *
+     * @param out The stream to write to.
+     * @throws IOException If the stream cannot be written.
+     */
+    public void write(DataOutput out) throws IOException {
+        writeVarint(out, values.size());
+        for (Map.Entry<Integer, Object> entry: values.entrySet()) {
+            writeVarint(out, entry.getKey());
+            Object value = entry.getValue();
+
+            if (value instanceof Integer) {
+                out.writeByte(TYPE_INT);
+                writeVarint(out, zigzag((Integer) value));
+            }
+            else if (value instanceof Long) {
+                out.writeByte(TYPE_LONG);
+                writeVarint(out, zigzag((Long) value));
+            }
+            else if (value instanceof Double) {
+                out.writeByte(TYPE_DOUBLE);
+                out.writeDouble((Double) value);
+            }
+            else if (value instanceof String) {
+                out.writeByte(TYPE_STRING);
+                out.writeUTF((String) value);
+            }
+            else {
+                float[] floats = (float[]) value;
+                out.writeByte(TYPE_FLOATS);
+                writeVarint(out, floats.length);
+                for (float f: floats) {
+                    out.writeFloat(f);
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Read parameters written by {@link write}.
+     * </p>
+     *
+     * @param in The stream to read from.
+     * @return The parameters read.
+     * @throws IOException If the stream cannot be read, or holds a type this version does not know.
+     */
+    public static OperationParameters read(DataInput in) throws IOException {
+        OperationParameters params = new OperationParameters();
+        long count = readVarint(in);
+
+        for (long i = 0; i < count; i++) {
+            int tag = (int) readVarint(in);
+            int type = in.readUnsignedByte();
+
+            switch (type) {
+                case TYPE_INT:
+                    params.putInt(tag, (int) unzigzag(readVarint(in)));
+                    break;
+                case TYPE_LONG:
+                    params.putLong(tag, unzigzag(readVarint(in)));
+                    break;
+                case TYPE_DOUBLE:
+                    params.putDouble(tag, in.readDouble());
+                    break;
+                case TYPE_STRING:
+                    params.putString(tag, in.readUTF());
+                    break;
+                case TYPE_FLOATS:
+                    params.values.put(tag, readFloats(in));
+                    break;
+                default:
+                    throw new IOException("Unknown parameter type " + type);
+            }
+        }
+        return params;
+    }
+
+    /**
+     * <p>
+     * Read an array of floats, preceded by its length.
+     * </p>
+     *
+     * <p>
+     * The array grows as the floats are read rather than being allocated at the length given,
+     * so a damaged length runs into the end of the stream instead of exhausting memory.
+     * </p>
+     *
+     * @param in The stream to read from.
+     * @return The floats read.
+     * @throws IOException If the stream cannot be read, or ends before the floats it claims to hold.
+     */
+    private static float[] readFloats(DataInput in) throws IOException {
+        long length = readVarint(in);
+        if (length < 0 || length > Integer.MAX_VALUE - 8) {
+            throw new IOException("Invalid array length " + length);
+        }
+
+        float[] floats = new float[(int) Math.min(length, 1024)];
+        for (int j = 0; j < length; j++) {
+            if (j == floats.length) {
+                floats = Arrays.copyOf(floats, (int) Math.min(length, 2L * floats.length));
+            }
+            floats[j] = in.readFloat();
+        }
+        return floats;
+    }
+
+    /**
+     * <p>
+     * Write a non-negative number in as few bytes as it needs, 7 bits to a byte.
+     * </p>
+     *
+     * @param out The stream to write to.
+     * @param value The number to write, treated as unsigned.
+     * @throws IOException If the stream cannot be written.
+     */
+    static void writeVarint(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * <p>
+     * Read a number written by {@link writeVarint}.
+     * </p>
+     *
+     * @param in The stream to read from.
+     * @return The number read.
+     * @throws IOException If the stream cannot be read or the number is too long.
+     */
+    static long readVarint(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * <p>
+     * Map a signed number to an unsigned one, so that small negative numbers stay short as varints.
+     * </p>
+     *
+     * @param value The signed number.
+     * @return The zigzag encoding of the number.
+     */
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * <p>
+     * Undo {@link zigzag}.
+     * </p>
+     *
+     * @param value The zigzag encoding of a number.
+     * @return The signed number.
+     */
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,296 @@
+package cosc202.andie;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import javax.swing.*;
+
+/**
+ * <p>
+ * A live preview of an operation while its settings are being chosen in a dialog.
+ * </p>
+ *
+ * <p>
+ * Rather than the full image, the preview applies the operation to a proxy: a copy of the
+ * current image shrunk to no more pixels than the {@link ImagePanel} has on screen, which
+ * {@link EditableImage#getProxy} keeps cached. The result is shown in place of the image in
+ * the panel, stretched to the image's size, until the dialog closes. The operation itself is
+ * only applied to the full image once the user commits to it.
+ * </p>
+ *
+ * <p>
+ * The proxy is made on the preview's background thread, so the dialog opens straight away,
+ * even while a large image is still being decoded. The panel shows the image as it is until
+ * the proxy is ready.
+ * </p>
+ *
+ * <p>
+ * Each change to the settings restarts a short timer, and the preview is only rendered once
+ * the settings have stopped changing, so dragging a slider does not queue up a render per step.
+ * Renders happen on a background thread. Starting a new render cancels the one in progress
+ * through its {@link OperationContext}, and a render that has been overtaken is never shown.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ * @version 1.0
+ */
+public class OperationPreview {
+
+    /** How long the settings must stay unchanged before the preview is rendered, in milliseconds. */
+    private static final int DEBOUNCE_MILLIS = 150;
+
+    /** The thread that previews are rendered on, shared by all previews. */
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ANDIE preview");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** The panel to show the preview in. */
+    private final ImagePanel panel;
+
+    /** Builds the operation to preview for the proxy's scale, or gives null to show the proxy unchanged. */
+    private final DoubleFunction<ImageOperation> factory;
+
+    /** Whether there was an image to preview when the preview was made. */
+    private final boolean hasImage;
+
+    /** The shrunk copy of the current image, or null if it is not ready yet or there is no image. */
+    private BufferedImage proxy;
+
+    /** The size of the proxy relative to the full image. */
+    private final double proxyScale;
+
+    /** The timer delaying each render until the settings stop changing. */
+    private final Timer timer;
+
+    /** The context of the latest render, or null if none has started. */
+    private OperationContext rendering;
+
+    /** Whether a render has been asked for by {@link update}. */
+    private boolean requested;
+
+    /** Whether the preview has been closed. */
+    private boolean closed;
+
+    /**
+     * <p>
+     * Create a preview for the image in a panel.
+     * </p>
+     *
+     * <p>
+     * The factory is called on the Event Dispatch Thread each time the preview is rendered, so it
+     * can read the current settings from the dialog. It is given the scale of the proxy, so that
+     * operations whose settings are in pixels, such as filter radii, can be scaled to match.
+     * </p>
+     *
+     * @param panel The panel to show the preview in.
+     * @param factory Builds the operation to preview for the proxy's scale, or gives null to show the proxy unchanged.
+     */
+    public OperationPreview(ImagePanel panel, DoubleFunction<ImageOperation> factory) {
+        this.panel = panel;
+        this.factory = factory;
+        this.closed = false;
+        this.requested = false;
+
+        EditableImage image = panel.getImage();
+        Dimension size = image.getSize();
+        hasImage = size != null;
+        if (hasImage) {
+            Rectangle visible = panel.getVisibleRect();
+            proxyScale = getProxyScale(size.width, size.height, panel.getZoom() / 100, visible.width, visible.height);
+        }
+        else {
+            proxyScale = 1.0;
+        }
+
+        timer = new Timer(DEBOUNCE_MILLIS, e -> render());
+        timer.setRepeats(false);
+
+        if (hasImage) {
+            // Making the proxy may wait for the image to be decoded, so it is kept off the Event Dispatch Thread.
+            executor.execute(() -> {
+                BufferedImage shrunk = image.getProxy(proxyScale);
+                SwingUtilities.invokeLater(() -> {
+                    proxy = shrunk;
+                    if (requested && !timer.isRunning()) {
+                        render();
+                    }
+                });
+            });
+        }
+    }
+
+    /**
+     * <p>
+     * Work out how much to shrink an image by for its proxy.
+     * </p>
+     *
+     * <p>
+     * The proxy is never larger than the image as drawn at the current zoom, and never has more
+     * pixels than the visible part of the panel, so rendering it costs about as much as drawing
+     * the screen, however large the image is.
+     * </p>
+     *
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param zoom The zoom of the panel, where 1.0 is actual size.
+     * @param viewWidth The width of the visible part of the panel.
+     * @param viewHeight The height of the visible part of the panel.
+     * @return The scale of the proxy, in (0, 1].
+     */
+    static double getProxyScale(int width, int height, double zoom, int viewWidth, int viewHeight) {
+        double scale = Math.min(zoom, 1.0);
+        long viewPixels = Math.max((long) viewWidth * viewHeight, 1);
+        if ((long) width * height * scale * scale > viewPixels) {
+            scale = Math.sqrt((double) viewPixels / ((long) width * height));
+        }
+        return Math.min(Math.max(scale, 1.0 / Math.max(width, height)), 1.0);
+    }
+
+    /**
+     * <p>
+     * Scale a radius in image pixels to the proxy, for operations whose settings are in pixels.
+     * </p>
+     *
+     * @param radius The radius on the full image.
+     * @param scale The scale of the proxy.
+     * @return The radius on the proxy, which is 0 if it is less than half a proxy pixel.
+     */
+    public static int scaleRadius(int radius, double scale) {
+        return (int) Math.round(radius * scale);
+    }
+
+    /**
+     * <p>
+     * Render the preview again once the settings stop changing.
+     * </p>
+     *
+     * <p>
+     * This should be called whenever a setting in the dialog changes, and once when it opens.
+     * </p>
+     */
+    public void update() {
+        if (hasImage && !closed) {
+            requested = true;
+            timer.restart();
+        }
+    }
+
+    /**
+     * <p>
+     * Stop previewing, and show the image itself in the panel again.
+     * </p>
+     *
+     * <p>
+     * This must be called when the dialog closes, whether or not the operation is applied.
+     * </p>
+     */
+    public void close() {
+        closed = true;
+        timer.stop();
+        if (rendering != null) {
+            rendering.cancel();
+        }
+        panel.setPreview(null);
+    }
+
+    /**
+     * <p>
+     * Cancel any render in progress and start rendering the current settings.
+     * </p>
+     */
+    private void render() {
+        // Until the proxy is ready there is nothing to render, and it renders once it arrives.
+        if (closed || proxy == null) {
+            return;
+        }
+        if (rendering != null) {
+            rendering.cancel();
+        }
+
+        OperationContext context = new OperationContext();
+        rendering = context;
+        ImageOperation op = factory.apply(proxyScale);
+        if (op == null) {
+            panel.setPreview(proxy);
+            return;
+        }
+
+        // The proxy is kept for the next preview, so it is only copied for operations that would change it.
+        ColorModel cm = proxy.getColorModel();
+        BufferedImage input = op.mutatesInput() ? new BufferedImage(cm, proxy.copyData(null), cm.isAlphaPremultiplied(), null) : proxy;
+        executor.execute(() -> {
+            BufferedImage result;
+            try {
+                result = op.apply(input, context);
+            }
+            catch (CancellationException ex) {
+                return;
+            }
+
+            SwingUtilities.invokeLater(() -> {
+                if (context == rendering && !closed) {
+                    panel.setPreview(result);
+                }
+            });
+        });
+    }
+
+    /**
+     * <p>
+     * Shrink an image by averaging the block of pixels behind each pixel of the result.
+     * </p>
+     *
+     * <p>
+     * Averaging every pixel, rather than sampling some of them, keeps fine detail such as noise
+     * from turning into aliasing, so the proxy looks like the image does on screen.
+     * </p>
+     *
+     * @param image The image to shrink.
+     * @param scale The size of the result relative to the image, in (0, 1].
+     * @return The shrunk image, with the same type as the original where possible.
+     */
+    public static BufferedImage downsample(BufferedImage image, double scale) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int proxyWidth = Math.max((int) Math.round(width * scale), 1);
+        int proxyHeight = Math.max((int) Math.round(height * scale), 1);
+        int[] src = PackedPixels.read(image);
+        int[] dst = new int[proxyWidth * proxyHeight];
+
+        TileScheduler.forEach(proxyHeight, y -> {
+            int top = (int) ((long) y * height / proxyHeight);
+            int bottom = Math.max((int) ((long) (y + 1) * height / proxyHeight), top + 1);
+
+            for (int x = 0; x < proxyWidth; x++) {
+                int left = (int) ((long) x * width / proxyWidth);
+                int right = Math.max((int) ((long) (x + 1) * width / proxyWidth), left + 1);
+                long a = 0;
+                long r = 0;
+                long g = 0;
+                long b = 0;
+
+                for (int sy = top; sy < bottom; sy++) {
+                    for (int sx = left; sx < right; sx++) {
+                        int pixel = src[sy * width + sx];
+                        a += pixel >>> 24;
+                        r += (pixel >> 16) & 0xFF;
+                        g += (pixel >> 8) & 0xFF;
+                        b += pixel & 0xFF;
+                    }
+                }
+
+                long count = (long) (bottom - top) * (right - left);
+                dst[y * proxyWidth + x] = (int) (a / count) << 24 | (int) (r / count) << 16 | (int) (g / count) << 8 | (int) (b / count);
+            }
+        });
+
+        return PackedPixels.create(image, dst, proxyWidth, proxyHeight);
+    }
+}
@@ -0,0 +1,123 @@
+package cosc202.andie;
+
+import java.awt.*;
+import javax.swing.*;
+
+/**
+ * <p>
+ * UI element showing that operations are being applied in the background.
+ * </p>
+ *
+ * <p>
+ * The status bar sits along the bottom of the ANDIE window and is only shown while an
+ * {@link EditableImage} has operations queued or running. It shows how many there are,
+ * and has a button to cancel them all.
+ * </p>
+ * 
+ * <p>
+ * While it is shown, the progress of the running operation is checked several times a second.
+ * The progress bar fills as the operation reports the rows it has computed, and just shows
+ * that work is happening for operations that do not report their progress.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ * @version 1.0
+ */
+public class OperationStatusBar extends JPanel implements OperationListener {
+
+    /** Serialization version of this component. */
+    private static final long serialVersionUID = -1764841094111385421L;
+
+    /** The label showing how many operations are pending. */
+    private JLabel label;
+
+    /** How often to check the progress of the running operation, in milliseconds. */
+    private static final int PROGRESS_INTERVAL = 100;
+
+    /** The bar showing the progress of the running operation. */
+    private JProgressBar progressBar;
+
+    /** The timer checking the progress while operations are pending. */
+    private Timer progressTimer;
+
+    /**
+     * <p>
+     * Create a status bar following the operations applied to an image.
+     * </p>
+     *
+     * @param image The image whose operations to follow.
+     */
+    public OperationStatusBar(EditableImage image) {
+        super(new BorderLayout(8, 0));
+        setBorder(BorderFactory.createEmptyBorder(2, 6, 2, 6));
+
+        label = new JLabel();
+        progressBar = new JProgressBar(0, 1000);
+        progressBar.setIndeterminate(true);
+        progressTimer = new Timer(PROGRESS_INTERVAL, e -> showProgress(image.getProgress()));
+        JButton cancelButton = new JButton(Andie.getText("operationCancelText"));
+        cancelButton.addActionListener(e -> image.cancel());
+
+        add(label, BorderLayout.WEST);
+        add(progressBar, BorderLayout.CENTER);
+        add(cancelButton, BorderLayout.EAST);
+        setVisible(false);
+
+        image.addOperationListener(this);
+    }
+
+    /**
+     * <p>
+     * Show or hide the status bar, and update the number of pending operations.
+     * </p>
+     *
+     * @param pending The number of operations queued or running.
+     */
+    public void operationsPending(int pending) {
+        label.setText(Andie.getText("operationsPendingText") + " " + pending);
+        setVisible(pending > 0);
+
+        if (pending > 0) {
+            progressTimer.start();
+        }
+        else {
+            progressTimer.stop();
+            showProgress(-1);
+        }
+    }
+
+    /**
+     * <p>
+     * Show the progress of the running operation on the progress bar.
+     * </p>
+     *
+     * @param progress The fraction of the operation done, or -1 if it is not known.
+     */
+    private void showProgress(double progress) {
+        if (progress < 0) {
+            progressBar.setIndeterminate(true);
+        }
+        else {
+            progressBar.setIndeterminate(false);
+            progressBar.setValue((int) Math.round(progress * progressBar.getMaximum()));
+        }
+    }
+
+    /**
+     * <p>
+     * Nothing to do when the image changes, as the {@link ImagePanel} redraws itself.
+     * </p>
+     */
+    public void imageChanged() {}
+
+    /**
+     * <p>
+     * Nothing to do when the pyramid is ready, as the {@link ImagePanel} redraws itself.
+     * </p>
+     */
+    public void pyramidChanged() {}
+}
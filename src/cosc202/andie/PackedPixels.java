@@ -0,0 +1,161 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+
+/**
+ * <p>
+ * Helpers for working on images as packed ARGB {@code int} arrays.
+ * </p>
+ *
+ * <p>
+ * Calling {@link BufferedImage#getRGB(int, int)} and {@link BufferedImage#setRGB(int, int, int)}
+ * for every pixel goes through the colour model each time, which is far slower than the maths
+ * most operations actually do. These helpers convert an image into a single {@code int[]} of
+ * non-premultiplied sRGB pixels (the same values {@code getRGB} returns), laid out row by row,
+ * and store such an array back into an image in one bulk call.
+ * </p>
+ *
+ * <p>
+ * Images that are already {@link BufferedImage#TYPE_INT_ARGB} with a plain, unshared raster are
+ * used directly: their backing {@link DataBufferInt} array is returned without copying, so any
+ * change made to it is a change to the image.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ * @version 1.0
+ */
+public class PackedPixels {
+
+    /** The bit masks of a packed ARGB pixel, in the order expected by {@link Raster#createPackedRaster}. */
+    private static final int[] ARGB_MASKS = {0x00FF0000, 0x0000FF00, 0x000000FF, 0xFF000000};
+
+    /**
+     * <p>
+     * PackedPixels only provides static helpers, so it should not be constructed.
+     * </p>
+     */
+    private PackedPixels() {}
+
+    /**
+     * <p>
+     * Check if an image stores its pixels as one packed ARGB {@code int[]} with no padding.
+     * </p>
+     *
+     * @param image The image to check.
+     * @return True if the backing array of the image can be used as a packed ARGB array.
+     */
+    public static boolean isPacked(BufferedImage image) {
+        if (image.getType() != BufferedImage.TYPE_INT_ARGB) {
+            return false;
+        }
+
+        WritableRaster raster = image.getRaster();
+        if (raster.getParent() != null || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0) {
+            return false;
+        }
+
+        DataBuffer buffer = raster.getDataBuffer();
+        SampleModel sampleModel = raster.getSampleModel();
+        return buffer instanceof DataBufferInt
+            && buffer.getNumBanks() == 1
+            && buffer.getOffset() == 0
+            && sampleModel instanceof SinglePixelPackedSampleModel
+            && ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride() == image.getWidth();
+    }
+
+    /**
+     * <p>
+     * Get the pixels of an image as a packed ARGB array.
+     * </p>
+     *
+     * <p>
+     * If the image {@link isPacked}, its own backing array is returned, so writing to the
+     * result changes the image. Otherwise a new array is filled with one bulk {@code getRGB} call.
+     * Callers that only read the pixels, or that always pass the array to {@link write}
+     * afterwards, do not need to care which case they got.
+     * </p>
+     *
+     * @param image The image to read.
+     * @return The pixels of the image, row by row, as non-premultiplied ARGB values.
+     */
+    public static int[] read(BufferedImage image) {
+        if (isPacked(image)) {
+            return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        return image.getRGB(0, 0, width, height, null, 0, width);
+    }
+
+    /**
+     * <p>
+     * Store a packed ARGB array back into an image.
+     * </p>
+     *
+     * <p>
+     * This does nothing if the array is already the backing array of the image, as returned
+     * by {@link read}.
+     * </p>
+     *
+     * @param image The image to write to.
+     * @param argb The pixels to store, row by row, with the same size as the image.
+     */
+    public static void write(BufferedImage image, int[] argb) {
+        if (isPacked(image) && ((DataBufferInt) image.getRaster().getDataBuffer()).getData() == argb) {
+            return;
+        }
+
+        int width = image.getWidth();
+        image.setRGB(0, 0, width, image.getHeight(), argb, 0, width);
+    }
+
+    /**
+     * <p>
+     * Create a new image of the same kind as {@code like}, holding the given pixels.
+     * </p>
+     *
+     * <p>
+     * When {@code like} is a packed ARGB image the array is wrapped without copying, so it must
+     * not be changed afterwards by the caller. Otherwise an image with the colour model of
+     * {@code like} is created and the pixels are stored into it in one bulk call, which gives
+     * the same result as calling {@code setRGB} on a copy of {@code like} for every pixel.
+     * </p>
+     *
+     * @param like The image whose colour model should be used.
+     * @param argb The pixels of the new image, row by row.
+     * @param width The width of the new image.
+     * @param height The height of the new image.
+     * @return A new image containing the given pixels.
+     */
+    public static BufferedImage create(BufferedImage like, int[] argb, int width, int height) {
+        if (like.getType() == BufferedImage.TYPE_INT_ARGB) {
+            return wrap(argb, width, height);
+        }
+
+        WritableRaster raster = like.getRaster().createCompatibleWritableRaster(width, height);
+        BufferedImage output = new BufferedImage(like.getColorModel(), raster, like.isAlphaPremultiplied(), null);
+        output.setRGB(0, 0, width, height, argb, 0, width);
+        return output;
+    }
+
+    /**
+     * <p>
+     * Wrap a packed ARGB array as a {@link BufferedImage#TYPE_INT_ARGB} image, without copying it.
+     * </p>
+     *
+     * @param argb The pixels of the image, row by row.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @return An image backed by the given array.
+     */
+    public static BufferedImage wrap(int[] argb, int width, int height) {
+        DataBufferInt buffer = new DataBufferInt(argb, width * height);
+        WritableRaster raster = Raster.createPackedRaster(buffer, width, height, width, ARGB_MASKS, null);
+        return new BufferedImage(ColorModel.getRGBdefault(), raster, false, null);
+    }
+}
@@ -0,0 +1,104 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+
+/**
+ * <p>
+ * Base class for {@link ImageOperation}s that change each pixel's colour on its own.
+ * </p>
+ *
+ * <p>
+ * A PointOperation describes itself as a {@link ColourLookup}, which is compiled once, the
+ * first time the operation is applied, and then run over the packed pixels in one tight loop.
+ * The alpha of each pixel is left unchanged.
+ * </p>
+ *
+ * <p>
+ * PointOperation is not itself serializable, so subclasses that are keep exactly the same
+ * serialized form as they had before they shared this class.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ * @version 1.0
+ */
+public abstract class PointOperation implements BandedOperation {
+
+    /** The compiled lookup, built the first time it is needed. */
+    private volatile ColourLookup lookup;
+
+    /**
+     * <p>
+     * Build the lookup that this operation applies to each pixel.
+     * </p>
+     *
+     * @return The compiled lookup.
+     */
+    protected abstract ColourLookup compile();
+
+    /**
+     * <p>
+     * Get the lookup that this operation applies to each pixel.
+     * </p>
+     *
+     * @return The compiled lookup.
+     */
+    public ColourLookup getLookup() {
+        ColourLookup compiled = lookup;
+        if (compiled == null) {
+            compiled = compile();
+            lookup = compiled;
+        }
+        return compiled;
+    }
+
+    /**
+     * <p>
+     * Apply the operation to an image.
+     * </p>
+     *
+     * <p>
+     * The pixels are changed in place, so the input image is returned.
+     * </p>
+     *
+     * @param input The image to apply the operation to.
+     * @return The resulting image.
+     */
+    public BufferedImage apply(BufferedImage input) {
+        int[] pixels = PackedPixels.read(input);
+        TileScheduler.run(this, pixels, pixels, input.getWidth(), input.getHeight());
+        PackedPixels.write(input, pixels);
+        return input;
+    }
+
+    /**
+     * <p>
+     * Get the number of rows above and below a band that this operation reads.
+     * </p>
+     *
+     * @return 0, as each pixel is changed on its own.
+     */
+    public int getHalo() {
+        return 0;
+    }
+
+    /**
+     * <p>
+     * Apply the lookup to the rows from {@code top} to {@code bottom}.
+     * </p>
+     *
+     * @param src The packed ARGB input pixels.
+     * @param dst The packed ARGB array to store the result in (may be {@code src}).
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param top The first row to compute.
+     * @param bottom One past the last row to compute.
+     */
+    public void applyRows(int[] src, int[] dst, int width, int height, int top, int bottom) {
+        getLookup().apply(src, dst, top * width, bottom * width);
+        OperationContext.current().rowsCompleted(bottom - top);
+    }
+}
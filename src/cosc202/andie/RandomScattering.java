@@ -1,7 +1,6 @@
 package cosc202.andie;
 
 import java.awt.image.*;
-import java.awt.*;
 import java.util.*;
 
 /**
@@ -14,6 +13,13 @@ import java.util.*;
  * Achieved by replacing each pixel with a random pixel in the radius.
  * </p>
  * 
+ * <p>
+ * Pixels are always picked from the unscattered input image. Each row draws its random numbers
+ * from its own generator, seeded from the operation's {@link seed} and the row number, so the
+ * rows can be scattered in any order (or on several cores by the {@link TileScheduler}) and
+ * replaying the same operation always gives the same image.
+ * </p>
+ * 
  * <p> 
  * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
  * </p>
@@ -21,11 +27,20 @@ import java.util.*;
  * @author Charlotte Williams
  * @version 1.0
  */
-public class RandomScattering implements ImageOperation, java.io.Serializable{
+public class RandomScattering implements BandedOperation, java.io.Serializable{
+
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = -974133630472574696L;
+
+    /** The largest radius that can be chosen, or read from a file. */
+    public static final int MAX_RADIUS = 100;
     
     /* User selected radius for selecting random pixels from */
     int radius;
 
+    /** The seed that the random generator for each row is derived from. */
+    private long seed;
+
     /**
      * <p>
      * Creates a RandomScattering operation based on a user selected radius size
@@ -35,6 +50,19 @@ public class RandomScattering implements ImageOperation, java.io.Serializable{
      */
     RandomScattering(int radius) {
         this.radius = radius;
+        this.seed = new Random().nextLong();
+    }
+
+    /**
+     * <p>
+     * Create random scattering, with the same seed so that it scatters the same way from the parameters saved by {@link writeParameters}.
+     * </p>
+     *
+     * @param params The saved parameters.
+     */
+    RandomScattering(OperationParameters params) {
+        this.radius = params.getInt(1, 1, 0, MAX_RADIUS);
+        this.seed = params.getLong(2, 0);
     }
 
     /**
@@ -46,49 +74,96 @@ public class RandomScattering implements ImageOperation, java.io.Serializable{
      * @return The resulting image with block averaging
      */
     public BufferedImage apply(BufferedImage input) {
-        for (int i = 0; i < input.getHeight(); i ++) {
-            for (int j = 0; j < input.getWidth(); j ++) {
-                int randHeight = getRandomHeight(i - radius, i + radius, input);
-                int randWidth = getRandomWidth(j - radius, j + radius, input);
-                Color col = new Color(input.getRGB(randWidth, randHeight), true);
-                input.setRGB(j, i, col.getRGB());
+        int height = input.getHeight();
+        int width = input.getWidth();
+        int[] src = PackedPixels.read(input);
+        int[] dst = new int[width * height];
+
+        TileScheduler.run(this, src, dst, width, height);
+        return PackedPixels.create(input, dst, width, height);
+    }
+
+    /**
+     * <p>
+     * Get the number of rows above and below a band that scattering reads.
+     * </p>
+     *
+     * @return The scattering radius.
+     */
+    public int getHalo() {
+        return radius;
+    }
+
+    /**
+     * <p>
+     * Scatter the rows from {@code top} to {@code bottom}.
+     * </p>
+     *
+     * @param src The packed ARGB input pixels.
+     * @param dst The packed ARGB array to store the result in.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param top The first row to compute.
+     * @param bottom One past the last row to compute.
+     */
+    public void applyRows(int[] src, int[] dst, int width, int height, int top, int bottom) {
+        OperationContext context = OperationContext.current();
+
+        for (int i = top; i < bottom; i ++) {
+            context.checkCancelled();
+            Random rand = new Random(seed ^ (i * 0x9E3779B97F4A7C15L));
+
+            for (int j = 0; j < width; j ++) {
+                int randHeight = getRandomCoordinate(rand, i, height);
+                int randWidth = getRandomCoordinate(rand, j, width);
+                dst[i * width + j] = src[randHeight * width + randWidth];
             }
-        }
 
-        return input;
+            context.rowsCompleted(1);
+        }
     }
 
     /**
      * <p>
-     * Method to get a random height that is within the specified radius and bounds of the image
+     * Method to get a random coordinate that is within the specified radius and bounds of the image
      * </p> 
      * 
-     * @param min minimum random value that can be returned
-     * @param max maximum random value that can be returned
-     * @return random value between min and max (inclusive)
+     * <p>
+     * Coordinates that would fall outside the image are instead picked at random from
+     * the {@link radius} pixels nearest that edge.
+     * </p>
+     * 
+     * @param rand The random generator to use
+     * @param centre The coordinate of the pixel being replaced
+     * @param length The width or height of the image
+     * @return random coordinate within {@link radius} of centre (inclusive)
      */
-    public int getRandomHeight(int min, int max, BufferedImage input) {
-        Random rand = new Random();
-        int test = rand.ints(min, max + 1).findFirst().getAsInt();
+    private int getRandomCoordinate(Random rand, int centre, int length) {
+        int test = centre - radius + rand.nextInt(2 * radius + 1);
         if (test < 0) test = 0 + rand.nextInt(radius + 1);
-        if (test > input.getHeight() - 1) test = (input.getHeight() -1) - rand.nextInt(radius + 1);
-        return test;
+        if (test > length - 1) test = (length - 1) - rand.nextInt(radius + 1);
+        return Math.min(Math.max(test, 0), length - 1);
     }
 
     /**
      * <p>
-     * Method to get a random width that is within the specified radius and bounds of the image
+     * Check whether the operation changes the image it is applied to.
      * </p>
-     * 
-     * @param min minimum random value that can be returned
-     * @param max maximum random value that can be returned
-     * @return random value between min and max (inclusive)
+     *
+     * @return False, as the result is written to a new pixel array.
      */
-    public int getRandomWidth(int min, int max, BufferedImage input) {
-        Random rand = new Random();
-        int test = rand.ints(min, max + 1).findFirst().getAsInt();
-        if (test < 0) test = 0 + rand.nextInt(radius + 1);
-        if (test > input.getWidth() - 1) test = (input.getWidth() - 1) - rand.nextInt(radius + 1);
-        return test;
+    public boolean mutatesInput() {
+        return false;
+    }
+
+    /**
+     * <p>
+     * Add the radius and seed to the parameters saved for this operation.
+     * </p>
+     *
+     * @param params The parameters to add to.
+     */
+    public void writeParameters(OperationParameters params) {
+        params.putInt(1, radius).putLong(2, seed);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,151 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+import java.lang.ref.*;
+import java.util.*;
+
+/**
+ * <p>
+ * The images that were on screen before each undo, kept so that redo does not have to recompute them.
+ * </p>
+ *
+ * <p>
+ * A RedoCache mirrors an {@link EditableImage}'s stack of undone operations: each undo pushes the
+ * image it replaced, and each redo pops it again. Entries are only held through {@link SoftReference}s,
+ * so the garbage collector can reclaim them when memory runs short, and the total size of the entries
+ * is kept under a cap by forgetting the ones furthest from being redone first. An entry that has been
+ * forgotten or reclaimed pops as null, and the operation is then recomputed instead.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ * @version 1.0
+ */
+public class RedoCache {
+
+    /** The most memory, in bytes, that the entries of each cache may use. */
+    private static long cap = Runtime.getRuntime().maxMemory() / 8;
+
+    /** The retained images, from the furthest redo to the next one; null once forgotten. */
+    private final List<SoftReference<BufferedImage>> results;
+
+    /** The size in bytes of each retained image, or 0 once forgotten. */
+    private final List<Long> sizes;
+
+    /** The total size of the retained images, in bytes. */
+    private long used;
+
+    /**
+     * <p>
+     * Create an empty redo cache.
+     * </p>
+     */
+    public RedoCache() {
+        results = new ArrayList<SoftReference<BufferedImage>>();
+        sizes = new ArrayList<Long>();
+        used = 0;
+    }
+
+    /**
+     * <p>
+     * Get the memory cap for the entries of each cache.
+     * </p>
+     *
+     * @return The cap, in bytes.
+     */
+    public static long getCap() {
+        return cap;
+    }
+
+    /**
+     * <p>
+     * Set the memory cap for the entries of each cache.
+     * </p>
+     *
+     * <p>
+     * A cap of 0 means that redo always recomputes.
+     * </p>
+     *
+     * @param bytes The cap, in bytes.
+     */
+    public static void setCap(long bytes) {
+        cap = Math.max(bytes, 0);
+    }
+
+    /**
+     * <p>
+     * Keep the image an undo is about to replace.
+     * </p>
+     *
+     * @param image The image after the operation being undone, or null if it is to be recomputed.
+     */
+    public void push(BufferedImage image) {
+        long bytes = image == null ? 0 : CheckpointCache.getBytes(image);
+        results.add(new SoftReference<BufferedImage>(image));
+        sizes.add(bytes);
+        used += bytes;
+
+        for (int i = 0; used > cap && i < results.size(); i++) {
+            forget(i);
+        }
+    }
+
+    /**
+     * <p>
+     * Take back the image for the operation about to be redone.
+     * </p>
+     *
+     * @return The image after the operation, or null if it has to be recomputed.
+     */
+    public BufferedImage pop() {
+        int last = results.size() - 1;
+        BufferedImage image = results.get(last) == null ? null : results.get(last).get();
+        forget(last);
+        results.remove(last);
+        sizes.remove(last);
+        return image;
+    }
+
+    /**
+     * <p>
+     * Forget every retained image, but keep one (empty) entry per undone operation.
+     * </p>
+     *
+     * <p>
+     * This is for when a different operation is applied, so the undone operations would now
+     * be redone on top of a different image.
+     * </p>
+     */
+    public void invalidate() {
+        for (int i = 0; i < results.size(); i++) {
+            forget(i);
+        }
+    }
+
+    /**
+     * <p>
+     * Remove every entry, for when the stack of undone operations is cleared.
+     * </p>
+     */
+    public void clear() {
+        results.clear();
+        sizes.clear();
+        used = 0;
+    }
+
+    /**
+     * <p>
+     * Forget the image at one position, keeping its place in the stack.
+     * </p>
+     *
+     * @param index The position of the entry.
+     */
+    private void forget(int index) {
+        used -= sizes.get(index);
+        sizes.set(index, 0L);
+        results.set(index, null);
+    }
+}
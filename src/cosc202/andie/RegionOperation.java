@@ -0,0 +1,38 @@
+package cosc202.andie;
+
+import java.awt.*;
+
+/**
+ * <p>
+ * Interface for {@link ImageOperation}s that only change a known part of the image.
+ * </p>
+ *
+ * <p>
+ * Operations such as drawing a shape leave every pixel outside the shape's bounds alone.
+ * Knowing this lets the {@link ImagePanel} update and repaint just that part of the view
+ * after the operation is applied, rather than the whole image.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ * @version 1.0
+ */
+public interface RegionOperation extends ImageOperation {
+
+    /**
+     * <p>
+     * Get the part of the image that applying this operation can change.
+     * </p>
+     *
+     * <p>
+     * The region may extend past the edges of the image. Applying the operation must not
+     * change the size of the image or any pixel outside the region.
+     * </p>
+     *
+     * @return The bounds of the pixels the operation may change, in image coordinates.
+     */
+    public Rectangle getRegion();
+}
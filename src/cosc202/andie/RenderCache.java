@@ -0,0 +1,528 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.security.*;
+import java.util.*;
+
+/**
+ * <p>
+ * Results of operation stacks kept on disk between sessions, so that reopening an image does not replay its operations.
+ * </p>
+ *
+ * <p>
+ * Each result is stored under a key made by hashing the bytes of the image file the original was
+ * decoded from, followed by each operation in turn as it is written by {@link OperationCodec}.
+ * The key of the first <i>n</i> operations is the hash of the key of the first <i>n</i> - 1 with
+ * the <i>n</i>th operation, so the keys of every prefix of a stack come from a single pass over it,
+ * and two stacks that start with the same operations on the same file share the keys of that start.
+ * As the key depends only on what the operations are, not when they were applied, a result saved
+ * in one session is found again in the next.
+ * </p>
+ *
+ * <p>
+ * The first key also hashes in {@link RENDER_VERSION}. This must be increased whenever any operation
+ * gives different pixels for the same parameters, or the way results are stored changes, so that
+ * results rendered by an older version of ANDIE are never used.
+ * </p>
+ *
+ * <p>
+ * Results are written as raw pixels, which take longer to read than nothing but far less time than
+ * replaying an expensive filter. They are written to a temporary file that is then renamed, so a
+ * result is never seen half written, even by another copy of ANDIE. The cache directory is kept
+ * within a size budget by deleting the results least recently used first.
+ * </p>
+ *
+ * <p>
+ * The cache only ever saves time. Any result that cannot be read or written is treated as missing.
+ * </p>
+ *
+ * <p>
+ * The keys of the results on disk are listed once and then kept in memory, so looking for a
+ * result does not touch the disk. Results stored by another copy of ANDIE running at the same
+ * time are only seen the next time ANDIE starts.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ * @version 1.0
+ */
+public class RenderCache {
+
+    /** The least replay time, in nanoseconds, that a result must save to be worth writing to disk. */
+    public static final long MIN_STORE_NANOS = 200L * 1000 * 1000;
+
+    /**
+     * The version of the operations' output and of the stored results, hashed into every key.
+     * Increase it whenever an operation renders differently, so that older results are ignored.
+     */
+    static final int RENDER_VERSION = 1;
+
+    /** The most ints read from a result at a time. */
+    private static final int READ_INTS = 1 << 18;
+
+    /** The first bytes of every cached result, "ARC1". */
+    private static final int MAGIC = 0x41524331;
+
+    /** The number of ints written before the pixels: the magic number, image type, width and height. */
+    private static final int HEADER_INTS = 4;
+
+    /** The ending of the name of each cached result. */
+    private static final String SUFFIX = ".px";
+
+    /** The directory the results are kept in. */
+    private static Path directory = Paths.get(System.getProperty("user.home"), ".andie", "cache");
+
+    /** The most disk space, in bytes, that the cached results may use. */
+    private static long budget = 1L << 30;
+
+    /** The keys of the results known to be in the directory, or null until it has been listed. */
+    private static Set<String> known;
+
+    /**
+     * <p>
+     * RenderCache only provides static methods, so it should not be constructed.
+     * </p>
+     */
+    private RenderCache() {}
+
+    /**
+     * <p>
+     * Get the directory the results are kept in.
+     * </p>
+     *
+     * @return The cache directory.
+     */
+    public static Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * <p>
+     * Set the directory the results are kept in.
+     * </p>
+     *
+     * <p>
+     * The default is <code>.andie/cache</code> in the user's home directory.
+     * </p>
+     *
+     * @param dir The cache directory, which is created when the first result is stored.
+     */
+    public static synchronized void setDirectory(Path dir) {
+        directory = dir;
+        known = null;
+    }
+
+    /**
+     * <p>
+     * Get the most disk space the cached results may use.
+     * </p>
+     *
+     * @return The budget in bytes.
+     */
+    public static long getBudget() {
+        return budget;
+    }
+
+    /**
+     * <p>
+     * Set the most disk space the cached results may use.
+     * </p>
+     *
+     * <p>
+     * The default is 1GB. The budget is enforced each time a result is stored.
+     * </p>
+     *
+     * @param bytes The new budget in bytes.
+     */
+    public static void setBudget(long bytes) {
+        budget = bytes;
+    }
+
+    /**
+     * <p>
+     * Hash the contents of an image file, as the start of the keys of its operations.
+     * </p>
+     *
+     * @param file The image file.
+     * @return The hash of the file, or null if it cannot be read.
+     */
+    public static byte[] hashFile(Path file) {
+        MessageDigest digest = newDigest();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        catch (IOException ex) {
+            return null;
+        }
+        return digest.digest();
+    }
+
+    /**
+     * <p>
+     * Work out the key of each prefix of an operation stack.
+     * </p>
+     *
+     * @param fileHash The hash of the image file, from {@link hashFile}.
+     * @param ops The operations, in the order they are applied.
+     * @return The key of the first <i>n</i> operations at index <i>n</i> - 1. If an operation
+     *         cannot be encoded, the list stops before it, as no later prefix can be cached.
+     */
+    public static List<String> getKeys(byte[] fileHash, List<ImageOperation> ops) {
+        return getKeys(fileHash, ops, RENDER_VERSION);
+    }
+
+    /**
+     * <p>
+     * Work out the key of each prefix of an operation stack, as rendered by a version of ANDIE.
+     * </p>
+     *
+     * @param fileHash The hash of the image file, from {@link hashFile}.
+     * @param ops The operations, in the order they are applied.
+     * @param version The {@link RENDER_VERSION} to make the keys for.
+     * @return The key of the first <i>n</i> operations at index <i>n</i> - 1.
+     */
+    static List<String> getKeys(byte[] fileHash, List<ImageOperation> ops, int version) {
+        List<String> keys = new ArrayList<String>();
+        MessageDigest root = newDigest();
+        root.update(ByteBuffer.allocate(4).putInt(version).array());
+        root.update(fileHash);
+        byte[] hash = root.digest();
+
+        for (ImageOperation op: ops) {
+            MessageDigest digest = newDigest();
+            digest.update(hash);
+            try {
+                digest.update(OperationCodec.encode(op));
+            }
+            catch (NotSerializableException ex) {
+                break;
+            }
+            hash = digest.digest();
+            keys.add(toHex(hash));
+        }
+        return keys;
+    }
+
+    /**
+     * <p>
+     * Find the deepest prefix of a stack with a cached result.
+     * </p>
+     *
+     * @param keys The key of each prefix, from {@link getKeys}.
+     * @param above Only prefixes longer than this are looked for, as shorter ones are no use to the caller.
+     * @return The number of operations in the deepest cached prefix, or 0 if none is longer than {@code above}.
+     */
+    public static int getNearest(List<String> keys, int above) {
+        for (int depth = keys.size(); depth > above; depth--) {
+            if (isKnown(keys.get(depth - 1))) {
+                return depth;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * <p>
+     * Check whether an image can be cached.
+     * </p>
+     *
+     * @param image The image to check.
+     * @return True if the image holds one packed RGB or ARGB int per pixel.
+     */
+    public static boolean canStore(BufferedImage image) {
+        return image.getType() == BufferedImage.TYPE_INT_ARGB || image.getType() == BufferedImage.TYPE_INT_RGB;
+    }
+
+    /**
+     * <p>
+     * Read a cached result, and mark it as recently used.
+     * </p>
+     *
+     * @param key The key of the result.
+     * @return A new image identical to the one stored, or null if there is no readable result under the key.
+     */
+    public static BufferedImage load(String key) {
+        Path path = getPath(key);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_INTS * 4);
+            readFully(channel, header, 0);
+            header.flip();
+            int magic = header.getInt();
+            int type = header.getInt();
+            int width = header.getInt();
+            int height = header.getInt();
+            if (magic != MAGIC || (type != BufferedImage.TYPE_INT_ARGB && type != BufferedImage.TYPE_INT_RGB)
+                    || width <= 0 || height <= 0 || channel.size() != (HEADER_INTS + (long) width * height) * 4) {
+                throw new IOException("Damaged cache entry");
+            }
+
+            // The pixels are read through a small buffer rather than mapped, so nothing holds on to
+            // the file once it is closed, and a damaged result can be deleted straight away.
+            BufferedImage image = new BufferedImage(width, height, type);
+            int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(Math.min(data.length, READ_INTS) * 4);
+            long position = HEADER_INTS * 4L;
+            for (int start = 0; start < data.length; start += READ_INTS) {
+                int count = Math.min(READ_INTS, data.length - start);
+                buffer.clear();
+                buffer.limit(count * 4);
+                readFully(channel, buffer, position);
+                buffer.flip();
+                buffer.asIntBuffer().get(data, start, count);
+                position += count * 4L;
+            }
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            return image;
+        }
+        catch (NoSuchFileException ex) {
+            setKnown(key, false);
+            return null;
+        }
+        catch (IOException | RuntimeException ex) {
+            setKnown(key, false);
+            try {
+                Files.deleteIfExists(path);
+            }
+            catch (IOException ignored) {
+                // It will be replaced or evicted later.
+            }
+            return null;
+        }
+    }
+
+    /**
+     * <p>
+     * Store a result, then evict the least recently used results until the cache fits its budget.
+     * </p>
+     *
+     * @param key The key of the result.
+     * @param image The image to store, which must satisfy {@link canStore}.
+     */
+    public static void store(String key, BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (!canStore(image) || (HEADER_INTS + (long) width * height) * 4 > budget) {
+            return;
+        }
+
+        Path path = getPath(key);
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, key, ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(width, HEADER_INTS) * 4);
+                buffer.putInt(MAGIC).putInt(image.getType()).putInt(width).putInt(height).flip();
+                writeFully(channel, buffer);
+
+                // Rows are copied out one at a time, so a large image is never copied whole onto the heap.
+                WritableRaster raster = image.getRaster();
+                int[] row = new int[width];
+                for (int y = 0; y < height; y++) {
+                    raster.getDataElements(0, y, width, 1, row);
+                    buffer.clear();
+                    buffer.asIntBuffer().put(row);
+                    buffer.limit(width * 4);
+                    writeFully(channel, buffer);
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            temp = null;
+            setKnown(key, true);
+            trim();
+        }
+        catch (IOException | UncheckedIOException ex) {
+            // Without room for the result, it is just replayed again next time.
+        }
+        finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                }
+                catch (IOException ignored) {
+                    // Nothing more can be done.
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Delete the least recently used results until the cache fits its budget.
+     * </p>
+     *
+     * @throws IOException If the cache directory cannot be listed.
+     */
+    private static synchronized void trim() throws IOException {
+        List<Path> entries = new ArrayList<Path>();
+        Map<Path, BasicFileAttributes> attributes = new HashMap<Path, BasicFileAttributes>();
+        long used = 0;
+
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path entry: dir) {
+                BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+                entries.add(entry);
+                attributes.put(entry, attrs);
+                used += attrs.size();
+            }
+        }
+
+        entries.sort(Comparator.comparing(entry -> attributes.get(entry).lastModifiedTime()));
+        for (Path entry: entries) {
+            if (used <= budget) {
+                break;
+            }
+            if (Files.deleteIfExists(entry)) {
+                used -= attributes.get(entry).size();
+            }
+            setKnown(getKey(entry), false);
+        }
+    }
+
+    /**
+     * <p>
+     * Check whether a result is known to be in the cache, listing the directory the first time.
+     * </p>
+     *
+     * @param key The key of the result.
+     * @return True if a result has been stored under the key and not since found missing or evicted.
+     */
+    private static synchronized boolean isKnown(String key) {
+        if (known == null) {
+            known = new HashSet<String>();
+            try (DirectoryStream<Path> dir = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+                for (Path entry: dir) {
+                    known.add(getKey(entry));
+                }
+            }
+            catch (IOException ex) {
+                // Until the directory is created, nothing is cached.
+            }
+        }
+        return known.contains(key);
+    }
+
+    /**
+     * <p>
+     * Record whether a result is in the cache.
+     * </p>
+     *
+     * @param key The key of the result.
+     * @param present True if the result has just been stored, false if it has gone.
+     */
+    private static synchronized void setKnown(String key, boolean present) {
+        // Until the keys are first needed, the directory has not been listed, so there is nothing to update.
+        if (known != null) {
+            if (present) {
+                known.add(key);
+            }
+            else {
+                known.remove(key);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Get the key a result is stored under from its file.
+     * </p>
+     *
+     * @param path The file of the result.
+     * @return The key of the result.
+     */
+    private static String getKey(Path path) {
+        String name = path.getFileName().toString();
+        return name.substring(0, name.length() - SUFFIX.length());
+    }
+
+    /**
+     * <p>
+     * Fill a buffer from a channel, starting at a position in the file.
+     * </p>
+     *
+     * @param channel The channel to read from.
+     * @param buffer The buffer to fill, from its position to its limit.
+     * @param position The position in the file to start reading at.
+     * @throws IOException If the channel cannot be read, or ends before the buffer is full.
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long offset = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Truncated cache entry");
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Write the whole of a buffer to a channel.
+     * </p>
+     *
+     * @param channel The channel to write to.
+     * @param buffer The bytes to write, from its position to its limit.
+     * @throws IOException If the channel cannot be written.
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * <p>
+     * Get the file a result is stored in.
+     * </p>
+     *
+     * @param key The key of the result.
+     * @return The path of the result in the cache directory.
+     */
+    private static Path getPath(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    /**
+     * <p>
+     * Create the hash function used for keys.
+     * </p>
+     *
+     * @return A new SHA-256 digest.
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException ex) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * <p>
+     * Write a hash as hexadecimal, for use in a file name.
+     * </p>
+     *
+     * @param hash The hash.
+     * @return The hash as lower case hexadecimal digits.
+     */
+    private static String toHex(byte[] hash) {
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b: hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -17,6 +17,12 @@ import java.awt.image.*;
  */
 public class Resize implements ImageOperation, java.io.Serializable {
 
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = -8886703272848063385L;
+
+    /** The most pixels across or down that a resized image may have. */
+    public static final int MAX_SIDE = 10000;
+
     /** 
      * <p>
      * The scale for the size of the new image, relative to its original size. 
@@ -37,6 +43,17 @@ public class Resize implements ImageOperation, java.io.Serializable {
         this.scale = scale;
     }
 
+    /**
+     * <p>
+     * Create a resize from the parameters saved by {@link writeParameters}.
+     * </p>
+     *
+     * @param params The saved parameters.
+     */
+    Resize(OperationParameters params) {
+        this(params.getDouble(1, 100, Double.MIN_VALUE, 100.0 * MAX_SIDE));
+    }
+
     /**
      *<p>
      * Resize the image based on input scale.
@@ -44,10 +61,14 @@ public class Resize implements ImageOperation, java.io.Serializable {
      * 
      * @param input The image to be resized.
      * @return The resulting resized image.
+     * @throws IllegalArgumentException If the resized image would have no pixels, or a side longer than {@link MAX_SIDE}.
      */
     public BufferedImage apply(BufferedImage input) {
         int newWidth = (int) (input.getWidth() * scale / 100);
         int newHeight = (int) (input.getHeight() * scale / 100);
+        if (newWidth < 1 || newHeight < 1 || newWidth > MAX_SIDE || newHeight > MAX_SIDE) {
+            throw new IllegalArgumentException("Cannot resize to " + newWidth + "x" + newHeight);
+        }
         BufferedImage output = new BufferedImage(newWidth, newHeight, input.getType());
         Graphics2D G1 = output.createGraphics();
         
@@ -56,4 +77,26 @@ public class Resize implements ImageOperation, java.io.Serializable {
 
         return output;            
     }
-}
\ No newline at end of file
+
+    /**
+     * <p>
+     * Check whether the resize changes the image it is applied to.
+     * </p>
+     *
+     * @return False, as the image is drawn into a new one of the new size.
+     */
+    public boolean mutatesInput() {
+        return false;
+    }
+
+    /**
+     * <p>
+     * Add the scale to the parameters saved for this operation.
+     * </p>
+     *
+     * @param params The parameters to add to.
+     */
+    public void writeParameters(OperationParameters params) {
+        params.putDouble(1, scale);
+    }
+}
@@ -16,6 +16,9 @@ import java.awt.image.*;
  */
 public class Rotate180 implements ImageOperation, java.io.Serializable {
 
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = 2495388760230767630L;
+
     /**
      *<p>
      * Rotate the image 180 degrees.
@@ -29,4 +32,15 @@ public class Rotate180 implements ImageOperation, java.io.Serializable {
         BufferedImage temp = rotateLeft.apply(input); 
         return rotateLeft.apply(temp);
     }
-}
\ No newline at end of file
+
+    /**
+     * <p>
+     * Check whether the rotation changes the image it is applied to.
+     * </p>
+     *
+     * @return False, as the pixels are copied into a new, rotated image.
+     */
+    public boolean mutatesInput() {
+        return false;
+    }
+}
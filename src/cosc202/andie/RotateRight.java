@@ -16,6 +16,9 @@ import java.awt.image.*;
  */
 public class RotateRight implements ImageOperation, java.io.Serializable {
 
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = -1715603363387714260L;
+
     /**
      * <p>
      * Rotate the image to the right 90 degrees.
@@ -44,4 +47,15 @@ public class RotateRight implements ImageOperation, java.io.Serializable {
 
         return output;
     }
-}
\ No newline at end of file
+
+    /**
+     * <p>
+     * Check whether the rotation changes the image it is applied to.
+     * </p>
+     *
+     * @return False, as the pixels are copied into a new, rotated image.
+     */
+    public boolean mutatesInput() {
+        return false;
+    }
+}
@@ -0,0 +1,305 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+import java.io.*;
+import java.lang.ref.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+/**
+ * <p>
+ * A copy of an image's pixels kept off the Java heap, in a scratch file.
+ * </p>
+ *
+ * <p>
+ * Images kept for a long time, such as the snapshots in a {@link CheckpointCache}, add to the
+ * work the garbage collector does on every full collection while they are on the heap, however
+ * rarely they are used. A ScratchImage copies the raw contents of the image's data buffer into a
+ * temporary file with positional reads and writes through a small direct buffer, so the pixels
+ * live in the operating system's page cache instead, and can be written out to disk under memory
+ * pressure. Nothing is mapped, so once the file is closed its pages and disk blocks are released
+ * straight away rather than when a mapping is garbage collected. Only the image's small colour
+ * and sample models stay on the heap. {@link restore} gives back an image identical to the one
+ * stored, with the same type.
+ * </p>
+ *
+ * <p>
+ * The file is deleted when the ScratchImage is {@link close}d or garbage collected.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ * @version 1.0
+ */
+public class ScratchImage {
+
+    /** The buffer every image's pixels pass through on their way to or from its file, a chunk at a time. */
+    private static final ByteBuffer transferBuffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.nativeOrder());
+
+    /** Closes the scratch files of images that are garbage collected without being closed. */
+    private static final Cleaner cleaner = Cleaner.create();
+
+    /** The colour model of the stored image. */
+    private final ColorModel colorModel;
+
+    /** The layout of the stored image's pixels. */
+    private final SampleModel sampleModel;
+
+    /** The number of banks in the stored image's data buffer. */
+    private final int banks;
+
+    /** The number of bytes in each bank. */
+    private final long bankBytes;
+
+    /** The scratch file holding each bank in turn. */
+    private final Channel channel;
+
+    /**
+     * <p>
+     * Copy an image into a new scratch file.
+     * </p>
+     *
+     * @param image The image to store, which must use an int, short or byte data buffer (see {@link canStore}).
+     * @throws UncheckedIOException If the scratch file cannot be written.
+     */
+    public ScratchImage(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        if (!canStore(image)) {
+            throw new IllegalArgumentException("Cannot store a raster of type " + raster.getClass().getSimpleName());
+        }
+
+        DataBuffer buffer = raster.getDataBuffer();
+        this.colorModel = image.getColorModel();
+        this.sampleModel = raster.getSampleModel();
+        this.banks = buffer.getNumBanks();
+        this.bankBytes = (long) buffer.getSize() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+        this.channel = new Channel();
+        cleaner.register(this, channel);
+
+        try {
+            channel.open();
+            for (int bank = 0; bank < banks; bank++) {
+                transfer(buffer, bank, true);
+            }
+        }
+        catch (IOException ex) {
+            channel.run();
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * <p>
+     * Check whether an image can be stored.
+     * </p>
+     *
+     * <p>
+     * The image must be the whole of its raster, rather than part of a larger one, and its data
+     * buffer must hold ints, shorts or bytes. Every image that ANDIE opens or creates does.
+     * </p>
+     *
+     * @param image The image to check.
+     * @return True if a ScratchImage can be made from the image.
+     */
+    public static boolean canStore(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        return raster.getParent() == null && raster.getMinX() == 0 && raster.getMinY() == 0
+            && (buffer instanceof DataBufferInt || buffer instanceof DataBufferUShort
+                || buffer instanceof DataBufferShort || buffer instanceof DataBufferByte);
+    }
+
+    /**
+     * <p>
+     * Make a new on-heap image from the stored pixels.
+     * </p>
+     *
+     * @return An image identical to the one stored, which the caller may change freely.
+     * @throws UncheckedIOException If the scratch file cannot be read.
+     */
+    public synchronized BufferedImage restore() {
+        WritableRaster raster = Raster.createWritableRaster(sampleModel, null);
+        try {
+            for (int bank = 0; bank < banks; bank++) {
+                transfer(raster.getDataBuffer(), bank, false);
+            }
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * <p>
+     * Get the size of the stored pixels.
+     * </p>
+     *
+     * @return The size of the scratch file, in bytes.
+     */
+    public long getBytes() {
+        return bankBytes * banks;
+    }
+
+    /**
+     * <p>
+     * Release the scratch file. The image must not be restored afterwards.
+     * </p>
+     */
+    public void close() {
+        channel.run();
+    }
+
+    /**
+     * <p>
+     * Copy one bank of a data buffer to or from its place in the file, a chunk at a time.
+     * </p>
+     *
+     * @param buffer The data buffer.
+     * @param bank The bank to copy.
+     * @param write True to copy the bank into the file, false to copy it out.
+     * @throws IOException If the file cannot be written or read.
+     */
+    private void transfer(DataBuffer buffer, int bank, boolean write) throws IOException {
+        int elementBytes = DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+        int elementsPerChunk = transferBuffer.capacity() / elementBytes;
+        int elements = buffer.getSize();
+        FileChannel file = channel.get();
+
+        synchronized (transferBuffer) {
+            for (int start = 0; start < elements; start += elementsPerChunk) {
+                int count = Math.min(elementsPerChunk, elements - start);
+                long position = bank * bankBytes + (long) start * elementBytes;
+                transferBuffer.clear().limit(count * elementBytes);
+
+                if (write) {
+                    copyToBuffer(buffer, bank, start, count);
+                    while (transferBuffer.hasRemaining()) {
+                        position += file.write(transferBuffer, position);
+                    }
+                }
+                else {
+                    while (transferBuffer.hasRemaining()) {
+                        int read = file.read(transferBuffer, position);
+                        if (read < 0) {
+                            throw new EOFException("The scratch file is shorter than the image");
+                        }
+                        position += read;
+                    }
+                    transferBuffer.flip();
+                    copyFromBuffer(buffer, bank, start, count);
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Copy part of a bank into the transfer buffer.
+     * </p>
+     *
+     * @param buffer The data buffer.
+     * @param bank The bank to copy from.
+     * @param start The first element to copy.
+     * @param count The number of elements to copy.
+     */
+    private static void copyToBuffer(DataBuffer buffer, int bank, int start, int count) {
+        if (buffer instanceof DataBufferInt) {
+            transferBuffer.asIntBuffer().put(((DataBufferInt) buffer).getData(bank), start, count);
+        }
+        else if (buffer instanceof DataBufferUShort) {
+            transferBuffer.asShortBuffer().put(((DataBufferUShort) buffer).getData(bank), start, count);
+        }
+        else if (buffer instanceof DataBufferShort) {
+            transferBuffer.asShortBuffer().put(((DataBufferShort) buffer).getData(bank), start, count);
+        }
+        else {
+            transferBuffer.duplicate().put(((DataBufferByte) buffer).getData(bank), start, count);
+        }
+    }
+
+    /**
+     * <p>
+     * Copy part of a bank out of the transfer buffer.
+     * </p>
+     *
+     * @param buffer The data buffer.
+     * @param bank The bank to copy to.
+     * @param start The first element to copy.
+     * @param count The number of elements to copy.
+     */
+    private static void copyFromBuffer(DataBuffer buffer, int bank, int start, int count) {
+        if (buffer instanceof DataBufferInt) {
+            transferBuffer.asIntBuffer().get(((DataBufferInt) buffer).getData(bank), start, count);
+        }
+        else if (buffer instanceof DataBufferUShort) {
+            transferBuffer.asShortBuffer().get(((DataBufferUShort) buffer).getData(bank), start, count);
+        }
+        else if (buffer instanceof DataBufferShort) {
+            transferBuffer.asShortBuffer().get(((DataBufferShort) buffer).getData(bank), start, count);
+        }
+        else {
+            transferBuffer.duplicate().get(((DataBufferByte) buffer).getData(bank), start, count);
+        }
+    }
+
+    /**
+     * <p>
+     * The scratch file of an image, kept apart from the image so that it can be closed once the image is unreachable.
+     * </p>
+     */
+    private static class Channel implements Runnable {
+
+        /** The open scratch file, or null once it is closed. */
+        private FileChannel channel;
+
+        /**
+         * <p>
+         * Create a new scratch file, which is deleted when it is closed.
+         * </p>
+         *
+         * @throws IOException If the file cannot be created.
+         */
+        void open() throws IOException {
+            Path path = Files.createTempFile("andie-snapshot", ".tmp");
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+            path.toFile().deleteOnExit();
+        }
+
+        /**
+         * <p>
+         * Get the open scratch file.
+         * </p>
+         *
+         * @return The file's channel.
+         * @throws ClosedChannelException If the file has been closed.
+         */
+        FileChannel get() throws ClosedChannelException {
+            if (channel == null) {
+                throw new ClosedChannelException();
+            }
+            return channel;
+        }
+
+        /**
+         * <p>
+         * Close and delete the file.
+         * </p>
+         */
+        public synchronized void run() {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+            catch (IOException ex) {
+                // The file is also deleted on exit, so there is nothing more to do.
+            }
+            channel = null;
+        }
+    }
+}
@@ -20,6 +20,9 @@ import java.awt.image.*;
  * @version 1.0
  */
 public class SharpenFilter implements ImageOperation, java.io.Serializable {
+
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = -3846747634817406169L;
     
     /**
      * <p>
@@ -45,4 +48,15 @@ public class SharpenFilter implements ImageOperation, java.io.Serializable {
         ConvolutionOperation convOp = new ConvolutionOperation(kernel);
         return convOp.apply(input, false, -1);
     }
-}
\ No newline at end of file
+
+    /**
+     * <p>
+     * Check whether the filter changes the image it is applied to.
+     * </p>
+     *
+     * @return False, as the kernel is convolved into a new image.
+     */
+    public boolean mutatesInput() {
+        return false;
+    }
+}
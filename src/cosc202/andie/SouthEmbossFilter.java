@@ -20,6 +20,9 @@ import java.awt.image.*;
  */
 public class SouthEmbossFilter implements ImageOperation, java.io.Serializable {
 
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = 94944896776085955L;
+
     /**
      * <p>
      * Apply a Southwest Emboss Filter.
@@ -43,4 +46,15 @@ public class SouthEmbossFilter implements ImageOperation, java.io.Serializable {
         ConvolutionOperation convOp = new ConvolutionOperation(kernel);
         return convOp.apply(input, true, 1);
     }
-}
\ No newline at end of file
+
+    /**
+     * <p>
+     * Check whether the filter changes the image it is applied to.
+     * </p>
+     *
+     * @return False, as the kernel is convolved into a new image.
+     */
+    public boolean mutatesInput() {
+        return false;
+    }
+}
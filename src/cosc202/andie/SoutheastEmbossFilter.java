@@ -20,6 +20,9 @@ import java.awt.image.*;
  */
 public class SoutheastEmbossFilter implements ImageOperation, java.io.Serializable {
 
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = -2570855161905267712L;
+
     /**
      * <p>
      * Apply a Southeast Emboss Filter.
@@ -43,4 +46,15 @@ public class SoutheastEmbossFilter implements ImageOperation, java.io.Serializab
         ConvolutionOperation convOp = new ConvolutionOperation(kernel);
         return convOp.apply(input, true, 1);
     }
-}
\ No newline at end of file
+
+    /**
+     * <p>
+     * Check whether the filter changes the image it is applied to.
+     * </p>
+     *
+     * @return False, as the kernel is convolved into a new image.
+     */
+    public boolean mutatesInput() {
+        return false;
+    }
+}
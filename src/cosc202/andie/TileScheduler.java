@@ -0,0 +1,268 @@
+package cosc202.andie;
+
+import java.util.concurrent.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+/**
+ * <p>
+ * Runs {@link BandedOperation}s over an image on several cores.
+ * </p>
+ *
+ * <p>
+ * The image is split into horizontal bands of whole rows, which are computed as separate
+ * tasks on a single {@link ForkJoinPool} shared by all operations. Each band reads the rows
+ * it needs straight from the shared input array, including the {@link BandedOperation#getHalo}
+ * rows above and below it, so no pixels are copied between bands. The band height grows with
+ * the halo, so that for large filters the rows read twice at band edges stay a small fraction
+ * of the work.
+ * </p>
+ *
+ * <p>
+ * As every output row is computed by exactly the same code whichever band it falls in,
+ * the result is identical to running the operation over the whole image on one thread.
+ * </p>
+ *
+ * <p>
+ * The {@link OperationContext} of the calling thread is made current on the threads computing
+ * each band, so operations can check for cancellation and report progress from any band.
+ * The rows of each call to {@link run} are added to the context's total.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ * @version 1.0
+ */
+public class TileScheduler {
+
+    /** The pool shared by all operations. Its worker threads are daemons, so it never keeps ANDIE running. */
+    private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /** Images with fewer pixels than this are computed on the calling thread, as splitting them costs more than it saves. */
+    private static final int MIN_PARALLEL_PIXELS = 64 * 1024;
+
+    /** The smallest number of rows in a band. */
+    private static final int MIN_BAND_ROWS = 8;
+
+    /** The number of bands to aim for per thread, so that uneven bands still balance out. */
+    private static final int BANDS_PER_THREAD = 4;
+
+    /** Whether operations may be split across threads at all. */
+    private static boolean parallel = true;
+
+    /**
+     * <p>
+     * TileScheduler only provides static methods, so it should not be constructed.
+     * </p>
+     */
+    private TileScheduler() {}
+
+    /**
+     * <p>
+     * Enable or disable running operations on several threads.
+     * </p>
+     *
+     * <p>
+     * With parallelism disabled every operation runs as one band on the calling thread.
+     * This is mostly useful for checking that both paths give the same result.
+     * </p>
+     *
+     * @param enabled True to split operations across threads, false to run them serially.
+     */
+    public static void setParallel(boolean enabled) {
+        parallel = enabled;
+    }
+
+    /**
+     * <p>
+     * Check if operations are being split across threads.
+     * </p>
+     *
+     * @return True if operations may run on several threads.
+     */
+    public static boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * <p>
+     * Apply a {@link BandedOperation} to every row of an image.
+     * </p>
+     *
+     * <p>
+     * This returns once every row of {@code dst} has been computed.
+     * </p>
+     *
+     * @param op The operation to apply.
+     * @param src The packed ARGB input pixels.
+     * @param dst The packed ARGB array to store the result in; may be {@code src} if the halo is 0.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @throws CancellationException If the current {@link OperationContext} is cancelled.
+     */
+    public static void run(BandedOperation op, int[] src, int[] dst, int width, int height) {
+        OperationContext context = OperationContext.current();
+        int bandRows = getBandRows(op.getHalo(), width, height);
+        context.rowsStarted(height);
+
+        if (bandRows >= height) {
+            op.applyRows(src, dst, width, height, 0, height);
+        }
+        else {
+            pool.invoke(new Band(op, src, dst, width, height, 0, height, bandRows, context));
+        }
+    }
+
+    /**
+     * <p>
+     * Run a task for every index from 0 to {@code count - 1}, spread across the shared pool.
+     * </p>
+     *
+     * <p>
+     * This is for work that does not fit the band-of-rows model, such as filtering whole columns.
+     * The tasks must be independent of each other, as they may run in any order.
+     * </p>
+     *
+     * <p>
+     * The current {@link OperationContext} is checked for cancellation before each index.
+     * </p>
+     *
+     * @param count The number of indices.
+     * @param task The task to run for each index.
+     * @throws CancellationException If the current {@link OperationContext} is cancelled.
+     */
+    public static void forEach(int count, IntConsumer task) {
+        OperationContext context = OperationContext.current();
+
+        if (!parallel || count < 2 || pool.getParallelism() < 2) {
+            for (int i = 0; i < count; i++) {
+                context.checkCancelled();
+                task.accept(i);
+            }
+        }
+        else {
+            pool.submit(() -> IntStream.range(0, count).parallel().forEach(i -> {
+                OperationContext previous = OperationContext.enter(context);
+                try {
+                    context.checkCancelled();
+                    task.accept(i);
+                }
+                finally {
+                    OperationContext.exit(previous);
+                }
+            })).join();
+        }
+    }
+
+    /**
+     * <p>
+     * Work out how many rows each band of an image should have.
+     * </p>
+     *
+     * @param halo The halo of the operation being applied.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @return The number of rows per band, or at least {@code height} if the image should not be split.
+     */
+    private static int getBandRows(int halo, int width, int height) {
+        if (!parallel || (long) width * height < MIN_PARALLEL_PIXELS || pool.getParallelism() < 2) {
+            return height;
+        }
+
+        int bands = pool.getParallelism() * BANDS_PER_THREAD;
+        int rows = (height + bands - 1) / bands;
+        return Math.max(rows, Math.max(MIN_BAND_ROWS, 4 * halo));
+    }
+
+    /**
+     * <p>
+     * A task computing a range of rows, split in two until the range is no more than one band.
+     * </p>
+     */
+    private static class Band extends RecursiveAction {
+
+        /** Serialization version of this task. */
+        private static final long serialVersionUID = 465137893105058272L;
+
+        /** The operation being applied. */
+        private final BandedOperation op;
+
+        /** The packed ARGB input pixels. */
+        private final int[] src;
+
+        /** The packed ARGB output pixels. */
+        private final int[] dst;
+
+        /** The width of the image. */
+        private final int width;
+
+        /** The height of the image. */
+        private final int height;
+
+        /** The first row of this task. */
+        private final int top;
+
+        /** One past the last row of this task. */
+        private final int bottom;
+
+        /** The largest number of rows to compute without splitting further. */
+        private final int bandRows;
+
+        /** The context of the operation being applied. */
+        private final OperationContext context;
+
+        /**
+         * <p>
+         * Create a task for the rows from {@code top} to {@code bottom}.
+         * </p>
+         *
+         * @param op The operation being applied.
+         * @param src The packed ARGB input pixels.
+         * @param dst The packed ARGB output pixels.
+         * @param width The width of the image.
+         * @param height The height of the image.
+         * @param top The first row of this task.
+         * @param bottom One past the last row of this task.
+         * @param bandRows The largest number of rows to compute without splitting further.
+         * @param context The context of the operation being applied.
+         */
+        Band(BandedOperation op, int[] src, int[] dst, int width, int height, int top, int bottom, int bandRows, OperationContext context) {
+            this.op = op;
+            this.src = src;
+            this.dst = dst;
+            this.width = width;
+            this.height = height;
+            this.top = top;
+            this.bottom = bottom;
+            this.bandRows = bandRows;
+            this.context = context;
+        }
+
+        /**
+         * <p>
+         * Compute the rows of this task, or split it into two halves.
+         * </p>
+         */
+        @Override
+        protected void compute() {
+            if (bottom - top <= bandRows) {
+                OperationContext previous = OperationContext.enter(context);
+                try {
+                    context.checkCancelled();
+                    op.applyRows(src, dst, width, height, top, bottom);
+                }
+                finally {
+                    OperationContext.exit(previous);
+                }
+                return;
+            }
+
+            int middle = top + (bottom - top) / 2;
+            invokeAll(new Band(op, src, dst, width, height, top, middle, bandRows, context),
+                      new Band(op, src, dst, width, height, middle, bottom, bandRows, context));
+        }
+    }
+}
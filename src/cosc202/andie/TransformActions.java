@@ -2,7 +2,6 @@ package cosc202.andie;
 
 import java.util.*;
 import java.awt.event.*;
-import java.awt.image.*;
 import javax.swing.*;
 import java.awt.*;
 
@@ -114,7 +113,7 @@ public class TransformActions {
          * @param e The event triggering this callback.
          */
         public void actionPerformed(ActionEvent e) {
-            target.getImage().apply(new HorizontalFlip());
+            target.getImage().applyAsync(new HorizontalFlip());
             target.repaint();
             target.getParent().revalidate();
         }
@@ -156,7 +155,7 @@ public class TransformActions {
          * @param e The event triggering this callback.
          */
         public void actionPerformed(ActionEvent e) {
-            target.getImage().apply(new VerticalFlip());
+            target.getImage().applyAsync(new VerticalFlip());
             target.repaint();
             target.getParent().revalidate();
         }
@@ -197,7 +196,7 @@ public class TransformActions {
          * @param e The event triggering this callback.
          */
         public void actionPerformed(ActionEvent e) {
-            target.getImage().apply(new RotateLeft());
+            target.getImage().applyAsync(new RotateLeft());
             target.repaint();
             target.getParent().revalidate();
         }
@@ -238,7 +237,7 @@ public class TransformActions {
          * @param e The event triggering this callback.
          */
         public void actionPerformed(ActionEvent e){
-            target.getImage().apply(new RotateRight());
+            target.getImage().applyAsync(new RotateRight());
             target.repaint();
             target.getParent().revalidate();
         }
@@ -279,7 +278,7 @@ public class TransformActions {
          * @param e The event triggering this callback.
          */
         public void actionPerformed(ActionEvent e){
-            target.getImage().apply(new Rotate180());
+            target.getImage().applyAsync(new Rotate180());
             target.repaint();
             target.getParent().revalidate();
         }
@@ -329,22 +328,22 @@ public class TransformActions {
             
             try {
                 double scale = Double.parseDouble(input);
-                BufferedImage current = target.getImage().getCurrentImage();
+                Dimension size = target.getImage().getSize();
 
                 // The resize percentage must be positive, and the sides of the resized image must be between 1 and 10000 pixels (inclusive).
                 if (scale <= 0) {
                     throw new IllegalArgumentException();
                 }
-                else if ((int)(current.getWidth() * scale / 100) == 0
-                        || (int)(current.getHeight() * scale / 100) == 0) {
+                else if ((int)(size.width * scale / 100) == 0
+                        || (int)(size.height * scale / 100) == 0) {
                     JOptionPane.showMessageDialog(target, Andie.getText("resizeOperationAbortedText1"), Andie.getText("resizeOperationAbortedTitle"), JOptionPane.OK_OPTION);
                 }
-                else if ((int)(current.getWidth() * scale / 100) > 10000
-                        || (int)(current.getHeight() * scale / 100) > 10000) {
+                else if ((int)(size.width * scale / 100) > Resize.MAX_SIDE
+                        || (int)(size.height * scale / 100) > Resize.MAX_SIDE) {
                     JOptionPane.showMessageDialog(target, Andie.getText("resizeOperationAbortedText2"), Andie.getText("resizeOperationAbortedTitle"), JOptionPane.OK_OPTION);
                 }
                 else {
-                    target.getImage().apply(new Resize(scale));
+                    target.getImage().applyAsync(new Resize(scale));
                     target.repaint();
                     target.getParent().revalidate();
                 }
@@ -405,8 +404,9 @@ public class TransformActions {
                 return;
             }
 
-            int imageWidth = imagePanel.getImage().getCurrentImage().getWidth();
-            int imageHeight = imagePanel.getImage().getCurrentImage().getHeight();
+            Dimension imageSize = imagePanel.getImage().getSize();
+            int imageWidth = imageSize.width;
+            int imageHeight = imageSize.height;
             int startX = (int) Math.max(0, Math.min(startPoint.getX(), endPoint.getX()));
             int startY = (int) Math.max(0, Math.min(startPoint.getY(), endPoint.getY()));
 
@@ -418,7 +418,7 @@ public class TransformActions {
                 startPoint.move((int)(startX / scale), (int)(startY / scale));
                 endPoint.move((int)(endX / scale), (int)(endY / scale));
         
-                target.getImage().apply(new Crop(startPoint, endPoint));
+                target.getImage().applyAsync(new Crop(startPoint, endPoint));
                 target.repaint();
                 target.getParent().revalidate();
             } 
@@ -16,6 +16,9 @@ import java.awt.image.*;
  */
 public class VerticalFlip implements ImageOperation, java.io.Serializable {
 
+    /** Serialization version of this operation. */
+    private static final long serialVersionUID = 4532067150949654614L;
+
     /**
      * <p>
      * Flip the image vertically. This means that everything in the top half 
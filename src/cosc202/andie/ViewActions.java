@@ -98,13 +98,13 @@ public class ViewActions {
          * 
          * <p>
          * This method is called whenever the ZoomInAction is triggered.
-         * It increases the zoom level by 10%, to a maximum of 200%.
+         * It increases the zoom level by 10%, or by 1% below 10%, to a maximum of 200%.
          * </p>
          * 
          * @param e The event triggering this callback.
          */
         public void actionPerformed(ActionEvent e) {
-            target.setZoom(target.getZoom()+10);
+            target.setZoom(target.getZoom() + (target.getZoom() < 10 ? 1 : 10));
             target.repaint();
             target.getParent().revalidate();
         }
@@ -142,13 +142,13 @@ public class ViewActions {
          * 
          * <p>
          * This method is called whenever the ZoomOutAction is triggered.
-         * It decreases the zoom level by 10%, to a minimum of 50%.
+         * It decreases the zoom level by 10%, or by 1% at 10% and below, to a minimum of 1%.
          * </p>
          * 
          * @param e The event triggering this callback.
          */
         public void actionPerformed(ActionEvent e) {
-            target.setZoom(target.getZoom()-10);
+            target.setZoom(target.getZoom() - (target.getZoom() <= 10 ? 1 : 10));
             target.repaint();
             target.getParent().revalidate();
         }
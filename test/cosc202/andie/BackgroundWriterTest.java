@@ -0,0 +1,133 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.imageio.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * <p>
+ * Unit tests for writing files atomically in the background, and saving without re-encoding.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ */
+public class BackgroundWriterTest {
+
+    /** A write that fails part way should leave the old file as it was, and no temporary file behind. */
+    @Test
+    void failedWriteKeepsOldFile() throws Exception {
+        Path dir = Files.createTempDirectory("andie-writer");
+        Path file = dir.resolve("file.ops");
+        Files.write(file, new byte[] {1, 2, 3});
+
+        Assertions.assertThrows(IOException.class, () -> BackgroundWriter.writeAtomically(file, out -> {
+            out.write(new byte[100]);
+            throw new IOException("Disk full");
+        }));
+        Assertions.assertArrayEquals(new byte[] {1, 2, 3}, Files.readAllBytes(file));
+
+        BackgroundWriter.submit(() -> BackgroundWriter.writeAtomically(file, out -> out.write(7))).get();
+        Assertions.assertArrayEquals(new byte[] {7}, Files.readAllBytes(file));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            Assertions.assertEquals(List.of(file), toList(files));
+        }
+    }
+
+    /** Saving should leave an unchanged original file alone, and copy its bytes when saving as the same format. */
+    @Test
+    void saveDoesNotReencodeOriginal() throws Exception {
+        Path dir = Files.createTempDirectory("andie-writer");
+        Path file = dir.resolve("photo.png");
+        BufferedImage pixels = new BufferedImage(12, 8, BufferedImage.TYPE_INT_RGB);
+        pixels.setRGB(3, 4, 0x123456);
+        ImageIO.write(pixels, "png", file.toFile());
+        byte[] bytes = Files.readAllBytes(file);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1000));
+
+        EditableImage image = new EditableImage();
+        image.open(file.toString());
+        image.applyAsync(new InvertColour());
+        image.save().get();
+        Assertions.assertEquals(FileTime.fromMillis(1000), Files.getLastModifiedTime(file));
+        Assertions.assertEquals(1, OperationCodec.read(new ByteArrayInputStream(Files.readAllBytes(dir.resolve("photo.png.ops")))).size());
+
+        image.saveAs(dir.resolve("copy.png").toString()).get();
+        Assertions.assertArrayEquals(bytes, Files.readAllBytes(dir.resolve("copy.png")));
+
+        image.saveAs(dir.resolve("other.bmp").toString()).get();
+        Assertions.assertEquals(0x123456, ImageIO.read(dir.resolve("other.bmp").toFile()).getRGB(3, 4) & 0xFFFFFF);
+    }
+
+    /** Saving and opening should return while the background thread is busy, and each should see what was queued before it. */
+    @Test
+    void saveAndOpenDoNotWait() throws Exception {
+        Path dir = Files.createTempDirectory("andie-writer");
+        Path file = dir.resolve("photo.png");
+        ImageIO.write(TestImages.randomImage(10, 10, 25), "png", file.toFile());
+        EditableImage image = new EditableImage();
+        image.open(file.toString());
+        image.getCurrentImage();
+
+        // The first operation holds up the background thread, then fails so that it is not saved.
+        CountDownLatch release = new CountDownLatch(1);
+        image.applyAsync(input -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("Held up");
+        });
+        image.applyAsync(new InvertColour());
+        CompletableFuture<Long> saved = image.save();
+        EditableImage other = new EditableImage();
+        other.open(file.toString());
+        Assertions.assertFalse(saved.isDone());
+        Assertions.assertNotNull(other.getLoadingPreview());
+
+        release.countDown();
+        long version = saved.get();
+        Assertions.assertEquals(image.getVersion(), version);
+        Assertions.assertEquals(1, OperationCodec.read(new ByteArrayInputStream(Files.readAllBytes(dir.resolve("photo.png.ops")))).size());
+        // The other image was opened after the save was queued, so it reads the operations saved.
+        Assertions.assertArrayEquals(PackedPixels.read(image.getCurrentImage()), PackedPixels.read(other.getCurrentImage()));
+    }
+
+    /** An exported snapshot should not change when the image is edited afterwards. */
+    @Test
+    void snapshotIsIndependent() throws Exception {
+        Path file = Files.createTempFile("andie-writer", ".png");
+        ImageIO.write(new BufferedImage(5, 5, BufferedImage.TYPE_INT_RGB), "png", file.toFile());
+        EditableImage image = new EditableImage();
+        image.open(file.toString());
+
+        BufferedImage snapshot = image.getSnapshot();
+        image.applyAsync(new InvertColour());
+        image.awaitIdle();
+        Assertions.assertEquals(0xFF000000, snapshot.getRGB(2, 2));
+        Assertions.assertEquals(0xFFFFFFFF, image.getCurrentImage().getRGB(2, 2));
+    }
+
+    /**
+     * Collect the paths in a directory.
+     *
+     * @param files The directory's contents.
+     * @return The paths.
+     */
+    private static List<Path> toList(DirectoryStream<Path> files) {
+        List<Path> list = new ArrayList<Path>();
+        files.forEach(list::add);
+        return list;
+    }
+}
@@ -0,0 +1,138 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.List;
+import javax.imageio.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * <p>
+ * Unit tests for applying a macro to a batch of images without the GUI.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ */
+public class BatchProcessorTest {
+
+    /**
+     * Write a small image of a single colour.
+     *
+     * @param file Where to write it.
+     * @param argb The colour of every pixel.
+     * @throws IOException If it cannot be written.
+     */
+    private static void writeImage(Path file, int argb) throws IOException {
+        int[] pixels = new int[6 * 4];
+        Arrays.fill(pixels, argb);
+        Files.createDirectories(file.getParent());
+        ImageIO.write(PackedPixels.wrap(pixels, 6, 4), "png", file.toFile());
+    }
+
+    /** Patterns should be searched from the directory before their first wildcard, including subdirectories for **. */
+    @Test
+    void findFilesMatchesGlob() throws Exception {
+        Path dir = Files.createTempDirectory("andie-batch");
+        writeImage(dir.resolve("a.png"), 0xFF000000);
+        writeImage(dir.resolve("b.png"), 0xFF000000);
+        writeImage(dir.resolve("sub/c.png"), 0xFF000000);
+        Files.write(dir.resolve("notes.txt"), new byte[0]);
+
+        Assertions.assertEquals(List.of(dir.resolve("a.png"), dir.resolve("b.png")), BatchProcessor.findFiles(dir + "/*.png"));
+        Assertions.assertEquals(3, BatchProcessor.findFiles(dir + "/**.png").size());
+        Assertions.assertEquals(Paths.get(dir + "/"), BatchProcessor.getSearchRoot(dir + "/*.png"));
+    }
+
+    /** Every readable image should be processed, and each unreadable one reported without stopping the rest. */
+    @Test
+    void appliesMacroAndReportsFailures() throws Exception {
+        Path in = Files.createTempDirectory("andie-batch-in");
+        Path out = Files.createTempDirectory("andie-batch-out");
+        for (int i = 0; i < 10; i++) {
+            writeImage(in.resolve("photo" + i + ".png"), 0xFF102030);
+        }
+        Files.write(in.resolve("broken.png"), new byte[] {1, 2, 3});
+
+        Stack<ImageOperation> macro = new Stack<ImageOperation>();
+        macro.push(new InvertColour());
+        macro.push(new RotateLeft());
+        Path macroFile = in.resolve("macro.ops");
+        try (ObjectOutputStream objOut = new ObjectOutputStream(Files.newOutputStream(macroFile))) {
+            objOut.writeObject(macro);
+        }
+
+        BatchProcessor batch = new BatchProcessor(BatchProcessor.readMacro(macroFile), in, out);
+        batch.run(BatchProcessor.findFiles(in + "/*.png"), 3, null);
+
+        Assertions.assertEquals(Set.of(in.resolve("broken.png")), batch.getFailures().keySet());
+        for (int i = 0; i < 10; i++) {
+            BufferedImage result = ImageIO.read(out.resolve("photo" + i + ".png").toFile());
+            Assertions.assertEquals(4, result.getWidth());
+            Assertions.assertEquals(0xFFEFDFCF, result.getRGB(1, 1));
+        }
+    }
+
+    /** A macro starting with a crop should give the same result when only the cropped region is decoded. */
+    @Test
+    void cropFirstMacroDecodesRegion() throws Exception {
+        Path in = Files.createTempDirectory("andie-crop-in");
+        Path out = Files.createTempDirectory("andie-crop-out");
+        int[] pixels = new int[6 * 4];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | i * 10;
+        }
+        ImageIO.write(PackedPixels.wrap(pixels, 6, 4), "png", in.resolve("inside.png").toFile());
+        ImageIO.write(PackedPixels.wrap(new int[2 * 2], 2, 2), "png", in.resolve("small.png").toFile());
+
+        List<ImageOperation> macro = List.of(new Crop(new java.awt.Point(1, 1), new java.awt.Point(4, 3)), new InvertColour());
+        BatchProcessor batch = new BatchProcessor(macro, in, out);
+        batch.run(List.of(in.resolve("inside.png"), in.resolve("small.png")), 1, null);
+
+        BufferedImage expected = new InvertColour().apply(new Crop(new java.awt.Point(1, 1), new java.awt.Point(4, 3))
+            .apply(ImageIO.read(in.resolve("inside.png").toFile())));
+        BufferedImage result = ImageIO.read(out.resolve("inside.png").toFile());
+        Assertions.assertArrayEquals(PackedPixels.read(expected), PackedPixels.read(result));
+        // A crop outside the image still fails, as it does when the whole image is decoded.
+        Assertions.assertEquals(Set.of(in.resolve("small.png")), batch.getFailures().keySet());
+    }
+
+    /** A macro recorded in the editor should replay the same way there and in a batch. */
+    @Test
+    void recordedMacroReplaysInEditorAndBatch() throws Exception {
+        Path in = Files.createTempDirectory("andie-macro-in");
+        Path out = Files.createTempDirectory("andie-macro-out");
+        writeImage(in.resolve("first.png"), 0xFF102030);
+        writeImage(in.resolve("second.png"), 0xFF102030);
+
+        EditableImage first = new EditableImage();
+        first.open(in.resolve("first.png").toString());
+        EditableImage.startRecording();
+        first.applyAsync(new InvertColour());
+        first.applyAsync(new MeanFilter(1));
+        first.applyAsync(new RotateLeft());
+        first.awaitIdle();
+        first.undo();
+        first.awaitIdle();
+        EditableImage.stopRecording();
+        first.saveMacro(in.resolve("macro").toFile());
+
+        EditableImage second = new EditableImage();
+        second.open(in.resolve("second.png").toString());
+        second.openMacro(in.resolve("macro.ops").toString());
+        second.awaitIdle();
+        Assertions.assertArrayEquals(PackedPixels.read(first.getCurrentImage()), PackedPixels.read(second.getCurrentImage()));
+
+        BatchProcessor batch = new BatchProcessor(BatchProcessor.readMacro(in.resolve("macro.ops")), in, out);
+        batch.run(List.of(in.resolve("second.png")), 1, null);
+        BufferedImage result = ImageIO.read(out.resolve("second.png").toFile());
+        Assertions.assertEquals(6, result.getWidth());
+        Assertions.assertEquals(first.getCurrentImage().getRGB(2, 2), result.getRGB(2, 2));
+    }
+}
@@ -0,0 +1,94 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * <p>
+ * Unit tests for placing, restoring and evicting checkpoint snapshots.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ */
+public class CheckpointCacheTest {
+
+    /** A cost in nanoseconds high enough for a snapshot to be taken straight away. */
+    private static final long EXPENSIVE = 1000L * 1000 * 1000;
+
+    /** A cost in nanoseconds far too low for a snapshot to be worth taking. */
+    private static final long CHEAP = 1000;
+
+    /**
+     * Create a small test image filled with one colour.
+     *
+     * @param argb The colour of every pixel.
+     * @return The test image, which uses 4 * 10 * 10 bytes.
+     */
+    private static BufferedImage image(int argb) {
+        BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < 10; y++) {
+            for (int x = 0; x < 10; x++) {
+                image.setRGB(x, y, argb);
+            }
+        }
+        return image;
+    }
+
+    /** Snapshots should only be taken once enough work has built up since the last one. */
+    @Test
+    void snapshotsFollowExpensiveOperations() {
+        CheckpointCache cache = new CheckpointCache();
+        cache.record(1, CHEAP, image(1));
+        cache.record(2, EXPENSIVE, image(2));
+        cache.record(3, CHEAP, image(3));
+
+        Assertions.assertEquals(0, cache.getNearest(1));
+        Assertions.assertEquals(2, cache.getNearest(2));
+        Assertions.assertEquals(2, cache.getNearest(3));
+        Assertions.assertEquals(2, cache.restore(2).getRGB(0, 0));
+    }
+
+    /** A restored snapshot should be a copy, so changing it does not change the snapshot. */
+    @Test
+    void restoreReturnsCopy() {
+        CheckpointCache cache = new CheckpointCache();
+        cache.record(1, EXPENSIVE, image(5));
+        cache.restore(1).setRGB(0, 0, 6);
+        Assertions.assertEquals(5, cache.restore(1).getRGB(0, 0));
+    }
+
+    /** Replacing operations should drop the snapshots after them. */
+    @Test
+    void truncateDropsDeeperSnapshots() {
+        CheckpointCache cache = new CheckpointCache();
+        cache.record(1, EXPENSIVE, image(1));
+        cache.record(2, EXPENSIVE, image(2));
+        cache.truncate(1);
+        Assertions.assertEquals(1, cache.getNearest(2));
+    }
+
+    /** Over budget, the snapshot saving the least time should be dropped first. */
+    @Test
+    void evictsLeastValuableSnapshot() {
+        long budget = CheckpointCache.getBudget();
+        try {
+            CheckpointCache.setBudget(2 * 400);
+            CheckpointCache cache = new CheckpointCache();
+            cache.record(1, 5 * EXPENSIVE, image(1));
+            cache.record(2, EXPENSIVE, image(2));
+            cache.record(3, 3 * EXPENSIVE, image(3));
+
+            Assertions.assertEquals(1, cache.getNearest(1));
+            Assertions.assertEquals(1, cache.getNearest(2));
+            Assertions.assertEquals(3, cache.getNearest(3));
+        }
+        finally {
+            CheckpointCache.setBudget(budget);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+import java.util.*;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * <p>
+ * Unit tests for convolution on packed pixels.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ */
+public class ConvolutionOperationTest {
+
+    /**
+     * Hashes of the pixels each filter gave on a seeded ARGB image with the original convolution,
+     * which read and wrote one pixel at a time with getRGB and setRGB. In the order of {@link baselineFilters}.
+     */
+    private static final int[] BASELINE_ARGB = {
+            256375675,
+            -1278466925,
+            1838481360,
+            -1080122261,
+            -711956655,
+            2147177505,
+            355710875,
+            -821231015,
+            703333472,
+            1799554908,
+            -970847901,
+            -1451910334,
+            109689693
+    };
+
+    /** As {@link BASELINE_ARGB}, for an RGB image. */
+    private static final int[] BASELINE_RGB = {
+            -1119356037,
+            1640768659,
+            462749648,
+            1839113323,
+            -2087688367,
+            771445793,
+            -1020020837,
+            2098004569,
+            -672398240,
+            423823196,
+            1948387683,
+            1467325250,
+            -1266042019
+    };
+
+    /**
+     * Create the filters whose outputs were frozen, ending with a kernel applied as an edge detection
+     * filter with a weight sum, and an unnormalised kernel whose results must be clamped.
+     *
+     * @return The filters.
+     */
+    private static List<ImageOperation> baselineFilters() {
+        ConvolutionOperation edge = new ConvolutionOperation(new Kernel(3, 3, new float[] {0, 0.5f, 0, 0.5f, 1, -0.5f, 0, -0.5f, 0}), true, 2);
+        ConvolutionOperation plain = new ConvolutionOperation(new Kernel(3, 3, new float[] {1, 2, 1, 0, 2, 0, -1, -2, -1}));
+        return List.of(
+            new SharpenFilter(), new HorizontalSobelFilter(), new VerticalSobelFilter(),
+            new EastEmbossFilter(), new WestEmbossFilter(), new NorthEmbossFilter(), new SouthEmbossFilter(),
+            new NorthEastEmbossFilter(), new NorthwestEmbossFilter(), new SoutheastEmbossFilter(), new SouthwestEmbossFilter(),
+            edge, plain
+        );
+    }
+
+    /** Every filter should reproduce the pixels of the original per-pixel convolution exactly, edges included. */
+    @Test
+    void matchesFrozenBaselineOutputs() {
+        int[] types = {BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB};
+        int[][] expected = {BASELINE_ARGB, BASELINE_RGB};
+        List<ImageOperation> filters = baselineFilters();
+
+        for (int t = 0; t < types.length; t++) {
+            for (int i = 0; i < filters.size(); i++) {
+                BufferedImage output = filters.get(i).apply(TestImages.randomImage(31, 19, types[t], 3));
+                int[] pixels = output.getRGB(0, 0, 31, 19, null, 0, 31);
+                Assertions.assertEquals(expected[t][i], Arrays.hashCode(pixels), filters.get(i).getClass().getSimpleName() + " on type " + types[t]);
+            }
+        }
+    }
+
+    /**
+     * Create a normalised Gaussian kernel, as the Gaussian filter does.
+     *
+     * @param radius The radius of the kernel.
+     * @return The kernel.
+     */
+    private static Kernel gaussianKernel(int radius) {
+        int size = 2 * radius + 1;
+        float sigma = radius / 3.0f;
+        float[] weights = new float[size * size];
+        float sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            float x = i % size - radius;
+            float y = i / size - radius;
+            weights[i] = (float) Math.exp(-(x * x + y * y) / (2 * sigma * sigma));
+            sum += weights[i];
+        }
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] /= sum;
+        }
+        return new Kernel(size, size, weights);
+    }
+
+    /**
+     * Create a normalised mean kernel.
+     *
+     * @param radius The radius of the kernel.
+     * @return The kernel.
+     */
+    private static Kernel meanKernel(int radius) {
+        int size = 2 * radius + 1;
+        float[] weights = new float[size * size];
+        Arrays.fill(weights, 1.0f / weights.length);
+        return new Kernel(size, size, weights);
+    }
+
+    /** Gaussian and mean kernels should be found separable, and the two passes should be within one level of the 2-D kernel. */
+    @Test
+    void separableMatchesDirectWithinOneLevel() {
+        BufferedImage image = TestImages.randomImage(67, 41, 11);
+        for (int radius: new int[] {2, 3, 7, 15, 30}) {
+            for (Kernel kernel: new Kernel[] {gaussianKernel(radius), meanKernel(radius)}) {
+                ConvolutionOperation op = new ConvolutionOperation(kernel);
+                Assertions.assertTrue(op.separate() != null, "radius " + radius);
+
+                int[] separable = PackedPixels.read(op.apply(image));
+                int[] direct = PackedPixels.read(op.applyDirect(image));
+                for (int i = 0; i < direct.length; i++) {
+                    Assertions.assertEquals(direct[i] >>> 24, separable[i] >>> 24);
+                    for (int shift = 0; shift < 24; shift += 8) {
+                        int difference = ((direct[i] >> shift) & 0xFF) - ((separable[i] >> shift) & 0xFF);
+                        Assertions.assertTrue(Math.abs(difference) <= 1, "radius " + radius + " differs by " + difference);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Kernels that are not an outer product, even by a small amount, should be applied directly. */
+    @Test
+    void nonSeparableKernelsAreRejected() {
+        float[] perturbed = gaussianKernel(3).getKernelData(null);
+        perturbed[10] += 1e-3f;
+        float[] random = new float[25];
+        Random rand = new Random(13);
+        for (int i = 0; i < random.length; i++) {
+            random[i] = rand.nextFloat() - 0.5f;
+        }
+        float[] ring = new float[25];
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = (i % 5 == 0 || i % 5 == 4 || i / 5 == 0 || i / 5 == 4) ? 1 / 16.0f : 0;
+        }
+
+        for (float[] weights: new float[][] {perturbed, random, ring}) {
+            int size = (int) Math.sqrt(weights.length);
+            ConvolutionOperation op = new ConvolutionOperation(new Kernel(size, size, weights));
+            Assertions.assertNull(op.separate());
+
+            BufferedImage image = TestImages.randomImage(23, 19, 14);
+            Assertions.assertArrayEquals(PackedPixels.read(op.applyDirect(image)), PackedPixels.read(op.apply(image)));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+import javax.imageio.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * <p>
+ * Unit tests checking that fused point operations give exactly the same result as applying them one by one.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ */
+public class FusedPointOperationTest {
+
+    /**
+     * Pick a random point operation.
+     *
+     * @param rand The random number generator to use.
+     * @return A point operation.
+     */
+    private static PointOperation randomOperation(Random rand) {
+        String[] orders = {"GBR", "BRG", "RBG", "GRB", "BGR"};
+        switch (rand.nextInt(4)) {
+            case 0:
+                return new ConvertToGrey();
+            case 1:
+                return new InvertColour();
+            case 2:
+                return new CycleColourChannel(orders[rand.nextInt(orders.length)]);
+            default:
+                return new BrightnessContrastAdjust(rand.nextInt(201) - 100, rand.nextInt(201) - 100);
+        }
+    }
+
+    /** Random sequences of point operations should give identical pixels fused and unfused. */
+    @Test
+    void fusedMatchesSequential() {
+        Random rand = new Random(9);
+        int[] src = TestImages.randomPixels(20000, 8);
+
+        for (int trial = 0; trial < 200; trial++) {
+            List<PointOperation> ops = new ArrayList<PointOperation>();
+            for (int i = rand.nextInt(6) + 1; i > 0; i--) {
+                ops.add(randomOperation(rand));
+            }
+
+            int[] sequential = src.clone();
+            for (PointOperation op: ops) {
+                op.applyRows(sequential, sequential, sequential.length, 1, 0, 1);
+            }
+
+            int[] fused = new int[src.length];
+            new FusedPointOperation(ops).applyRows(src, fused, src.length, 1, 0, 1);
+
+            Assertions.assertArrayEquals(sequential, fused, "fusing " + ops.size() + " operations in trial " + trial);
+        }
+    }
+
+    /** Only runs of two or more point operations should be fused, with other operations left in place. */
+    @Test
+    void fuseGroupsConsecutiveRuns() {
+        List<ImageOperation> ops = new ArrayList<ImageOperation>();
+        ops.add(new ConvertToGrey());
+        ops.add(new InvertColour());
+        ops.add(new MeanFilter(1));
+        ops.add(new InvertColour());
+        ops.add(new MedianFilter(1));
+        ops.add(new CycleColourChannel("GBR"));
+        ops.add(new BrightnessContrastAdjust(10, 10));
+        ops.add(new ConvertToGrey());
+
+        List<ImageOperation> fused = FusedPointOperation.fuse(ops);
+
+        Assertions.assertEquals(5, fused.size());
+        Assertions.assertTrue(fused.get(0) instanceof FusedPointOperation);
+        Assertions.assertSame(ops.get(2), fused.get(1));
+        Assertions.assertSame(ops.get(3), fused.get(2));
+        Assertions.assertSame(ops.get(4), fused.get(3));
+        Assertions.assertTrue(fused.get(4) instanceof FusedPointOperation);
+        Assertions.assertEquals(8, ops.size());
+    }
+
+    /** A macro should be replayed with its point operations fused, but still undo one operation at a time. */
+    @Test
+    void macroReplayKeepsEachOperation() throws Exception {
+        File file = File.createTempFile("andie-fused", ".png");
+        file.deleteOnExit();
+        ImageIO.write(TestImages.randomImage(23, 17, BufferedImage.TYPE_INT_ARGB, 10), "png", file);
+        File macro = File.createTempFile("andie-fused", ".ops");
+        macro.deleteOnExit();
+        List<ImageOperation> ops = List.of(new ConvertToGrey(), new InvertColour(), new MeanFilter(1),
+                new BrightnessContrastAdjust(20, -10), new InvertColour(), new CycleColourChannel("GBR"));
+        try (FileOutputStream out = new FileOutputStream(macro)) {
+            OperationCodec.write(ops, out);
+        }
+
+        EditableImage replayed = new EditableImage();
+        replayed.open(file.getPath());
+        BufferedImage original = replayed.getCurrentImage();
+        replayed.openMacro(macro.getPath());
+        replayed.awaitIdle();
+
+        EditableImage expected = new EditableImage();
+        expected.open(file.getPath());
+        for (ImageOperation op: ops) {
+            expected.applyAsync(op);
+        }
+        expected.awaitIdle();
+
+        for (int i = 0; i < ops.size(); i++) {
+            Assertions.assertArrayEquals(PackedPixels.read(expected.getCurrentImage()), PackedPixels.read(replayed.getCurrentImage()), "after undoing " + i);
+            expected.undo();
+            replayed.undo();
+            expected.awaitIdle();
+            replayed.awaitIdle();
+        }
+        Assertions.assertArrayEquals(PackedPixels.read(original), PackedPixels.read(replayed.getCurrentImage()));
+    }
+}
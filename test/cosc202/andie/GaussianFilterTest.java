@@ -0,0 +1,110 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * <p>
+ * Unit tests comparing the recursive Gaussian blur against the convolution kernel.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ */
+public class GaussianFilterTest {
+
+    /** The largest difference from the kernel documented in {@link RecursiveGaussian}. */
+    private static final int MAX_ERROR = 7;
+
+    /**
+     * Create a black and white checkerboard, the hardest case for the recursive filter.
+     *
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param cell The side length of each square.
+     * @return The checkerboard image.
+     */
+    private static BufferedImage checkerboard(int width, int height, int cell) {
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                pixels[y * width + x] = ((x / cell + y / cell) % 2 == 0) ? 0xFF000000 : 0xFFFFFFFF;
+            }
+        }
+        return PackedPixels.wrap(pixels, width, height);
+    }
+
+    /**
+     * Blur an image with and without the recursive filter, and return the largest difference on any channel.
+     *
+     * @param image The image to blur.
+     * @param radius The radius of the Gaussian filter.
+     * @return The largest difference between the two results.
+     */
+    private static int maxDifference(BufferedImage image, int radius) {
+        int[] direct = PackedPixels.read(new GaussianFilter(radius).applyKernel(image));
+        int[] recursive = PackedPixels.read(new GaussianFilter(radius).applyRecursive(image));
+
+        int max = 0;
+        for (int i = 0; i < direct.length; i++) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                max = Math.max(max, Math.abs(((direct[i] >> shift) & 0xFF) - ((recursive[i] >> shift) & 0xFF)));
+            }
+        }
+        return max;
+    }
+
+    /** Just above the threshold, the recursive filter should stay within the documented error. */
+    @Test
+    void recursiveMatchesKernelAboveThreshold() {
+        Assertions.assertTrue(maxDifference(checkerboard(300, 240, 60), 44) <= MAX_ERROR);
+        Assertions.assertTrue(maxDifference(checkerboard(200, 150, 7), 31) <= MAX_ERROR);
+    }
+
+    /** Very large radii, bigger than the image itself, should also stay within the documented error. */
+    @Test
+    void recursiveMatchesKernelForHugeRadius() {
+        Assertions.assertTrue(maxDifference(checkerboard(160, 120, 40), 200) <= MAX_ERROR);
+    }
+
+    /** A filter should keep the threshold it was made with through a save, whatever the setting is changed to. */
+    @Test
+    void thresholdIsSavedWithFilter() throws Exception {
+        BufferedImage image = checkerboard(120, 90, 9);
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+        try {
+            GaussianFilter.setDefaultRecursiveThreshold(50);
+            OperationCodec.write(java.util.List.of(new GaussianFilter(40)), bytes);
+        }
+        finally {
+            GaussianFilter.setDefaultRecursiveThreshold(GaussianFilter.DEFAULT_RECURSIVE_THRESHOLD);
+        }
+
+        GaussianFilter read = (GaussianFilter) OperationCodec.read(new java.io.ByteArrayInputStream(bytes.toByteArray())).get(0);
+        Assertions.assertEquals(50, read.getRecursiveThreshold());
+        Assertions.assertArrayEquals(PackedPixels.read(read.applyKernel(image)), PackedPixels.read(read.apply(image)));
+        Assertions.assertArrayEquals(PackedPixels.read(read.applyRecursive(image)),
+                                     PackedPixels.read(new GaussianFilter(40).apply(image)));
+    }
+
+    /** Filters saved before the threshold was a parameter should render as they did, with the default threshold. */
+    @Test
+    void savedFiltersWithoutThresholdUseDefault() {
+        OperationParameters params = new OperationParameters();
+        params.putInt(1, 40);
+        Assertions.assertEquals(GaussianFilter.DEFAULT_RECURSIVE_THRESHOLD, new GaussianFilter(params).getRecursiveThreshold());
+    }
+
+    /** A flat image should come out unchanged, as the edges are extended rather than darkened. */
+    @Test
+    void flatImageIsUnchanged() {
+        int[] pixels = new int[64 * 48];
+        java.util.Arrays.fill(pixels, 0x80336699);
+        int[] blurred = new RecursiveGaussian(30).apply(pixels, 64, 48);
+        Assertions.assertArrayEquals(pixels, blurred);
+    }
+}
@@ -0,0 +1,79 @@
+package cosc202.andie;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import javax.imageio.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * <p>
+ * Unit tests for subsampled and partial image decoding.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ */
+public class ImageDecoderTest {
+
+    /**
+     * Write an image where every pixel has a different colour.
+     *
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @return The PNG file written.
+     * @throws IOException If it cannot be written.
+     */
+    private static File writeImage(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, (x << 12) ^ y);
+            }
+        }
+        File file = File.createTempFile("andie-decode", ".png");
+        file.deleteOnExit();
+        ImageIO.write(image, "png", file);
+        return file;
+    }
+
+    /** A subsampled, partial decode should hold exactly the matching pixels of the full image. */
+    @Test
+    void subsampledRegionMatchesFullImage() throws Exception {
+        File file = writeImage(50, 40);
+        BufferedImage full = ImageDecoder.read(file);
+        Assertions.assertEquals(new Dimension(50, 40), ImageDecoder.getSize(file));
+
+        Rectangle region = new Rectangle(7, 5, 30, 21);
+        BufferedImage part = ImageDecoder.read(file, 3, region);
+        Assertions.assertEquals(10, part.getWidth());
+        Assertions.assertEquals(7, part.getHeight());
+        for (int y = 0; y < part.getHeight(); y++) {
+            for (int x = 0; x < part.getWidth(); x++) {
+                Assertions.assertEquals(full.getRGB(region.x + x * 3, region.y + y * 3), part.getRGB(x, y));
+            }
+        }
+
+        Assertions.assertNull(ImageDecoder.read(file, 1, new Rectangle(40, 30, 20, 20)));
+        Assertions.assertEquals(3, ImageDecoder.chooseSubsampling(new Dimension(6000, 4000), 2048));
+    }
+
+    /** Opening a large image should show a preview straight away, and give the full image once decoded. */
+    @Test
+    void openShowsPreviewWhileDecoding() throws Exception {
+        File file = writeImage(2100, 2100);
+        EditableImage image = new EditableImage();
+        image.open(file.getPath());
+
+        Assertions.assertTrue(image.hasImage());
+        Assertions.assertEquals(new Dimension(2100, 2100), image.getSize());
+        BufferedImage current = image.getCurrentImage();
+        Assertions.assertEquals(2100, current.getWidth());
+        Assertions.assertEquals((2000 << 12) ^ 1000, current.getRGB(2000, 1000) & 0xFFFFFF);
+        Assertions.assertNull(image.getLoadingPreview());
+    }
+}
@@ -0,0 +1,57 @@
+package cosc202.andie;
+
+import java.awt.*;
+import java.awt.image.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * <p>
+ * Unit tests for what operations declare about changing their input.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ */
+public class ImageOperationTest {
+
+    /** Operations that say they do not change their input must leave every pixel of it alone. */
+    @Test
+    void producingOperationsLeaveInputAlone() {
+        ImageOperation[] ops = {
+            new MeanFilter(2), new MedianFilter(2), new GaussianFilter(2), new GaussianFilter(40),
+            new BlockAveraging(3, 4), new RandomScattering(2), new SharpenFilter(),
+            new EastEmbossFilter(), new WestEmbossFilter(), new NorthEmbossFilter(), new SouthEmbossFilter(),
+            new NorthEastEmbossFilter(), new NorthwestEmbossFilter(), new SoutheastEmbossFilter(), new SouthwestEmbossFilter(),
+            new HorizontalSobelFilter(), new VerticalSobelFilter(),
+            new RotateLeft(), new RotateRight(), new Rotate180(), new Resize(50), new Crop(new Point(3, 2), new Point(20, 15)),
+        };
+        int[] argb = TestImages.randomPixels(31 * 23, 1);
+
+        for (ImageOperation op : ops) {
+            Assertions.assertFalse(op.mutatesInput(), op.getClass().getSimpleName());
+            BufferedImage input = PackedPixels.wrap(argb.clone(), 31, 23);
+
+            BufferedImage output = op.apply(input);
+
+            Assertions.assertNotSame(input, output);
+            Assertions.assertArrayEquals(argb, PackedPixels.read(input), op.getClass().getSimpleName());
+        }
+    }
+
+    /** Operations that work in place should keep the safe default. */
+    @Test
+    void inPlaceOperationsSayTheyMutate() {
+        ImageOperation[] ops = {
+            new InvertColour(), new ConvertToGrey(), new HorizontalFlip(), new VerticalFlip(),
+            new DrawRectOperation("red", "fill", 1, 1, 5, 5),
+        };
+
+        for (ImageOperation op : ops) {
+            Assertions.assertTrue(op.mutatesInput(), op.getClass().getSimpleName());
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package cosc202.andie;
 
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import javax.imageio.*;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Assertions;
 
@@ -28,14 +32,107 @@ public class ImagePanelTest {
     }
 
     /** 
-     * A test to verify that the zoom percentage is set to 50,
-     * if a zoom percentage that is less than 50 is applied.
+     * A test to verify that the zoom percentage is set to 1,
+     * if a zoom percentage that is less than 1 is applied.
      */
     @Test 
     void getZoomAftersetZoom() {
         ImagePanel testPanel = new ImagePanel();
         testPanel.setZoom(0.0);
         Assertions.assertFalse(testPanel.getZoom() == 100.0);
-        Assertions.assertTrue(testPanel.getZoom() >= 50.0);
+        Assertions.assertTrue(testPanel.getZoom() >= 1.0);
     }
-}
\ No newline at end of file
+
+    /**
+     * Paint a panel into an image the size of the panel.
+     *
+     * @param panel The panel to paint.
+     * @return What the panel drew.
+     */
+    private static BufferedImage paint(ImagePanel panel) {
+        Dimension size = panel.getPreferredSize();
+        BufferedImage canvas = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = canvas.createGraphics();
+        panel.paintComponent(g);
+        g.dispose();
+        return canvas;
+    }
+
+    /** The image drawn should follow changes to the zoom and to the image, even though it is cached. */
+    @Test
+    void paintFollowsZoomAndImageChanges() throws Exception {
+        BufferedImage source = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+        source.setRGB(6, 6, 0xFF0000);
+        File file = File.createTempFile("andie-panel", ".png");
+        file.deleteOnExit();
+        ImageIO.write(source, "png", file);
+
+        ImagePanel testPanel = new ImagePanel();
+        testPanel.getImage().open(file.getPath());
+        testPanel.getImage().awaitIdle();
+        Assertions.assertEquals(0xFFFF0000, paint(testPanel).getRGB(6, 6));
+
+        testPanel.setZoom(200);
+        BufferedImage zoomed = paint(testPanel);
+        Assertions.assertEquals(16, zoomed.getWidth());
+        Assertions.assertEquals(0xFFFF0000, zoomed.getRGB(13, 13));
+
+        long version = testPanel.getImage().getVersion();
+        testPanel.getImage().applyAsync(new InvertColour());
+        testPanel.getImage().awaitIdle();
+        Assertions.assertNotEquals(version, testPanel.getImage().getVersion());
+        Assertions.assertEquals(0xFF00FFFF, paint(testPanel).getRGB(13, 13));
+    }
+
+    /** An operation filling a small square, which says that nothing outside it changes. */
+    private static class FillSquare implements RegionOperation {
+
+        /**
+         * Fill the square with white.
+         *
+         * @param input The image to fill the square of.
+         * @return The same image.
+         */
+        public BufferedImage apply(BufferedImage input) {
+            Graphics2D g = input.createGraphics();
+            g.setColor(Color.WHITE);
+            g.fillRect(2, 2, 2, 2);
+            g.dispose();
+            return input;
+        }
+
+        /**
+         * Get the square that is filled.
+         *
+         * @return The bounds of the square.
+         */
+        public Rectangle getRegion() {
+            return new Rectangle(2, 2, 2, 2);
+        }
+    }
+
+    /** A change to part of the image should be reported as just that part, and still be drawn. */
+    @Test
+    void regionChangesArePartial() throws Exception {
+        File file = File.createTempFile("andie-region", ".png");
+        file.deleteOnExit();
+        ImageIO.write(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), "png", file);
+
+        ImagePanel testPanel = new ImagePanel();
+        EditableImage image = testPanel.getImage();
+        image.open(file.getPath());
+        image.awaitIdle();
+        testPanel.setZoom(200);
+        paint(testPanel);
+
+        long version = image.getVersion();
+        image.applyAsync(new FillSquare());
+        image.awaitIdle();
+        Assertions.assertEquals(new Rectangle(2, 2, 2, 2), image.getChangedRegion(version));
+
+        BufferedImage painted = paint(testPanel);
+        Assertions.assertEquals(0xFFFFFFFF, painted.getRGB(4, 4));
+        Assertions.assertEquals(0xFFFFFFFF, painted.getRGB(7, 7));
+        Assertions.assertEquals(0xFF000000, painted.getRGB(8, 8));
+    }
+}
@@ -0,0 +1,140 @@
+package cosc202.andie;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import javax.imageio.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * <p>
+ * Unit tests for the pyramid of halved images used when zoomed out.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ */
+public class ImagePyramidTest {
+
+    /** Each level should be half the size of the one below, rounded up, until it is a single pixel. */
+    @Test
+    void levelsHalveInSize() {
+        ImagePyramid pyramid = new ImagePyramid(TestImages.randomImage(13, 6, 1));
+
+        Assertions.assertEquals(7, pyramid.getLevel(1).getWidth());
+        Assertions.assertEquals(3, pyramid.getLevel(1).getHeight());
+        Assertions.assertEquals(4, pyramid.getLevel(2).getWidth());
+        Assertions.assertEquals(2, pyramid.getLevel(2).getHeight());
+        Assertions.assertEquals(1, pyramid.getLevel(4).getWidth());
+        Assertions.assertEquals(1, pyramid.getLevel(9).getHeight());
+    }
+
+    /** Each pixel of a level should be the rounded average of the 2x2 block below it. */
+    @Test
+    void levelsAverageBlocks() {
+        int[] argb = {0xFF000000, 0xFF040404, 0xFF101010, 0xFF080808, 0xFF0C0C0C, 0xFF101010};
+        ImagePyramid pyramid = new ImagePyramid(PackedPixels.wrap(argb, 3, 2));
+
+        BufferedImage level = pyramid.getLevel(1);
+        Assertions.assertEquals(0xFF060606, level.getRGB(0, 0));
+        Assertions.assertEquals(0xFF101010, level.getRGB(1, 0));
+    }
+
+    /** The level drawn from should never be smaller than the image on screen. */
+    @Test
+    void chooseLevelStaysAboveScreenSize() {
+        Assertions.assertEquals(0, ImagePyramid.chooseLevel(2.0));
+        Assertions.assertEquals(0, ImagePyramid.chooseLevel(0.6));
+        Assertions.assertEquals(1, ImagePyramid.chooseLevel(0.5));
+        Assertions.assertEquals(1, ImagePyramid.chooseLevel(0.3));
+        Assertions.assertEquals(6, ImagePyramid.chooseLevel(0.01));
+    }
+
+    /** Updating a region should give the same levels as building the pyramid again from scratch. */
+    @Test
+    void updateMatchesRebuild() {
+        BufferedImage before = TestImages.randomImage(101, 77, 2);
+        ImagePyramid pyramid = new ImagePyramid(before);
+        pyramid.getLevel(7);
+
+        BufferedImage after = TestImages.randomImage(101, 77, 2);
+        Graphics2D g = after.createGraphics();
+        g.setColor(Color.MAGENTA);
+        g.fillRect(37, 20, 64, 9);
+        g.dispose();
+        pyramid.update(after, new Rectangle(37, 20, 70, 9));
+
+        ImagePyramid rebuilt = new ImagePyramid(after);
+        for (int level = 1; level <= 7; level++) {
+            BufferedImage expected = rebuilt.getLevel(level);
+            BufferedImage actual = pyramid.getLevel(level);
+            for (int y = 0; y < expected.getHeight(); y++) {
+                for (int x = 0; x < expected.getWidth(); x++) {
+                    Assertions.assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "level " + level + " differs at " + x + ", " + y);
+                }
+            }
+        }
+    }
+
+    /** Levels should only be readable without waiting once they have been built. */
+    @Test
+    void builtLevelsDoNotBuild() {
+        BufferedImage base = TestImages.randomImage(13, 6, 3);
+        ImagePyramid pyramid = new ImagePyramid(base);
+        Assertions.assertSame(base, pyramid.getBuiltLevel(0));
+        Assertions.assertNull(pyramid.getBuiltLevel(1));
+
+        BufferedImage level = pyramid.getLevel(2);
+        Assertions.assertSame(level, pyramid.getBuiltLevel(2));
+        Assertions.assertNull(pyramid.getBuiltLevel(3));
+        pyramid.getLevel(4);
+        Assertions.assertEquals(1, pyramid.getBuiltLevel(9).getWidth());
+    }
+
+    /** An image's pyramid should be built in the background when asked for, and kept up to date after it changes. */
+    @Test
+    void imagePyramidFollowsChanges() throws Exception {
+        File file = File.createTempFile("andie-pyramid", ".png");
+        file.deleteOnExit();
+        ImageIO.write(TestImages.randomImage(101, 77, BufferedImage.TYPE_INT_ARGB, 4), "png", file);
+        EditableImage image = new EditableImage();
+        image.open(file.getPath());
+
+        for (ImageOperation op: new ImageOperation[] {null, new InvertColour(), new RotateLeft()}) {
+            if (op != null) {
+                image.applyAsync(op);
+                image.awaitIdle();
+            }
+            ImagePyramid pyramid = awaitPyramid(image, 3);
+            BufferedImage expected = new ImagePyramid(image.getCurrentImage()).getLevel(3);
+            Assertions.assertArrayEquals(PackedPixels.read(expected), PackedPixels.read(pyramid.getBuiltLevel(3)));
+        }
+    }
+
+    /**
+     * Wait for an image's pyramid to have a level up to date.
+     *
+     * @param image The image.
+     * @param level The level to wait for.
+     * @return The up to date pyramid.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private static ImagePyramid awaitPyramid(EditableImage image, int level) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < deadline) {
+            long version = image.getVersion();
+            boolean upToDate = image.getPyramidVersion() == version;
+            ImagePyramid pyramid = image.getPyramid(level);
+            if (upToDate && pyramid != null && pyramid.getBuiltLevel(level) != null) {
+                return pyramid;
+            }
+            Thread.sleep(5);
+        }
+        Assertions.fail("The pyramid was not built in time");
+        return null;
+    }
+}
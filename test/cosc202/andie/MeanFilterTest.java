@@ -0,0 +1,89 @@
+package cosc202.andie;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * <p>
+ * Unit tests comparing the mean filter and block averaging against adding up each neighbourhood directly.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ */
+public class MeanFilterTest {
+
+    /** The width of the test image. */
+    private static final int WIDTH = 37;
+
+    /** The height of the test image. */
+    private static final int HEIGHT = 29;
+
+    /**
+     * Find the mean of each channel over a rectangle by adding up every pixel, repeating the edge pixels outside the image.
+     *
+     * @param src The packed ARGB pixels.
+     * @param x0 The first column of the rectangle.
+     * @param y0 The first row of the rectangle.
+     * @param x1 One past the last column of the rectangle.
+     * @param y1 One past the last row of the rectangle.
+     * @return The mean pixel, rounded down.
+     */
+    private static int directMean(int[] src, int x0, int y0, int x1, int y1) {
+        long[] sums = new long[4];
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                int argb = src[Math.min(Math.max(y, 0), HEIGHT - 1) * WIDTH + Math.min(Math.max(x, 0), WIDTH - 1)];
+                for (int c = 0; c < 4; c++) {
+                    sums[c] += (argb >>> (24 - 8 * c)) & 0xFF;
+                }
+            }
+        }
+
+        int count = (x1 - x0) * (y1 - y0);
+        int mean = 0;
+        for (int c = 0; c < 4; c++) {
+            mean = (mean << 8) | (int) (sums[c] / count);
+        }
+        return mean;
+    }
+
+    /** The mean filter should give the exact mean of each neighbourhood, with the original alpha, at any radius. */
+    @Test
+    void meanFilterMatchesDirectSum() {
+        int[] src = TestImages.randomPixels(WIDTH * HEIGHT, 6);
+        for (int radius: new int[] {1, 4, 20, 45}) {
+            int[] dst = new int[src.length];
+            new MeanFilter(radius).applyRows(src, dst, WIDTH, HEIGHT, 0, HEIGHT);
+
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    int expected = (src[y * WIDTH + x] & 0xFF000000) | (directMean(src, x - radius, y - radius, x + radius + 1, y + radius + 1) & 0x00FFFFFF);
+                    Assertions.assertEquals(expected, dst[y * WIDTH + x], "radius " + radius + " at (" + x + ", " + y + ")");
+                }
+            }
+        }
+    }
+
+    /** Block averaging should give each block the exact mean of its pixels, with the alpha of its bottom-right pixel. */
+    @Test
+    void blockAveragingMatchesDirectSum() {
+        int[] src = TestImages.randomPixels(WIDTH * HEIGHT, 7);
+        int[] dst = new int[src.length];
+        new BlockAveraging(5, 8).applyRows(src, dst, WIDTH, HEIGHT, 3, HEIGHT);
+
+        for (int y = 3; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int x0 = x / 8 * 8;
+                int y0 = y / 5 * 5;
+                int x1 = Math.min(x0 + 8, WIDTH);
+                int y1 = Math.min(y0 + 5, HEIGHT);
+                int expected = (src[(y1 - 1) * WIDTH + x1 - 1] & 0xFF000000) | (directMean(src, x0, y0, x1, y1) & 0x00FFFFFF);
+                Assertions.assertEquals(expected, dst[y * WIDTH + x], "at (" + x + ", " + y + ")");
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package cosc202.andie;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * <p>
+ * Unit tests comparing the sliding histogram Median filter against sorting each neighbourhood.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ */
+public class MedianFilterTest {
+
+    /**
+     * Find the median of each channel around one pixel by sorting, as the filter originally did.
+     *
+     * @param src The packed ARGB pixels.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param x The column of the pixel.
+     * @param y The row of the pixel.
+     * @param radius The radius of the filter.
+     * @return The median pixel, with the alpha of the original pixel.
+     */
+    private static int sortedMedian(int[] src, int width, int height, int x, int y, int radius) {
+        int side = 2 * radius + 1;
+        int[] r = new int[side * side];
+        int[] g = new int[side * side];
+        int[] b = new int[side * side];
+        int count = 0;
+
+        for (int dy = -radius; dy <= radius; dy++) {
+            for (int dx = -radius; dx <= radius; dx++) {
+                int pixel = src[Math.min(Math.max(y + dy, 0), height - 1) * width + Math.min(Math.max(x + dx, 0), width - 1)];
+                r[count] = (pixel >> 16) & 0xFF;
+                g[count] = (pixel >> 8) & 0xFF;
+                b[count] = pixel & 0xFF;
+                count++;
+            }
+        }
+
+        Arrays.sort(r);
+        Arrays.sort(g);
+        Arrays.sort(b);
+        int mid = r.length / 2;
+        return (src[y * width + x] & 0xFF000000) | (r[mid] << 16) | (g[mid] << 8) | b[mid];
+    }
+
+    /**
+     * Check the filter against sorting for a given image size and radius.
+     *
+     * @param width The width of the test image.
+     * @param height The height of the test image.
+     * @param radius The radius of the filter.
+     */
+    private static void assertMatchesSorting(int width, int height, int radius) {
+        Random rand = new Random(width * 31 + radius);
+        int[] src = new int[width * height];
+        for (int i = 0; i < src.length; i++) {
+            // Use a narrow range of values, so that many window values are tied.
+            src[i] = rand.nextInt() & 0xFF0F0F0F;
+        }
+
+        int[] dst = new int[src.length];
+        new MedianFilter(radius).applyRows(src, dst, width, height, 0, height);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                Assertions.assertEquals(sortedMedian(src, width, height, x, y, radius), dst[y * width + x],
+                    "radius " + radius + " at (" + x + ", " + y + ")");
+            }
+        }
+    }
+
+    /** Small radii should match sorting exactly. */
+    @Test
+    void smallRadiusMatchesSorting() {
+        assertMatchesSorting(41, 29, 1);
+        assertMatchesSorting(41, 29, 3);
+    }
+
+    /** A radius larger than the image means every window is mostly clamped edge pixels. */
+    @Test
+    void radiusLargerThanImageMatchesSorting() {
+        assertMatchesSorting(5, 4, 9);
+        assertMatchesSorting(1, 1, 2);
+    }
+
+    /** Large radii, which sorting made unusable, should still match. */
+    @Test
+    void largeRadiusMatchesSorting() {
+        assertMatchesSorting(30, 20, 20);
+    }
+}
@@ -0,0 +1,222 @@
+package cosc202.andie;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * <p>
+ * Unit tests for the binary <code>.ops</code> file format.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ */
+public class OperationCodecTest {
+
+    /**
+     * Create one of every kind of operation, with settings that are not the defaults.
+     *
+     * @return The operations.
+     */
+    private static List<ImageOperation> everyOperation() {
+        return List.of(
+            new InvertColour(), new ConvertToGrey(), new BrightnessContrastAdjust(20, -35), new CycleColourChannel("GBR"),
+            new MeanFilter(3), new MedianFilter(2), new GaussianFilter(4), new SharpenFilter(), new BlockAveraging(3, 5),
+            new RandomScattering(2), new ConvolutionOperation(new Kernel(3, 3, new float[] {0, 0.5f, 0, 0.5f, 1, -0.5f, 0, -0.5f, 0}), true, 2),
+            new EastEmbossFilter(), new WestEmbossFilter(), new NorthEmbossFilter(), new SouthEmbossFilter(),
+            new NorthEastEmbossFilter(), new NorthwestEmbossFilter(), new SoutheastEmbossFilter(), new SouthwestEmbossFilter(),
+            new HorizontalSobelFilter(), new VerticalSobelFilter(), new HorizontalFlip(), new VerticalFlip(),
+            new RotateLeft(), new RotateRight(), new Rotate180(), new Resize(150), new Crop(new Point(2, 3), new Point(30, 20)),
+            new DrawLineOperation("Red", 1, 2, 20, 15), new DrawRectOperation("Blue", "Solid", 3, 3, 12, 9),
+            new DrawOvalOperation("Green", "Outline", 5, 4, 25, 18)
+        );
+    }
+
+    /**
+     * Write operations and read them back.
+     *
+     * @param ops The operations to write.
+     * @return The operations read.
+     * @throws IOException If they cannot be written or read.
+     */
+    private static List<ImageOperation> roundTrip(List<ImageOperation> ops) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OperationCodec.write(ops, bytes);
+        return OperationCodec.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    /** Every operation should be registered, and read back as one that gives exactly the same image. */
+    @Test
+    void everyOperationRoundTrips() throws Exception {
+        Andie.bundle = ResourceBundle.getBundle("TextBundle", new Locale("en", "NZ"));
+        List<ImageOperation> ops = everyOperation();
+        List<ImageOperation> read = roundTrip(ops);
+
+        Assertions.assertEquals(ops.size(), read.size());
+        int[] argb = TestImages.randomPixels(40 * 30, 1);
+
+        for (int i = 0; i < ops.size(); i++) {
+            String name = ops.get(i).getClass().getSimpleName();
+            Assertions.assertTrue(OperationCodec.isRegistered(ops.get(i)), name);
+            Assertions.assertEquals(ops.get(i).getClass(), read.get(i).getClass());
+
+            BufferedImage expected = ops.get(i).apply(PackedPixels.wrap(argb.clone(), 40, 30));
+            BufferedImage actual = read.get(i).apply(PackedPixels.wrap(argb.clone(), 40, 30));
+            Assertions.assertArrayEquals(PackedPixels.read(expected), PackedPixels.read(actual), name);
+        }
+    }
+
+    /** Files saved with Java serialization by older versions should still be read. */
+    @Test
+    void readsLegacySerializedStacks() throws Exception {
+        Stack<ImageOperation> stack = new Stack<ImageOperation>();
+        stack.push(new MeanFilter(2));
+        stack.push(new RotateLeft());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream objOut = new ObjectOutputStream(bytes)) {
+            objOut.writeObject(stack);
+        }
+
+        List<ImageOperation> read = OperationCodec.read(new ByteArrayInputStream(bytes.toByteArray()));
+        Assertions.assertEquals(2, read.size());
+        Assertions.assertTrue(read.get(0) instanceof MeanFilter);
+        Assertions.assertTrue(read.get(1) instanceof RotateLeft);
+    }
+
+    /** Legacy files should be read only if they hold ANDIE's own operations, so no other class is ever created. */
+    @Test
+    void legacyStacksAreFiltered() throws Exception {
+        Stack<Object> stack = new Stack<Object>();
+        for (ImageOperation op : everyOperation()) {
+            if (!(op instanceof ConvolutionOperation)) {
+                stack.add(op);
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream objOut = new ObjectOutputStream(bytes)) {
+            objOut.writeObject(stack);
+        }
+        Assertions.assertEquals(stack.size(), OperationCodec.read(new ByteArrayInputStream(bytes.toByteArray())).size());
+
+        stack.add(new HashMap<String, String>());
+        ByteArrayOutputStream unknown = new ByteArrayOutputStream();
+        try (ObjectOutputStream objOut = new ObjectOutputStream(unknown)) {
+            objOut.writeObject(stack);
+        }
+        Assertions.assertThrows(IOException.class, () -> OperationCodec.read(new ByteArrayInputStream(unknown.toByteArray())));
+    }
+
+    /** Damaged array lengths and parameters out of range should be reported as a bad file, not as a crash. */
+    @Test
+    void damagedParametersAreRejected() throws Exception {
+        ByteArrayOutputStream floats = new ByteArrayOutputStream();
+        new OperationParameters().putFloats(3, new float[] {1}).write(new DataOutputStream(floats));
+        for (long length: new long[] {1L << 30, 1L << 40, -1L}) {
+            ByteArrayOutputStream damaged = new ByteArrayOutputStream();
+            damaged.write(floats.toByteArray(), 0, floats.size() - 5);
+            OperationParameters.writeVarint(new DataOutputStream(damaged), length);
+            damaged.write(new byte[16]);
+            Assertions.assertThrows(IOException.class, () -> OperationParameters.read(new DataInputStream(new ByteArrayInputStream(damaged.toByteArray()))));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OperationCodec.write(List.of(), bytes);
+        ByteArrayOutputStream mismatched = new ByteArrayOutputStream();
+        mismatched.write(bytes.toByteArray(), 0, bytes.size() - 1);
+        DataOutputStream out = new DataOutputStream(mismatched);
+        OperationParameters.writeVarint(out, 1);
+        OperationParameters.writeVarint(out, 16);
+        new OperationParameters().putInt(1, 3).putInt(2, 3).putFloats(3, new float[] {1}).write(out);
+        Assertions.assertThrows(IOException.class, () -> OperationCodec.read(new ByteArrayInputStream(mismatched.toByteArray())));
+    }
+
+    /** Parameters outside the range an operation can be given in ANDIE should be rejected when the file is read. */
+    @Test
+    void outOfRangeParametersAreRejected() throws Exception {
+        Map<Integer, OperationParameters> damaged = new LinkedHashMap<Integer, OperationParameters>();
+        damaged.put(10, new OperationParameters().putInt(1, -3));
+        damaged.put(11, new OperationParameters().putInt(1, 1 << 20));
+        damaged.put(12, new OperationParameters().putInt(1, GaussianFilter.MAX_RADIUS + 1));
+        damaged.put(14, new OperationParameters().putInt(1, 0).putInt(2, 4));
+        damaged.put(15, new OperationParameters().putInt(1, Integer.MAX_VALUE));
+        damaged.put(3, new OperationParameters().putInt(1, 500));
+        damaged.put(16, new OperationParameters().putInt(1, 1 << 16).putInt(2, 1 << 16));
+        damaged.put(35, new OperationParameters().putDouble(1, Double.NaN));
+        damaged.put(36, new OperationParameters().putInt(1, -5));
+
+        for (Map.Entry<Integer, OperationParameters> entry: damaged.entrySet()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            OperationCodec.write(List.of(), bytes);
+            ByteArrayOutputStream file = new ByteArrayOutputStream();
+            file.write(bytes.toByteArray(), 0, bytes.size() - 1);
+            DataOutputStream out = new DataOutputStream(file);
+            OperationParameters.writeVarint(out, 1);
+            OperationParameters.writeVarint(out, entry.getKey());
+            entry.getValue().write(out);
+            Assertions.assertThrows(IOException.class, () -> OperationCodec.read(new ByteArrayInputStream(file.toByteArray())));
+        }
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Resize(1000).apply(new BufferedImage(2000, 1, BufferedImage.TYPE_INT_RGB)));
+    }
+
+    /** The new format should take a small fraction of the space of Java serialization. */
+    @Test
+    void formatIsCompact() throws Exception {
+        Stack<ImageOperation> stack = new Stack<ImageOperation>();
+        for (ImageOperation op : everyOperation()) {
+            // Kernels are not serializable, so a ConvolutionOperation could never be saved the old way.
+            if (!(op instanceof ConvolutionOperation)) {
+                stack.add(op);
+            }
+        }
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        OperationCodec.write(stack, binary);
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream objOut = new ObjectOutputStream(serialized)) {
+            objOut.writeObject(stack);
+        }
+
+        Assertions.assertTrue(binary.size() * 5 < serialized.size(), binary.size() + " bytes vs " + serialized.size());
+    }
+
+    /** Parameters with tags an operation does not know should be skipped, and missing ones given defaults. */
+    @Test
+    void unknownParametersAreIgnored() throws Exception {
+        OperationParameters params = new OperationParameters().putInt(1, 4).putString(9, "added later").putFloats(10, new float[] {1, 2});
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        params.write(new DataOutputStream(bytes));
+
+        OperationParameters read = OperationParameters.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assertions.assertEquals(4, read.getInt(1, 0));
+        Assertions.assertEquals(-7, read.getInt(2, -7));
+        Assertions.assertEquals(-7, read.getInt(9, -7));
+    }
+
+    /** Operations should be handed on as they are decoded, so those before a damaged one are kept. */
+    @Test
+    void streamsOperationsAsTheyAreRead() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OperationCodec.write(List.of(new InvertColour(), new MeanFilter(2), new RotateLeft()), bytes);
+        byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 2);
+
+        List<ImageOperation> read = new ArrayList<ImageOperation>();
+        Assertions.assertThrows(IOException.class, () -> OperationCodec.read(new ByteArrayInputStream(truncated), read::add));
+        Assertions.assertEquals(2, read.size());
+        Assertions.assertTrue(read.get(1) instanceof MeanFilter);
+    }
+
+    /** Files from a newer version of the format should be refused rather than misread. */
+    @Test
+    void refusesNewerVersions() {
+        byte[] bytes = {'A', 'O', 'P', 'S', 99, 0};
+        Assertions.assertThrows(IOException.class, () -> OperationCodec.read(new ByteArrayInputStream(bytes)));
+    }
+}
@@ -0,0 +1,168 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.imageio.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * <p>
+ * Unit tests checking that operations report progress and stop when cancelled.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ */
+public class OperationContextTest {
+
+    /**
+     * A context that cancels itself once a number of rows have been completed.
+     */
+    private static class CancelAfter extends OperationContext {
+
+        /** The number of rows to allow before cancelling. */
+        private final int limit;
+
+        /** The number of rows completed so far. */
+        private int rows;
+
+        /**
+         * Create a context that cancels itself after some rows.
+         *
+         * @param limit The number of rows to allow before cancelling.
+         */
+        CancelAfter(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public synchronized void rowsCompleted(int completed) {
+            super.rowsCompleted(completed);
+            rows += completed;
+            if (rows >= limit) {
+                cancel();
+            }
+        }
+    }
+
+    /** Every row should be reported by the time a banded operation has finished. */
+    @Test
+    void progressReachesOneWhenFinished() {
+        ImageOperation[] ops = {new MedianFilter(2), new MeanFilter(2), new BlockAveraging(4, 3), new RandomScattering(2), new SharpenFilter()};
+
+        for (ImageOperation op: ops) {
+            OperationContext context = new OperationContext();
+            Assertions.assertEquals(-1, context.getProgress());
+            op.apply(TestImages.randomImage(300, 280, 202), context);
+            Assertions.assertEquals(1.0, context.getProgress(), 1e-9, op.getClass().getSimpleName() + " did not report every row");
+        }
+    }
+
+    /** Cancelling part way through should stop the loops at the next row, on one thread or several. */
+    @Test
+    void cancellingStopsPartWayThrough() {
+        boolean wasParallel = TileScheduler.isParallel();
+        try {
+            for (boolean parallel: new boolean[] {false, true}) {
+                TileScheduler.setParallel(parallel);
+                ImageOperation[] ops = {new MedianFilter(3), new ConvolutionOperation(new Kernel(3, 3, new float[] {0, 0, 0, 0, 1, 0, 0, 0, 0})), new BlockAveraging(2, 2), new RandomScattering(3)};
+
+                for (ImageOperation op: ops) {
+                    CancelAfter context = new CancelAfter(20);
+                    Assertions.assertThrows(CancellationException.class, () -> op.apply(TestImages.randomImage(300, 280, 202), context));
+                    Assertions.assertTrue(context.getProgress() < 1.0, op.getClass().getSimpleName() + " ran to the end");
+                }
+            }
+        }
+        finally {
+            TileScheduler.setParallel(wasParallel);
+        }
+    }
+
+    /** Applying an operation without a context should never be cancelled or leave a context behind. */
+    @Test
+    void operationsWithoutContextAreUnaffected() {
+        OperationContext context = new OperationContext();
+        context.cancel();
+        Assertions.assertThrows(CancellationException.class, () -> new MeanFilter(1).apply(TestImages.randomImage(20, 20, 202), context));
+
+        OperationContext.current().cancel();
+        Assertions.assertFalse(OperationContext.current().isCancelled());
+        Assertions.assertNotNull(new MeanFilter(1).apply(TestImages.randomImage(20, 20, 202)));
+    }
+
+    /** An operation that fails in the background should leave the image and its stack as they were. */
+    @Test
+    void failedOperationLeavesStackUnchanged() throws Exception {
+        File file = File.createTempFile("andie-context", ".png");
+        file.deleteOnExit();
+        ImageIO.write(TestImages.randomImage(20, 20, 202), "png", file);
+        EditableImage image = new EditableImage();
+        image.open(file.getPath());
+        int[] before = PackedPixels.read(image.getCurrentImage());
+        long version = image.getVersion();
+
+        image.applyAsync(input -> {
+            throw new IllegalStateException("Broken operation");
+        });
+        image.awaitIdle();
+        Assertions.assertEquals(0, image.getPending());
+        Assertions.assertEquals(version, image.getVersion());
+        Assertions.assertArrayEquals(before, PackedPixels.read(image.getCurrentImage()));
+
+        image.applyAsync(new InvertColour());
+        image.awaitIdle();
+        image.undo();
+        image.awaitIdle();
+        Assertions.assertArrayEquals(before, PackedPixels.read(image.getCurrentImage()));
+    }
+
+    /** Undo should return before its replay is done, keeping the previous image until then, and undos in a row should all happen. */
+    @Test
+    void undoReplaysInBackground() throws Exception {
+        File file = File.createTempFile("andie-context", ".png");
+        file.deleteOnExit();
+        ImageIO.write(TestImages.randomImage(20, 20, 202), "png", file);
+        EditableImage image = new EditableImage();
+        image.open(file.getPath());
+        int[] original = PackedPixels.read(image.getCurrentImage());
+
+        // The operation only holds up its replay, and gives up after a while rather than hang the test.
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        image.applyAsync(input -> {
+            if (calls.incrementAndGet() > 1) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return input;
+        });
+        image.applyAsync(new InvertColour());
+        image.awaitIdle();
+        int[] inverted = PackedPixels.read(image.getCurrentImage());
+
+        image.undo();
+        image.undo();
+        Assertions.assertEquals(2, image.getPending());
+        Assertions.assertArrayEquals(inverted, PackedPixels.read(image.getLoadedImage()));
+
+        release.countDown();
+        image.awaitIdle();
+        Assertions.assertArrayEquals(original, PackedPixels.read(image.getCurrentImage()));
+
+        image.redo();
+        image.redo();
+        image.awaitIdle();
+        Assertions.assertArrayEquals(inverted, PackedPixels.read(image.getCurrentImage()));
+    }
+}
@@ -0,0 +1,68 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+import java.io.*;
+import javax.imageio.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * <p>
+ * Unit tests for the proxies that operations are previewed on.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ */
+public class OperationPreviewTest {
+
+    /** Each proxy pixel should be the average of the block of image pixels behind it. */
+    @Test
+    void downsampleAveragesBlocks() {
+        int[] argb = {
+            0xFF000000, 0xFF040404, 0xFF102030, 0xFF102030,
+            0xFF080808, 0xFF0C0C0C, 0xFF102030, 0xFF102030,
+        };
+        BufferedImage image = PackedPixels.wrap(argb, 4, 2);
+
+        BufferedImage proxy = OperationPreview.downsample(image, 0.5);
+
+        Assertions.assertEquals(2, proxy.getWidth());
+        Assertions.assertEquals(1, proxy.getHeight());
+        Assertions.assertEquals(0xFF060606, proxy.getRGB(0, 0));
+        Assertions.assertEquals(0xFF102030, proxy.getRGB(1, 0));
+    }
+
+    /** The proxy should never have more pixels than the view, nor be larger than the image as drawn. */
+    @Test
+    void proxyScaleFitsTheView() {
+        Assertions.assertEquals(1.0, OperationPreview.getProxyScale(400, 300, 1.0, 800, 600), 1e-9);
+        Assertions.assertEquals(0.5, OperationPreview.getProxyScale(400, 300, 0.5, 800, 600), 1e-9);
+
+        double scale = OperationPreview.getProxyScale(8000, 6000, 1.0, 800, 600);
+        Assertions.assertTrue(8000 * scale * 6000 * scale <= 800 * 600 + 1e-6);
+        Assertions.assertEquals(0.1, scale, 1e-9);
+
+        Assertions.assertTrue(OperationPreview.getProxyScale(8000, 6000, 1.0, 0, 0) > 0);
+    }
+
+    /** A proxy should be kept for as long as it is asked for at the same scale. */
+    @Test
+    void proxyIsCached() throws Exception {
+        EditableImage image = new EditableImage();
+        Assertions.assertNull(image.getProxy(0.5));
+
+        File file = File.createTempFile("andie-proxy", ".png");
+        file.deleteOnExit();
+        ImageIO.write(new BufferedImage(40, 30, BufferedImage.TYPE_INT_ARGB), "png", file);
+        image.open(file.getPath());
+
+        BufferedImage proxy = image.getProxy(0.5);
+        Assertions.assertEquals(20, proxy.getWidth());
+        Assertions.assertSame(proxy, image.getProxy(0.5));
+        Assertions.assertNotSame(proxy, image.getProxy(0.25));
+    }
+}
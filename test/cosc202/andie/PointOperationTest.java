@@ -0,0 +1,87 @@
+package cosc202.andie;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * <p>
+ * Unit tests checking that the compiled lookups of point operations match their original per-pixel formulas.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ */
+public class PointOperationTest {
+
+    /**
+     * Apply a point operation to the test pixels.
+     *
+     * @param op The operation to apply.
+     * @param src The pixels to apply it to.
+     * @return The resulting pixels.
+     */
+    private static int[] applyLookup(PointOperation op, int[] src) {
+        int[] dst = new int[src.length];
+        op.applyRows(src, dst, src.length, 1, 0, 1);
+        return dst;
+    }
+
+    /** Greyscale should round the weighted sum exactly as computing it directly does. */
+    @Test
+    void greyMatchesFormula() {
+        int[] src = TestImages.randomPixels(100000, 7);
+        int[] dst = applyLookup(new ConvertToGrey(), src);
+
+        for (int i = 0; i < src.length; i++) {
+            int r = (src[i] >> 16) & 0xFF;
+            int g = (src[i] >> 8) & 0xFF;
+            int b = src[i] & 0xFF;
+            int grey = (int) Math.round(0.3*r + 0.6*g + 0.1*b);
+            Assertions.assertEquals((src[i] & 0xFF000000) | (grey << 16) | (grey << 8) | grey, dst[i]);
+        }
+    }
+
+    /** Inverting should flip each colour channel and keep the alpha. */
+    @Test
+    void invertMatchesFormula() {
+        int[] src = TestImages.randomPixels(100000, 7);
+        int[] dst = applyLookup(new InvertColour(), src);
+
+        for (int i = 0; i < src.length; i++) {
+            Assertions.assertEquals(src[i] ^ 0x00FFFFFF, dst[i]);
+        }
+    }
+
+    /** Brightness and contrast should clip and truncate as the direct calculation does. */
+    @Test
+    void brightnessContrastMatchesFormula() {
+        int[] src = TestImages.randomPixels(100000, 7);
+        int brightness = 35;
+        int contrast = -60;
+        int[] dst = applyLookup(new BrightnessContrastAdjust(brightness, contrast), src);
+
+        for (int i = 0; i < src.length; i++) {
+            int expected = src[i] & 0xFF000000;
+            for (int shift = 16; shift >= 0; shift -= 8) {
+                int value = (src[i] >> shift) & 0xFF;
+                double adjusted = ((1+(double)contrast/100)*(value-127.5)+127.5)*(1+(double)brightness/100);
+                expected |= ((int) Math.max(0, Math.min(255, adjusted))) << shift;
+            }
+            Assertions.assertEquals(expected, dst[i]);
+        }
+    }
+
+    /** Each channel order should move the channels to the right places. */
+    @Test
+    void cycleMatchesChannelOrder() {
+        int pixel = 0x80112233;
+        Assertions.assertEquals(0x80331122, applyLookup(new CycleColourChannel("GBR"), new int[] {pixel})[0]);
+        Assertions.assertEquals(0x80223311, applyLookup(new CycleColourChannel("BRG"), new int[] {pixel})[0]);
+        Assertions.assertEquals(0x80113322, applyLookup(new CycleColourChannel("RBG"), new int[] {pixel})[0]);
+        Assertions.assertEquals(0x80221133, applyLookup(new CycleColourChannel("GRB"), new int[] {pixel})[0]);
+        Assertions.assertEquals(0x80332211, applyLookup(new CycleColourChannel("BGR"), new int[] {pixel})[0]);
+    }
+}
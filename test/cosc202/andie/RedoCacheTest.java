@@ -0,0 +1,75 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * <p>
+ * Unit tests for keeping and forgetting the images of undone operations.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ */
+public class RedoCacheTest {
+
+    /**
+     * Create a small test image, which uses 4 * 10 * 10 bytes.
+     *
+     * @return The test image.
+     */
+    private static BufferedImage image() {
+        return new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /** Images should come back in the reverse of the order they were undone in. */
+    @Test
+    void popsInStackOrder() {
+        RedoCache cache = new RedoCache();
+        BufferedImage first = image();
+        BufferedImage second = image();
+        cache.push(first);
+        cache.push(second);
+
+        Assertions.assertSame(second, cache.pop());
+        Assertions.assertSame(first, cache.pop());
+    }
+
+    /** Applying a different operation should forget the images but keep one entry per undone operation. */
+    @Test
+    void invalidateKeepsPlaces() {
+        RedoCache cache = new RedoCache();
+        cache.push(image());
+        cache.push(image());
+        cache.invalidate();
+
+        Assertions.assertNull(cache.pop());
+        Assertions.assertNull(cache.pop());
+    }
+
+    /** Over the cap, the images furthest from being redone should be forgotten first. */
+    @Test
+    void forgetsFurthestRedoFirst() {
+        long cap = RedoCache.getCap();
+        try {
+            RedoCache.setCap(2 * 400);
+            RedoCache cache = new RedoCache();
+            BufferedImage second = image();
+            BufferedImage third = image();
+            cache.push(image());
+            cache.push(second);
+            cache.push(third);
+
+            Assertions.assertSame(third, cache.pop());
+            Assertions.assertSame(second, cache.pop());
+            Assertions.assertNull(cache.pop());
+        }
+        finally {
+            RedoCache.setCap(cap);
+        }
+    }
+}
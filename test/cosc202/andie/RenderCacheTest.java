@@ -0,0 +1,124 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.List;
+import javax.imageio.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * <p>
+ * Unit tests for the on-disk cache of operation results.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ */
+public class RenderCacheTest {
+
+    /** A stored result should load back with the same type and pixels, however many reads it takes. */
+    @Test
+    void storedResultsLoadBack() throws Exception {
+        RenderCache.setDirectory(Files.createTempDirectory("andie-render"));
+        for (int type: new int[] {BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB}) {
+            // The ARGB image is too large to be read in one go.
+            int width = type == BufferedImage.TYPE_INT_ARGB ? 617 : 17;
+            BufferedImage image = TestImages.randomImage(width, 9 + width - 17, type, type);
+            RenderCache.store("key" + type, image);
+
+            BufferedImage loaded = RenderCache.load("key" + type);
+            Assertions.assertEquals(type, loaded.getType());
+            Assertions.assertArrayEquals(PackedPixels.read(image), PackedPixels.read(loaded));
+        }
+        Assertions.assertNull(RenderCache.load("missing"));
+    }
+
+    /** Results already on disk when the cache directory is chosen should be found without storing them again. */
+    @Test
+    void findsResultsFromEarlierSessions() throws Exception {
+        Path dir = Files.createTempDirectory("andie-render");
+        RenderCache.setDirectory(dir);
+        RenderCache.store("earlier", TestImages.randomImage(17, 9, BufferedImage.TYPE_INT_RGB, 6));
+
+        RenderCache.setDirectory(Files.createTempDirectory("andie-render"));
+        Assertions.assertEquals(0, RenderCache.getNearest(List.of("earlier"), 0));
+        RenderCache.setDirectory(dir);
+        Assertions.assertEquals(1, RenderCache.getNearest(List.of("earlier"), 0));
+    }
+
+    /** Keys should depend on the file, the render version and what each operation is, and be shared by common prefixes. */
+    @Test
+    void keysFollowPrefixes() {
+        byte[] file = {1, 2, 3};
+        List<String> a = RenderCache.getKeys(file, List.of(new InvertColour(), new MeanFilter(2)));
+        List<String> b = RenderCache.getKeys(file, List.of(new InvertColour(), new MeanFilter(3)));
+        List<String> c = RenderCache.getKeys(new byte[] {1, 2, 4}, List.of(new InvertColour(), new MeanFilter(2)));
+
+        Assertions.assertEquals(2, a.size());
+        Assertions.assertEquals(a, RenderCache.getKeys(file, List.of(new InvertColour(), new MeanFilter(2))));
+        Assertions.assertEquals(a.get(0), b.get(0));
+        Assertions.assertNotEquals(a.get(1), b.get(1));
+        Assertions.assertNotEquals(a.get(0), c.get(0));
+        Assertions.assertNotEquals(a, RenderCache.getKeys(file, List.of(new InvertColour(), new MeanFilter(2)), RenderCache.RENDER_VERSION + 1));
+    }
+
+    /** When over budget, the results used least recently should be deleted first. */
+    @Test
+    void evictsLeastRecentlyUsed() throws Exception {
+        Path dir = Files.createTempDirectory("andie-render");
+        RenderCache.setDirectory(dir);
+        long budget = RenderCache.getBudget();
+        RenderCache.setBudget(2 * (16 + 17 * 9 * 4));
+        try {
+            RenderCache.store("a", TestImages.randomImage(17, 9, BufferedImage.TYPE_INT_RGB, 1));
+            RenderCache.store("b", TestImages.randomImage(17, 9, BufferedImage.TYPE_INT_RGB, 2));
+            Files.setLastModifiedTime(dir.resolve("a.px"), FileTime.fromMillis(1000));
+            Files.setLastModifiedTime(dir.resolve("b.px"), FileTime.fromMillis(2000));
+            Assertions.assertNotNull(RenderCache.load("a"));
+
+            RenderCache.store("c", TestImages.randomImage(17, 9, BufferedImage.TYPE_INT_RGB, 3));
+            Assertions.assertNotNull(RenderCache.load("a"));
+            Assertions.assertNull(RenderCache.load("b"));
+            Assertions.assertNotNull(RenderCache.load("c"));
+            Assertions.assertEquals(1, RenderCache.getNearest(List.of("a", "b"), 0));
+            Assertions.assertEquals(0, RenderCache.getNearest(List.of("b"), 0));
+        }
+        finally {
+            RenderCache.setBudget(budget);
+        }
+    }
+
+    /** Opening an image should start from a cached result of its operations, and ignore a damaged one. */
+    @Test
+    void openUsesCachedResult() throws Exception {
+        RenderCache.setDirectory(Files.createTempDirectory("andie-render"));
+        File file = File.createTempFile("andie-render", ".png");
+        file.deleteOnExit();
+        ImageIO.write(TestImages.randomImage(17, 9, BufferedImage.TYPE_INT_ARGB, 4), "png", file);
+        List<ImageOperation> ops = List.of(new InvertColour(), new RotateLeft());
+        try (FileOutputStream out = new FileOutputStream(file.getPath() + ".ops")) {
+            OperationCodec.write(ops, out);
+        }
+        new File(file.getPath() + ".ops").deleteOnExit();
+
+        List<String> keys = RenderCache.getKeys(RenderCache.hashFile(file.toPath()), ops);
+        BufferedImage marker = TestImages.randomImage(17, 9, BufferedImage.TYPE_INT_ARGB, 5);
+        RenderCache.store(keys.get(1), marker);
+
+        EditableImage image = new EditableImage();
+        image.open(file.getPath());
+        Assertions.assertArrayEquals(PackedPixels.read(marker), PackedPixels.read(image.getCurrentImage()));
+
+        Files.write(RenderCache.getDirectory().resolve(keys.get(1) + ".px"), new byte[] {1, 2, 3, 4, 5});
+        image.open(file.getPath());
+        Assertions.assertEquals(9, image.getCurrentImage().getWidth());
+        Assertions.assertEquals(0, RenderCache.getNearest(keys, 0));
+    }
+}
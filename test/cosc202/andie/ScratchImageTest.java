@@ -0,0 +1,70 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * <p>
+ * Unit tests for images stored off the heap in scratch files.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ */
+public class ScratchImageTest {
+
+    /** Restoring should give back the same type and the same raw data for each kind of data buffer. */
+    @Test
+    void restoreMatchesStoredImage() {
+        int[] types = {
+            BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR,
+            BufferedImage.TYPE_USHORT_GRAY, BufferedImage.TYPE_BYTE_BINARY, BufferedImage.TYPE_BYTE_INDEXED,
+        };
+        for (int type : types) {
+            BufferedImage image = TestImages.randomImage(37, 23, type, 1);
+
+            ScratchImage stored = new ScratchImage(image);
+            BufferedImage restored = stored.restore();
+
+            Assertions.assertEquals(type, restored.getType());
+            Assertions.assertEquals(CheckpointCache.getBytes(image), stored.getBytes());
+            Assertions.assertArrayEquals(image.getRGB(0, 0, 37, 23, null, 0, 37), restored.getRGB(0, 0, 37, 23, null, 0, 37), "type " + type);
+            stored.close();
+        }
+    }
+
+    /** Images larger than the transfer buffer should be copied through it in several chunks. */
+    @Test
+    void largeImagesRoundTrip() {
+        for (int type : new int[] {BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR}) {
+            BufferedImage image = TestImages.randomImage(900, 700, type, 2);
+            ScratchImage stored = new ScratchImage(image);
+            Assertions.assertArrayEquals(image.getRGB(0, 0, 900, 700, null, 0, 900), stored.restore().getRGB(0, 0, 900, 700, null, 0, 900));
+            stored.close();
+        }
+    }
+
+    /** Each restored image should be a separate copy. */
+    @Test
+    void restoreReturnsNewImage() {
+        BufferedImage image = PackedPixels.wrap(new int[] {0xFF112233, 0xFF445566}, 2, 1);
+        ScratchImage stored = new ScratchImage(image);
+
+        BufferedImage first = stored.restore();
+        first.setRGB(0, 0, 0);
+        Assertions.assertEquals(0xFF112233, stored.restore().getRGB(0, 0));
+        stored.close();
+    }
+
+    /** Sub-images share a larger raster, so cannot be stored on their own. */
+    @Test
+    void subimagesCannotBeStored() {
+        BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        Assertions.assertTrue(ScratchImage.canStore(image));
+        Assertions.assertFalse(ScratchImage.canStore(image.getSubimage(2, 2, 5, 5)));
+    }
+}
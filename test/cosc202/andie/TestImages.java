@@ -0,0 +1,71 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+import java.util.*;
+
+/**
+ * <p>
+ * Seeded random pixels and images shared by the unit tests.
+ * </p>
+ *
+ * <p>
+ * The same seed always gives the same pixels, so a test that fails can be run again on exactly
+ * the image it failed on.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ */
+class TestImages {
+
+    /**
+     * TestImages only provides static methods, so it should not be constructed.
+     */
+    private TestImages() {}
+
+    /**
+     * Create a packed ARGB array of random pixels.
+     *
+     * @param count The number of pixels.
+     * @param seed The seed for the random pixels.
+     * @return The test pixels.
+     */
+    static int[] randomPixels(int count, long seed) {
+        Random rand = new Random(seed);
+        int[] pixels = new int[count];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = rand.nextInt();
+        }
+        return pixels;
+    }
+
+    /**
+     * Create an ARGB image of random pixels, backed by a packed int array.
+     *
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param seed The seed for the random pixels.
+     * @return The test image.
+     */
+    static BufferedImage randomImage(int width, int height, long seed) {
+        return PackedPixels.wrap(randomPixels(width * height, seed), width, height);
+    }
+
+    /**
+     * Create an image of any type from random pixels, converted as {@link BufferedImage#setRGB} would.
+     *
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param type The type of image, such as {@link BufferedImage#TYPE_INT_RGB}.
+     * @param seed The seed for the random pixels.
+     * @return The test image.
+     */
+    static BufferedImage randomImage(int width, int height, int type, long seed) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        image.setRGB(0, 0, width, height, randomPixels(width * height, seed), 0, width);
+        return image;
+    }
+}
@@ -0,0 +1,91 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * <p>
+ * Unit tests checking that banded operations give the same result however the image is split.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author Evan Ting
+ */
+public class TileSchedulerTest {
+
+    /** The width of the test image. */
+    private static final int WIDTH = 97;
+
+    /** The height of the test image. */
+    private static final int HEIGHT = 83;
+
+    /**
+     * Apply an operation to the whole test image in one call, and again in bands of
+     * an awkward size, and check that the results match.
+     *
+     * @param op The operation to check.
+     */
+    private static void assertBandsMatch(BandedOperation op) {
+        int[] src = TestImages.randomPixels(WIDTH * HEIGHT, 202);
+        int[] whole = new int[src.length];
+        int[] banded = new int[src.length];
+
+        op.applyRows(src, whole, WIDTH, HEIGHT, 0, HEIGHT);
+        for (int top = 0; top < HEIGHT; top += 13) {
+            op.applyRows(src, banded, WIDTH, HEIGHT, top, Math.min(top + 13, HEIGHT));
+        }
+
+        Assertions.assertArrayEquals(whole, banded, op.getClass().getSimpleName() + " differs when split into bands");
+    }
+
+    /** Neighbourhood filters should not depend on where the bands start and end. */
+    @Test
+    void neighbourhoodFiltersMatchWhenBanded() {
+        assertBandsMatch(new ConvolutionOperation(new Kernel(3, 3, new float[] {0, -0.5f, 0, -0.5f, 3, -0.5f, 0, -0.5f, 0})));
+        assertBandsMatch(new MeanFilter(3));
+        assertBandsMatch(new MedianFilter(2));
+        assertBandsMatch(new BlockAveraging(6, 5));
+        assertBandsMatch(new RandomScattering(3));
+    }
+
+    /** A separable kernel needs a halo of intermediate rows, which must be the same in every band. */
+    @Test
+    void separableConvolutionMatchesWhenBanded() {
+        float[] weights = new float[11 * 11];
+        Arrays.fill(weights, 1.0f / weights.length);
+        assertBandsMatch(new ConvolutionOperation(new Kernel(11, 11, weights)));
+    }
+
+    /** Per-pixel operations should also give the same result in bands. */
+    @Test
+    void perPixelOperationsMatchWhenBanded() {
+        assertBandsMatch(new ConvertToGrey());
+        assertBandsMatch(new InvertColour());
+        assertBandsMatch(new CycleColourChannel("BRG"));
+        assertBandsMatch(new BrightnessContrastAdjust(20, -30));
+    }
+
+    /** Applying an operation with and without the scheduler's threads should give identical images. */
+    @Test
+    void parallelMatchesSerial() {
+        BufferedImage image = PackedPixels.wrap(TestImages.randomPixels(WIDTH * HEIGHT, 202), WIDTH, HEIGHT);
+        MedianFilter op = new MedianFilter(1);
+        boolean wasParallel = TileScheduler.isParallel();
+
+        try {
+            TileScheduler.setParallel(false);
+            int[] serial = PackedPixels.read(op.apply(image));
+            TileScheduler.setParallel(true);
+            int[] parallel = PackedPixels.read(op.apply(image));
+            Assertions.assertArrayEquals(serial, parallel);
+        }
+        finally {
+            TileScheduler.setParallel(wasParallel);
+        }
+    }
+}